@@ -2,9 +2,12 @@ package com.numinit.avl;
 import java.util.ArrayList;
 
 import com.numinit.avl.tree.AVL;
+import com.numinit.avl.tree.ArenaAVL;
+import com.numinit.utils.DoubleUtils;
 
 /**
- * AVL implementation of the TopKMachine
+ * AVL implementation of the TopKMachine. Values that can't make the cutoff are rejected before anything is allocated for them,
+ * and a machine reset between queries reuses its tree's arrays.
  * @author Morgan Jones
  *
  */
@@ -12,14 +15,20 @@ public class AVLTopKMachine<T> implements ITopKMachine<T> {
 	/**
 	 * The underlying AVL tree
 	 */
-	private AVL<AVLTopKMachineEntry<T>> _tree;
+	private ArenaAVL<AVLTopKMachineEntry<T>> _tree;
+	
+	/**
+	 * Rotation counts already reported to TopKStatistics, or null if none have been
+	 */
+	private int[] _reported;
 
 	/**
 	 * Initializes this AVLTopKMachine.
 	 * @param k The number of items
 	 */
 	public AVLTopKMachine(int k) {
-		this._tree = new AVL<AVLTopKMachineEntry<T>>(k);
+		this._tree = new ArenaAVL<AVLTopKMachineEntry<T>>(k);
+		this._reported = null;
 	}
 	
 	@Override
@@ -29,22 +38,53 @@ public class AVLTopKMachine<T> implements ITopKMachine<T> {
 	
 	@Override
 	public void insert(double score, T value) {
-		this._tree.insert(new AVLTopKMachineEntry<T>(score, value));
+		if (DoubleUtils.compare(score, this.getCurrentCutoff()) <= 0) {
+			this._tree.insert(new AVLTopKMachineEntry<T>(score, value));
+		}
 	}
 
 	@Override
 	public ArrayList<T> getTopK() {
 		final ArrayList<T> ret = new ArrayList<T>(this._tree.getCount());
-		this._tree.traverse((n) -> {
-			ret.add(n.getValue().getData());
+		this._tree.traverse((entry) -> {
+			ret.add(entry.getData());
 		});
 		return ret;
 	}
 
 	@Override
 	public double getCurrentCutoff() {
+		if (this._tree.getCount() < this.getK()) {
+			return Double.POSITIVE_INFINITY;
+		}
 		AVLTopKMachineEntry<T> cutoff = this._tree.getCutoff();
-		return cutoff == null ? Double.POSITIVE_INFINITY : cutoff.getScore();
+		return cutoff == null ? Double.NEGATIVE_INFINITY : cutoff.getScore();
+	}
+	
+	@Override
+	public void traverse(final ITopKMachineCallback<T> callback) {
+		this._tree.traverse((entry) -> {
+			callback.operation(entry.getScore(), entry.getData());
+		});
+	}
+	
+	/**
+	 * Empties this AVLTopKMachine so it can be reused for another query
+	 * @return This AVLTopKMachine
+	 */
+	public AVLTopKMachine<T> reset() {
+		this._tree.reset();
+		return this;
+	}
+	
+	/**
+	 * Empties this AVLTopKMachine and changes K, so it can be reused for another query
+	 * @param k The number of items
+	 * @return This AVLTopKMachine
+	 */
+	public AVLTopKMachine<T> reset(int k) {
+		this._tree.reset(k);
+		return this;
 	}
 	
 	/**
@@ -54,4 +94,21 @@ public class AVLTopKMachine<T> implements ITopKMachine<T> {
 	public int getK() {
 		return this._tree.getK();
 	}
+	
+	/**
+	 * Reports rotations since the last report
+	 * @param statistics Where to report them
+	 */
+	void report(TopKStatistics statistics) {
+		for (int i = 0; i < AVL.AVL_STATS_LENGTH; i++) {
+			int count = this._tree.getStat(i) - (this._reported == null ? 0 : this._reported[i]);
+			if (count > 0) {
+				if (this._reported == null) {
+					this._reported = new int[AVL.AVL_STATS_LENGTH];
+				}
+				statistics.recordRotations(i, count);
+				this._reported[i] += count;
+			}
+		}
+	}
 }
@@ -0,0 +1,161 @@
+package com.numinit.avl;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TopKMachine that can be filled from many threads at once. Each worker thread inserts into its own
+ * local machine from getLocal(), and every local machine publishes its cutoff to a shared atomic
+ * as soon as it fills up. Locals prune with the tightest cutoff any of them has found, since
+ * nothing worse than some worker's Kth best can be in the overall top K. The locals are merged
+ * when the top K is read.
+ * @author Morgan Jones
+ *
+ */
+public class ConcurrentTopKMachine<T> implements ITopKMachine<T> {
+	/**
+	 * A worker's local machine
+	 * @author Morgan Jones
+	 *
+	 */
+	private class Local implements ITopKMachine<T> {
+		/**
+		 * The worker's own top K
+		 */
+		private HeapTopKMachine<T> _machine;
+		
+		/**
+		 * Initializes this Local
+		 */
+		public Local() {
+			this._machine = new HeapTopKMachine<T>(ConcurrentTopKMachine.this.getK());
+		}
+		
+		@Override
+		public void insert(double score, T value) {
+			if (score <= ConcurrentTopKMachine.this.getCurrentCutoff()) {
+				this._machine.insert(score, value);
+				ConcurrentTopKMachine.this.publish(this._machine.getCurrentCutoff());
+			}
+		}
+		
+		@Override
+		public ArrayList<T> getTopK() {
+			return this._machine.getTopK();
+		}
+		
+		@Override
+		public double getCurrentCutoff() {
+			return Math.min(this._machine.getCurrentCutoff(), ConcurrentTopKMachine.this.getCurrentCutoff());
+		}
+		
+		@Override
+		public void traverse(ITopKMachineCallback<T> callback) {
+			this._machine.traverse(callback);
+		}
+	}
+	
+	/**
+	 * K
+	 */
+	private int _k;
+	
+	/**
+	 * The tightest published cutoff, as the bits of a double
+	 */
+	private AtomicLong _cutoff;
+	
+	/**
+	 * Every local machine handed out so far
+	 */
+	private ConcurrentLinkedQueue<Local> _locals;
+	
+	/**
+	 * Each thread's local machine
+	 */
+	private ThreadLocal<Local> _local;
+	
+	/**
+	 * Initializes this ConcurrentTopKMachine.
+	 * @param k The number of items
+	 */
+	public ConcurrentTopKMachine(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException(String.format("invalid k value %d, choose 0 or greater", k));
+		}
+		this._k = k;
+		this._cutoff = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+		this._locals = new ConcurrentLinkedQueue<Local>();
+		this._local = ThreadLocal.withInitial(() -> {
+			Local ret = new Local();
+			this._locals.add(ret);
+			return ret;
+		});
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[k=%d,locals=%d,cutoff=%+.2f]@%#08x>", this.getClass().getSimpleName(),
+				this.getK(), this._locals.size(), this.getCurrentCutoff(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Returns the calling thread's local machine, making it the first time that thread asks.
+	 * Only use it from that thread, and only while nothing else on the thread is inserting into it.
+	 * @return The local machine
+	 */
+	public ITopKMachine<T> getLocal() {
+		return this._local.get();
+	}
+	
+	@Override
+	public void insert(double score, T value) {
+		this._local.get().insert(score, value);
+	}
+	
+	@Override
+	public ArrayList<T> getTopK() {
+		return this.getMerged().getTopK();
+	}
+	
+	@Override
+	public double getCurrentCutoff() {
+		return Double.longBitsToDouble(this._cutoff.get());
+	}
+	
+	@Override
+	public void traverse(ITopKMachineCallback<T> callback) {
+		this.getMerged().traverse(callback);
+	}
+	
+	/**
+	 * Returns K for this ConcurrentTopKMachine.
+	 * @return K
+	 */
+	public int getK() {
+		return this._k;
+	}
+	
+	/**
+	 * Lowers the shared cutoff to cutoff, if it's tighter than what's been published
+	 * @param cutoff The cutoff
+	 */
+	private void publish(double cutoff) {
+		long current = this._cutoff.get();
+		while (cutoff < Double.longBitsToDouble(current) && !this._cutoff.compareAndSet(current, Double.doubleToLongBits(cutoff))) {
+			current = this._cutoff.get();
+		}
+	}
+	
+	/**
+	 * Merges every local machine into one. Call this once the workers are done.
+	 * @return The merged machine
+	 */
+	private ITopKMachine<T> getMerged() {
+		ITopKMachine<T> ret = new HeapTopKMachine<T>(this.getK());
+		for (Local local : this._locals) {
+			ret.merge(local);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,161 @@
+package com.numinit.avl;
+import java.util.ArrayList;
+
+/**
+ * Bounded binary max-heap implementation of the TopKMachine. Scores live in a primitive array
+ * alongside the values, and the worst score sits at the root, so a value that can't make the
+ * top K is rejected with a single comparison.
+ * @author Morgan Jones
+ *
+ */
+public class HeapTopKMachine<T> implements ITopKMachine<T> {
+	/**
+	 * The scores, as a max-heap
+	 */
+	private double[] _scores;
+	
+	/**
+	 * The values, in the same order as _scores
+	 */
+	private Object[] _values;
+	
+	/**
+	 * The current element count
+	 */
+	private int _count;
+	
+	/**
+	 * Initializes this HeapTopKMachine.
+	 * @param k The number of items
+	 */
+	public HeapTopKMachine(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException(String.format("invalid k value %d, choose 0 or greater", k));
+		}
+		this._scores = new double[k];
+		this._values = new Object[k];
+		this._count = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[k=%d,count=%d,cutoff=%+.2f]@%#08x>", this.getClass().getSimpleName(),
+				this.getK(), this._count, this.getCurrentCutoff(), System.identityHashCode(this));
+	}
+	
+	@Override
+	public void insert(double score, T value) {
+		if (this._count < this.getK()) {
+			// Not full yet, so append and sift up
+			this.siftUp(this._count++, score, value);
+		} else if (this._count > 0 && score <= this._scores[0]) {
+			// Evict the worst item by replacing the root
+			this.siftDown(0, this._count, score, value);
+		}
+	}
+	
+	@Override
+	public ArrayList<T> getTopK() {
+		// Heapsort a copy so we can keep accepting values
+		double[] scores = this._scores.clone();
+		Object[] values = this._values.clone();
+		for (int n = this._count - 1; n > 0; n--) {
+			double score = scores[n];
+			Object value = values[n];
+			scores[n] = scores[0];
+			values[n] = values[0];
+			siftDown(scores, values, 0, n, score, value);
+		}
+		
+		ArrayList<T> ret = new ArrayList<T>(this._count);
+		for (int i = 0; i < this._count; i++) {
+			@SuppressWarnings("unchecked")
+			T value = (T)values[i];
+			ret.add(value);
+		}
+		return ret;
+	}
+	
+	@Override
+	public double getCurrentCutoff() {
+		if (this._count < this.getK()) {
+			return Double.POSITIVE_INFINITY;
+		} else {
+			return this._count == 0 ? Double.NEGATIVE_INFINITY : this._scores[0];
+		}
+	}
+	
+	@Override
+	public void traverse(ITopKMachineCallback<T> callback) {
+		for (int i = 0; i < this._count; i++) {
+			@SuppressWarnings("unchecked")
+			T value = (T)this._values[i];
+			callback.operation(this._scores[i], value);
+		}
+	}
+	
+	/**
+	 * Returns K for this HeapTopKMachine.
+	 * @return K
+	 */
+	public int getK() {
+		return this._scores.length;
+	}
+	
+	/**
+	 * Places (score, value) at idx and moves it up until its parent is no smaller
+	 * @param idx   The index
+	 * @param score The score
+	 * @param value The value
+	 */
+	private void siftUp(int idx, double score, Object value) {
+		while (idx > 0) {
+			int parent = (idx - 1) >>> 1;
+			if (this._scores[parent] >= score) {
+				break;
+			}
+			this._scores[idx] = this._scores[parent];
+			this._values[idx] = this._values[parent];
+			idx = parent;
+		}
+		this._scores[idx] = score;
+		this._values[idx] = value;
+	}
+	
+	/**
+	 * Places (score, value) at idx and moves it down until its children are no larger
+	 * @param idx   The index
+	 * @param n     The heap size
+	 * @param score The score
+	 * @param value The value
+	 */
+	private void siftDown(int idx, int n, double score, Object value) {
+		siftDown(this._scores, this._values, idx, n, score, value);
+	}
+	
+	/**
+	 * Places (score, value) at idx in a heap and moves it down until its children are no larger
+	 * @param scores The heap's scores
+	 * @param values The heap's values
+	 * @param idx    The index
+	 * @param n      The heap size
+	 * @param score  The score
+	 * @param value  The value
+	 */
+	private static void siftDown(double[] scores, Object[] values, int idx, int n, double score, Object value) {
+		for (int child = 2 * idx + 1; child < n; child = 2 * idx + 1) {
+			// Pick the larger child
+			if (child + 1 < n && scores[child + 1] > scores[child]) {
+				child++;
+			}
+			if (score >= scores[child]) {
+				break;
+			}
+			scores[idx] = scores[child];
+			values[idx] = values[child];
+			idx = child;
+		}
+		scores[idx] = score;
+		values[idx] = value;
+	}
+}
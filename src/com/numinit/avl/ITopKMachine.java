@@ -33,4 +33,19 @@ public interface ITopKMachine<T> {
 	 * @return The cutoff
 	 */
 	double getCurrentCutoff();
+	
+	/**
+	 * Call the callback with every value currently in the top K, along with its score
+	 * @param callback The callback
+	 */
+	void traverse(ITopKMachineCallback<T> callback);
+	
+	/**
+	 * Insert every value in another machine into this one, so this machine
+	 * holds the top K of both
+	 * @param other The other machine
+	 */
+	default void merge(ITopKMachine<T> other) {
+		other.traverse(this::insert);
+	}
 }
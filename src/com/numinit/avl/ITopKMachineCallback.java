@@ -0,0 +1,15 @@
+package com.numinit.avl;
+/**
+ * A simple interface used to visit the scored values in an ITopKMachine.
+ * @author Morgan Jones
+ *
+ * @param <T> The value type
+ */
+public interface ITopKMachineCallback<T> {
+	/**
+	 * The operation to perform
+	 * @param score The score
+	 * @param value The value
+	 */
+	void operation(double score, T value);
+}
@@ -0,0 +1,94 @@
+package com.numinit.avl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.numinit.avl.tree.AVL;
+
+/**
+ * Process-wide counters for the AVL-backed top-K machines.
+ * Machines keep their own rotation counts while they run, and report what's new here when a query's results are recorded,
+ * so the hot insert path never touches shared state. Machines used inside a structure, rather than to answer a query, aren't recorded.
+ * @author Morgan Jones
+ *
+ */
+public class TopKStatistics {
+	/**
+	 * The instance
+	 */
+	private static final TopKStatistics INSTANCE = new TopKStatistics();
+	
+	/**
+	 * Result reads
+	 */
+	private final LongAdder _results;
+	
+	/**
+	 * Rotation counts, indexed like AVL's stats
+	 */
+	private final LongAdder[] _rotations;
+	
+	/**
+	 * Initializes this TopKStatistics
+	 */
+	private TopKStatistics() {
+		this._results = new LongAdder();
+		this._rotations = new LongAdder[AVL.AVL_STATS_LENGTH];
+		for (int i = 0; i < this._rotations.length; i++) {
+			this._rotations[i] = new LongAdder();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[results=%d,rotations=<rr=%d,rl=%d,ll=%d,lr=%d,ar=%d>]@%#08x>", this.getClass().getSimpleName(), this.getResults(),
+				this.getRotations(AVL.AVL_ROTATE_RR), this.getRotations(AVL.AVL_ROTATE_RL), this.getRotations(AVL.AVL_ROTATE_LL), this.getRotations(AVL.AVL_ROTATE_LR), this.getRotations(AVL.AVL_ROTATE_AR),
+				System.identityHashCode(this));
+	}
+	
+	/**
+	 * Returns the instance
+	 * @return The instance
+	 */
+	public static TopKStatistics getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Records a query's results being read from a machine, with the machine's rotations since it was last recorded
+	 * @param machine The machine
+	 */
+	public void recordResult(ITopKMachine<?> machine) {
+		this._results.increment();
+		if (machine instanceof AVLTopKMachine) {
+			((AVLTopKMachine<?>)machine).report(this);
+		}
+	}
+	
+	/**
+	 * Records rotations
+	 * @param idx   The stat index, from AVL
+	 * @param count The number of rotations
+	 */
+	public void recordRotations(int idx, int count) {
+		this._rotations[idx].add(count);
+	}
+	
+	/**
+	 * @return the number of query results read
+	 */
+	public long getResults() {
+		return this._results.sum();
+	}
+	
+	/**
+	 * Returns the number of rotations of a kind
+	 * @param idx The stat index, from AVL
+	 * @return The count
+	 */
+	public long getRotations(int idx) {
+		if (idx < 0 || idx >= this._rotations.length) {
+			throw new IllegalArgumentException(String.format("invalid stat idx %d", idx));
+		}
+		return this._rotations[idx].sum();
+	}
+}
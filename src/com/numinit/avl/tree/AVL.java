@@ -65,7 +65,9 @@ public class AVL<T extends Comparable<T>> {
 	
 	/**
 	 * Initializes this AVL tree with no practical limit on storage size
+	 * @deprecated Large trees are better kept in an OrderStatisticAVL
 	 */
+	@Deprecated
 	public AVL() {
 		this(Integer.MAX_VALUE);
 	}
@@ -91,7 +93,7 @@ public class AVL<T extends Comparable<T>> {
 			
 			if (this.getCount() == this.getK()) { 
 				// Don't increment, and remove the maximum item so we stay at k total
-				this._root.removeMax();
+				this._root = this._root.removeMax();
 				this._cutoff = this._root.max();
 			} else {
 				// Increment the count
@@ -0,0 +1,421 @@
+package com.numinit.avl.tree;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * An AVL tree whose nodes live in parallel primitive arrays instead of node objects.
+ * A node is an index into those arrays; index 0 is the empty sentinel shared by every leaf.
+ * Removed nodes are recycled, and reset() empties the tree while keeping its arrays,
+ * so a tree that is reused between queries stops allocating once it has grown to size.
+ * @author Morgan Jones
+ *
+ * @param <T> The type to stick in the tree's nodes. Must implement Comparable<T>.
+ */
+public class ArenaAVL<T extends Comparable<T>> {
+	/**
+	 * The empty sentinel node
+	 */
+	private static final int EMPTY = 0;
+	
+	/**
+	 * The default initial node capacity
+	 */
+	private static final int DEFAULT_CAPACITY = 16;
+	
+	/**
+	 * Left and right children, and subtree heights, indexed by node
+	 */
+	private int[] _left, _right, _height;
+	
+	/**
+	 * Values, indexed by node
+	 */
+	private Object[] _values;
+	
+	/**
+	 * The root, the first never-used node, and the head of the free list (chained through _left)
+	 */
+	private int _root, _next, _free;
+	
+	/**
+	 * The maximum capacity of this tree and current element count
+	 */
+	private int _k, _count;
+	
+	/**
+	 * The maximum item seen so far
+	 */
+	private T _cutoff;
+	
+	/**
+	 * Stats, indexed like AVL's
+	 */
+	private int[] _stats;
+	
+	/**
+	 * Initializes this ArenaAVL
+	 * @param k        The maximum number of items we should store
+	 * @param capacity The number of nodes to allocate up front
+	 */
+	public ArenaAVL(int k, int capacity) {
+		if (k < 0) {
+			throw new IllegalArgumentException(String.format("invalid k value %d, choose 0 or greater", k));
+		}
+		
+		this._k = k;
+		this._stats = new int[AVL.AVL_STATS_LENGTH];
+		
+		// One extra slot for the sentinel
+		capacity = Math.max(capacity, 1) + 1;
+		this._left = new int[capacity];
+		this._right = new int[capacity];
+		this._height = new int[capacity];
+		this._values = new Object[capacity];
+		this._height[EMPTY] = -1;
+		this.reset();
+	}
+	
+	/**
+	 * Initializes this ArenaAVL
+	 * @param k The maximum number of items we should store
+	 */
+	public ArenaAVL(int k) {
+		// Bounded trees hold at most k + 1 nodes, since we insert before evicting
+		this(k, (int)Math.min(k + 1L, DEFAULT_CAPACITY));
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("#<%s[k=%d,count=%d,cutoff=%s,stats=<rr=%d,rl=%d,ll=%d,lr=%d,ar=%d>]@%#08x:", this.getClass().getSimpleName(),
+				this.getK(), this.getCount(), this.getCutoff(),
+				this.getStat(AVL.AVL_ROTATE_RR), this.getStat(AVL.AVL_ROTATE_RL), this.getStat(AVL.AVL_ROTATE_LL), this.getStat(AVL.AVL_ROTATE_LR), this.getStat(AVL.AVL_ROTATE_AR),
+				System.identityHashCode(this)));
+		this.stringify(this._root, builder);
+		return builder.append(">").toString();
+	}
+	
+	/**
+	 * Empties this tree, keeping its arrays for reuse
+	 * @return This ArenaAVL
+	 */
+	public ArenaAVL<T> reset() {
+		// Drop value references so they can be collected
+		Arrays.fill(this._values, 0, this._next, null);
+		this._root = EMPTY;
+		this._next = EMPTY + 1;
+		this._free = EMPTY;
+		this._count = 0;
+		this._cutoff = null;
+		return this;
+	}
+	
+	/**
+	 * Empties this tree and changes how many items it keeps, keeping its arrays for reuse
+	 * @param k The maximum number of items we should store
+	 * @return This ArenaAVL
+	 */
+	public ArenaAVL<T> reset(int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException(String.format("invalid k value %d, choose 0 or greater", k));
+		}
+		this._k = k;
+		return this.reset();
+	}
+	
+	/**
+	 * Inserts 'value' into this ArenaAVL.
+	 * @param value The value
+	 * @return This ArenaAVL
+	 */
+	public ArenaAVL<T> insert(T value) {
+		// If we don't have a cutoff assigned yet or the value is lte the cutoff, insert; with k = 0 we never do
+		if (this.getCount() < this.getK() || (this.getK() > 0 && value.compareTo(this.getCutoff()) <= 0)) {
+			this._root = this.insert(this._root, value);
+			
+			if (this.getCount() == this.getK()) {
+				// Don't increment, and remove the maximum item so we stay at k total
+				this._root = this.removeMax(this._root);
+				this._cutoff = this.max(this._root);
+			} else {
+				this._count++;
+				
+				// Just update the cutoff if we're now full
+				if (this.getCount() == this.getK()) {
+					this._cutoff = this.max(this._root);
+				}
+			}
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Calls callback with every value in this tree, in sorted order
+	 * @param callback The callback
+	 * @return This ArenaAVL
+	 */
+	public ArenaAVL<T> traverse(Consumer<? super T> callback) {
+		this.traverse(this._root, callback);
+		return this;
+	}
+	
+	/**
+	 * Returns the cutoff item. Any greater items than this item will not be added.
+	 * @return The cutoff item
+	 */
+	public T getCutoff() {
+		return this._cutoff;
+	}
+	
+	/**
+	 * Returns the maximum number of items we can store
+	 * @return The maximum number of items
+	 */
+	public int getK() {
+		return this._k;
+	}
+	
+	/**
+	 * Returns the count of items in this ArenaAVL
+	 * @return The item count
+	 */
+	public int getCount() {
+		return this._count;
+	}
+	
+	/**
+	 * Returns the number of nodes this tree can hold without growing
+	 * @return The capacity
+	 */
+	public int getCapacity() {
+		return this._left.length - 1;
+	}
+	
+	/**
+	 * Gets the idx-th stat from the stats array
+	 * @param idx The index
+	 * @return    The stat value
+	 */
+	public int getStat(int idx) {
+		if (idx < 0 || idx >= this._stats.length) {
+			throw new IllegalArgumentException(String.format("invalid stat idx %d", idx));
+		}
+		return this._stats[idx];
+	}
+	
+	/**
+	 * Inserts value into the subtree at node
+	 * @param node  The subtree
+	 * @param value The value
+	 * @return The subtree resulting from insertion
+	 */
+	private int insert(int node, T value) {
+		if (node == EMPTY) {
+			return this.allocate(value);
+		}
+		
+		// Insertion may grow the arrays, so assign through them only after it returns
+		if (value.compareTo(this.get(node)) <= 0) {
+			int left = this.insert(this._left[node], value);
+			this._left[node] = left;
+		} else {
+			int right = this.insert(this._right[node], value);
+			this._right[node] = right;
+		}
+		return this.balance(node, false);
+	}
+	
+	/**
+	 * Removes the maximum value from the subtree at node
+	 * @param node The subtree
+	 * @return The subtree resulting from removal
+	 */
+	private int removeMax(int node) {
+		if (this._right[node] == EMPTY) {
+			// This is the maximum, replace it with the left subtree
+			int ret = this._left[node];
+			this.release(node);
+			return ret;
+		}
+		
+		this._right[node] = this.removeMax(this._right[node]);
+		return this.balance(node, true);
+	}
+	
+	/**
+	 * Returns the maximum value in the subtree at node
+	 * @param node The subtree
+	 * @return The maximum, or null if the subtree is empty
+	 */
+	private T max(int node) {
+		if (node == EMPTY) {
+			return null;
+		}
+		while (this._right[node] != EMPTY) {
+			node = this._right[node];
+		}
+		return this.get(node);
+	}
+	
+	/**
+	 * Calls callback with every value in the subtree at node, in sorted order
+	 * @param node     The subtree
+	 * @param callback The callback
+	 */
+	private void traverse(int node, Consumer<? super T> callback) {
+		if (node != EMPTY) {
+			this.traverse(this._left[node], callback);
+			callback.accept(this.get(node));
+			this.traverse(this._right[node], callback);
+		}
+	}
+	
+	/**
+	 * Stringifies the subtree at node
+	 * @param node    The subtree
+	 * @param builder The builder
+	 */
+	private void stringify(int node, StringBuilder builder) {
+		if (node == EMPTY) {
+			builder.append("()");
+		} else {
+			builder.append("(");
+			this.stringify(this._left[node], builder);
+			builder.append(" [val=").append(this.get(node).toString().replace('(', '[').replace(')', ']')).append(",height=").append(this._height[node]).append("] ");
+			this.stringify(this._right[node], builder);
+			builder.append(")");
+		}
+	}
+	
+	/**
+	 * Rebalances the subtree at node after one of its children changed height
+	 * @param node    The subtree
+	 * @param removal Whether the change was a removal
+	 * @return The rebalanced subtree
+	 */
+	private int balance(int node, boolean removal) {
+		int left = this._left[node], right = this._right[node];
+		int diff = this._height[left] - this._height[right];
+		if (diff > 1) {
+			// Unbalanced to the left
+			if (this._height[this._left[left]] >= this._height[this._right[left]]) {
+				this.incrementStat(removal ? AVL.AVL_ROTATE_AR : AVL.AVL_ROTATE_LL);
+			} else {
+				this.incrementStat(removal ? AVL.AVL_ROTATE_AR : AVL.AVL_ROTATE_LR);
+				this._left[node] = this.rotateLeft(left);
+			}
+			return this.rotateRight(node);
+		} else if (diff < -1) {
+			// Unbalanced to the right
+			if (this._height[this._right[right]] >= this._height[this._left[right]]) {
+				this.incrementStat(removal ? AVL.AVL_ROTATE_AR : AVL.AVL_ROTATE_RR);
+			} else {
+				this.incrementStat(removal ? AVL.AVL_ROTATE_AR : AVL.AVL_ROTATE_RL);
+				this._right[node] = this.rotateRight(right);
+			}
+			return this.rotateLeft(node);
+		}
+		
+		this.setHeight(node);
+		return node;
+	}
+	
+	/**
+	 * Rotates the subtree at node to the left, so its right child becomes the root
+	 * @param node The subtree
+	 * @return The new root
+	 */
+	private int rotateLeft(int node) {
+		int ret = this._right[node];
+		this._right[node] = this._left[ret];
+		this._left[ret] = node;
+		this.setHeight(node);
+		this.setHeight(ret);
+		return ret;
+	}
+	
+	/**
+	 * Rotates the subtree at node to the right, so its left child becomes the root
+	 * @param node The subtree
+	 * @return The new root
+	 */
+	private int rotateRight(int node) {
+		int ret = this._left[node];
+		this._left[node] = this._right[ret];
+		this._right[ret] = node;
+		this.setHeight(node);
+		this.setHeight(ret);
+		return ret;
+	}
+	
+	/**
+	 * Updates the height of node from its children
+	 * @param node The node
+	 */
+	private void setHeight(int node) {
+		this._height[node] = Math.max(this._height[this._left[node]], this._height[this._right[node]]) + 1;
+	}
+	
+	/**
+	 * Returns the value at node
+	 * @param node The node
+	 * @return The value
+	 */
+	@SuppressWarnings("unchecked")
+	private T get(int node) {
+		return (T)this._values[node];
+	}
+	
+	/**
+	 * Allocates a leaf node holding value, reusing a released node if there is one
+	 * @param value The value
+	 * @return The node
+	 */
+	private int allocate(T value) {
+		int ret;
+		if (this._free != EMPTY) {
+			ret = this._free;
+			this._free = this._left[ret];
+		} else {
+			if (this._next == this._left.length) {
+				this.grow();
+			}
+			ret = this._next++;
+		}
+		
+		this._left[ret] = this._right[ret] = EMPTY;
+		this._height[ret] = 0;
+		this._values[ret] = value;
+		return ret;
+	}
+	
+	/**
+	 * Puts node on the free list
+	 * @param node The node
+	 */
+	private void release(int node) {
+		this._values[node] = null;
+		this._left[node] = this._free;
+		this._free = node;
+	}
+	
+	/**
+	 * Doubles the node arrays
+	 */
+	private void grow() {
+		int capacity = this._left.length * 2;
+		this._left = Arrays.copyOf(this._left, capacity);
+		this._right = Arrays.copyOf(this._right, capacity);
+		this._height = Arrays.copyOf(this._height, capacity);
+		this._values = Arrays.copyOf(this._values, capacity);
+	}
+	
+	/**
+	 * Increments the idx-th stat in the stats array
+	 * @param idx The index
+	 */
+	private void incrementStat(int idx) {
+		this._stats[idx]++;
+	}
+}
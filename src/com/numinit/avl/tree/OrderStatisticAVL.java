@@ -0,0 +1,611 @@
+package com.numinit.avl.tree;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A general sorted container backed by an AVL tree whose nodes track their subtree sizes,
+ * giving O(log n) rank and select alongside insertion and deletion of any value.
+ * Every operation is iterative, so trees of any size are safe to use.
+ * Equal values are kept; they iterate in insertion order.
+ * @author Morgan Jones
+ *
+ * @param <T> The type to stick in the tree's nodes. Must implement Comparable<T>.
+ */
+public class OrderStatisticAVL<T extends Comparable<T>> implements Iterable<T> {
+	/**
+	 * The deepest path we can ever walk. An AVL tree of height 64 has more nodes than we can count.
+	 */
+	private static final int MAX_HEIGHT = 64;
+	
+	/**
+	 * A tree node
+	 * @author Morgan Jones
+	 *
+	 * @param <T> The value type
+	 */
+	private static final class Node<T> {
+		/**
+		 * This node's value
+		 */
+		private T _val;
+		
+		/**
+		 * Left and right children, or null
+		 */
+		private Node<T> _left, _right;
+		
+		/**
+		 * The height and size of the subtree rooted here
+		 */
+		private int _height, _size;
+		
+		/**
+		 * Initializes a leaf node
+		 * @param val The value
+		 */
+		public Node(T val) {
+			this._val = val;
+			this._height = this._size = 1;
+		}
+	}
+	
+	/**
+	 * This tree's root
+	 */
+	private Node<T> _root;
+	
+	/**
+	 * A reusable stack of nodes on the path from the root
+	 */
+	private Node<T>[] _path;
+	
+	/**
+	 * A reusable stack for join, which split calls while walking _path
+	 */
+	private Node<T>[] _spine;
+	
+	/**
+	 * Initializes an empty OrderStatisticAVL
+	 */
+	@SuppressWarnings("unchecked")
+	public OrderStatisticAVL() {
+		this._root = null;
+		this._path = (Node<T>[])new Node<?>[MAX_HEIGHT];
+		this._spine = (Node<T>[])new Node<?>[MAX_HEIGHT];
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[size=%d,height=%d]@%#08x>", this.getClass().getSimpleName(), this.size(), this.getHeight(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Builds a tree from sorted values in O(n)
+	 * @param values The values, in ascending order
+	 * @return The tree
+	 */
+	public static <T extends Comparable<T>> OrderStatisticAVL<T> fromSorted(List<? extends T> values) {
+		for (int i = 1; i < values.size(); i++) {
+			if (values.get(i - 1).compareTo(values.get(i)) > 0) {
+				throw new IllegalArgumentException(String.format("values are not sorted at index %d", i));
+			}
+		}
+		
+		OrderStatisticAVL<T> ret = new OrderStatisticAVL<T>();
+		if (values.isEmpty()) {
+			return ret;
+		}
+		
+		// Split each range at its midpoint, so sibling subtrees differ in size by at most one.
+		// Each frame is a range [lo, hi) and the node whose child it becomes.
+		int[] los = new int[2 * MAX_HEIGHT], his = new int[2 * MAX_HEIGHT];
+		@SuppressWarnings("unchecked")
+		Node<T>[] parents = (Node<T>[])new Node<?>[2 * MAX_HEIGHT];
+		boolean[] lefts = new boolean[2 * MAX_HEIGHT];
+		int top = 0;
+		los[top] = 0;
+		his[top] = values.size();
+		parents[top] = null;
+		top++;
+		
+		while (top > 0) {
+			top--;
+			int lo = los[top], hi = his[top];
+			Node<T> parent = parents[top];
+			boolean left = lefts[top];
+			if (lo >= hi) {
+				continue;
+			}
+			
+			int mid = (lo + hi) >>> 1;
+			Node<T> node = new Node<T>(values.get(mid));
+			node._size = hi - lo;
+			node._height = 32 - Integer.numberOfLeadingZeros(hi - lo);
+			if (parent == null) {
+				ret._root = node;
+			} else if (left) {
+				parent._left = node;
+			} else {
+				parent._right = node;
+			}
+			
+			los[top] = lo; his[top] = mid; parents[top] = node; lefts[top] = true; top++;
+			los[top] = mid + 1; his[top] = hi; parents[top] = node; lefts[top] = false; top++;
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the number of values in this tree
+	 * @return The size
+	 */
+	public int size() {
+		return size(this._root);
+	}
+	
+	/**
+	 * Returns whether this tree is empty
+	 * @return True if empty
+	 */
+	public boolean isEmpty() {
+		return this._root == null;
+	}
+	
+	/**
+	 * Returns this tree's height
+	 * @return The height
+	 */
+	public int getHeight() {
+		return height(this._root);
+	}
+	
+	/**
+	 * Removes every value from this tree
+	 * @return This tree
+	 */
+	public OrderStatisticAVL<T> clear() {
+		this._root = null;
+		return this;
+	}
+	
+	/**
+	 * Inserts value into this tree, after any equal values
+	 * @param value The value
+	 * @return This tree
+	 */
+	public OrderStatisticAVL<T> insert(T value) {
+		if (value == null) {
+			throw new IllegalArgumentException("value must not be null");
+		}
+		
+		// Walk down to the insertion point
+		int depth = 0;
+		Node<T> node = this._root;
+		while (node != null) {
+			this._path[depth++] = node;
+			node = value.compareTo(node._val) < 0 ? node._left : node._right;
+		}
+		
+		// Hang the new leaf and rebalance on the way back up
+		Node<T> child = new Node<T>(value);
+		if (depth == 0) {
+			this._root = child;
+		} else {
+			Node<T> parent = this._path[depth - 1];
+			if (value.compareTo(parent._val) < 0) {
+				parent._left = child;
+			} else {
+				parent._right = child;
+			}
+			this.rebalancePath(depth);
+		}
+		return this;
+	}
+	
+	/**
+	 * Removes one value equal to value from this tree
+	 * @param value The value
+	 * @return True if a value was removed
+	 */
+	public boolean remove(T value) {
+		// Find the node
+		int depth = 0;
+		Node<T> node = this._root;
+		while (node != null) {
+			int comparison = value.compareTo(node._val);
+			if (comparison == 0) {
+				break;
+			}
+			this._path[depth++] = node;
+			node = comparison < 0 ? node._left : node._right;
+		}
+		if (node == null) {
+			return false;
+		}
+		
+		if (node._left != null && node._right != null) {
+			// Take the successor's value, then unlink the successor instead
+			this._path[depth++] = node;
+			Node<T> successor = node._right;
+			while (successor._left != null) {
+				this._path[depth++] = successor;
+				successor = successor._left;
+			}
+			node._val = successor._val;
+			node = successor;
+		}
+		
+		// The node now has at most one child, which takes its place
+		this.replaceChild(depth, node, node._left != null ? node._left : node._right);
+		this.rebalancePath(depth);
+		return true;
+	}
+	
+	/**
+	 * Returns whether this tree holds a value equal to value
+	 * @param value The value
+	 * @return True if found
+	 */
+	public boolean contains(T value) {
+		Node<T> node = this._root;
+		while (node != null) {
+			int comparison = value.compareTo(node._val);
+			if (comparison == 0) {
+				return true;
+			}
+			node = comparison < 0 ? node._left : node._right;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the idx-th smallest value
+	 * @param idx The index, from 0
+	 * @return The value
+	 */
+	public T select(int idx) {
+		if (idx < 0 || idx >= this.size()) {
+			throw new IndexOutOfBoundsException(String.format("invalid index %d for size %d", idx, this.size()));
+		}
+		
+		Node<T> node = this._root;
+		while (true) {
+			int leftSize = size(node._left);
+			if (idx < leftSize) {
+				node = node._left;
+			} else if (idx > leftSize) {
+				idx -= leftSize + 1;
+				node = node._right;
+			} else {
+				return node._val;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of values strictly less than value
+	 * @param value The value
+	 * @return The rank
+	 */
+	public int rank(T value) {
+		int ret = 0;
+		Node<T> node = this._root;
+		while (node != null) {
+			if (node._val.compareTo(value) < 0) {
+				ret += size(node._left) + 1;
+				node = node._right;
+			} else {
+				node = node._left;
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the smallest value, or null if empty
+	 * @return The minimum
+	 */
+	public T min() {
+		Node<T> node = this._root;
+		if (node == null) {
+			return null;
+		}
+		while (node._left != null) {
+			node = node._left;
+		}
+		return node._val;
+	}
+	
+	/**
+	 * Returns the largest value, or null if empty
+	 * @return The maximum
+	 */
+	public T max() {
+		Node<T> node = this._root;
+		if (node == null) {
+			return null;
+		}
+		while (node._right != null) {
+			node = node._right;
+		}
+		return node._val;
+	}
+	
+	@Override
+	public Iterator<T> iterator() {
+		return this.range(null, null).iterator();
+	}
+	
+	/**
+	 * Returns the values v with lo <= v < hi, in ascending order
+	 * @param lo The inclusive lower bound, or null for no bound
+	 * @param hi The exclusive upper bound, or null for no bound
+	 * @return An iterable over the values
+	 */
+	public Iterable<T> range(final T lo, final T hi) {
+		final Node<T> root = this._root;
+		return new Iterable<T>() {
+			@Override
+			public Iterator<T> iterator() {
+				return new Iterator<T>() {
+					/**
+					 * Nodes whose value and right subtree are still to come
+					 */
+					private ArrayDeque<Node<T>> _stack = this.descend(new ArrayDeque<Node<T>>(), root);
+					
+					@Override
+					public boolean hasNext() {
+						return !this._stack.isEmpty() && (hi == null || this._stack.peek()._val.compareTo(hi) < 0);
+					}
+					
+					@Override
+					public T next() {
+						if (!this.hasNext()) {
+							throw new NoSuchElementException();
+						}
+						Node<T> node = this._stack.pop();
+						this.descend(this._stack, node._right);
+						return node._val;
+					}
+					
+					/**
+					 * Pushes the path to the smallest value >= lo in a subtree
+					 * @param stack The stack
+					 * @param node  The subtree
+					 * @return The stack
+					 */
+					private ArrayDeque<Node<T>> descend(ArrayDeque<Node<T>> stack, Node<T> node) {
+						while (node != null) {
+							if (lo != null && node._val.compareTo(lo) < 0) {
+								node = node._right;
+							} else {
+								stack.push(node);
+								node = node._left;
+							}
+						}
+						return stack;
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Moves every value >= value out of this tree and into a new one, in O(log n)
+	 * @param value The value to split at
+	 * @return A new tree with the values >= value
+	 */
+	public OrderStatisticAVL<T> split(T value) {
+		// Walk down, remembering which side of the split each node on the path falls on
+		int depth = 0;
+		Node<T> node = this._root;
+		while (node != null) {
+			this._path[depth++] = node;
+			node = node._val.compareTo(value) < 0 ? node._right : node._left;
+		}
+		
+		// Rebuild both sides from the bottom up, joining each node with the subtree it keeps
+		Node<T> left = null, right = null;
+		for (int i = depth - 1; i >= 0; i--) {
+			node = this._path[i];
+			if (node._val.compareTo(value) < 0) {
+				left = this.join(node._left, node, left);
+			} else {
+				right = this.join(right, node, node._right);
+			}
+		}
+		
+		OrderStatisticAVL<T> ret = new OrderStatisticAVL<T>();
+		ret._root = right;
+		this._root = left;
+		return ret;
+	}
+	
+	/**
+	 * Moves every value out of other and onto the end of this tree, in O(log n).
+	 * Every value in other must be >= every value in this tree.
+	 * @param other The other tree
+	 * @return This tree
+	 */
+	public OrderStatisticAVL<T> join(OrderStatisticAVL<T> other) {
+		if (other == this) {
+			throw new IllegalArgumentException("cannot join a tree with itself");
+		} else if (other.isEmpty()) {
+			return this;
+		} else if (this.isEmpty()) {
+			this._root = other._root;
+			other._root = null;
+			return this;
+		} else if (this.max().compareTo(other.min()) > 0) {
+			throw new IllegalArgumentException("values in the joined tree must not be less than values in this tree");
+		}
+		
+		// Use other's minimum as the key between the two trees
+		T key = other.min();
+		other.remove(key);
+		this._root = this.join(this._root, new Node<T>(key), other._root);
+		other._root = null;
+		return this;
+	}
+	
+	/**
+	 * Joins two subtrees and a key node that sorts between them into one balanced subtree
+	 * @param left  The left subtree
+	 * @param key   The key node, whose children are replaced
+	 * @param right The right subtree
+	 * @return The joined subtree
+	 */
+	private Node<T> join(Node<T> left, Node<T> key, Node<T> right) {
+		int leftHeight = height(left), rightHeight = height(right);
+		if (Math.abs(leftHeight - rightHeight) <= 1) {
+			key._left = left;
+			key._right = right;
+			update(key);
+			return key;
+		}
+		
+		// Walk down the taller tree's inner spine to a subtree about as tall as the shorter tree
+		boolean leftTaller = leftHeight > rightHeight;
+		Node<T> root = leftTaller ? left : right, node = root;
+		int shorter = Math.min(leftHeight, rightHeight), depth = 0;
+		while (height(node) > shorter + 1) {
+			this._spine[depth++] = node;
+			node = leftTaller ? node._right : node._left;
+		}
+		
+		// Hang the key there, then rebalance back up
+		if (leftTaller) {
+			key._left = node;
+			key._right = right;
+			update(key);
+			this._spine[depth - 1]._right = key;
+		} else {
+			key._left = left;
+			key._right = node;
+			update(key);
+			this._spine[depth - 1]._left = key;
+		}
+		
+		for (int i = depth - 1; i >= 0; i--) {
+			Node<T> balanced = rebalance(this._spine[i]);
+			if (i > 0) {
+				if (leftTaller) {
+					this._spine[i - 1]._right = balanced;
+				} else {
+					this._spine[i - 1]._left = balanced;
+				}
+			} else {
+				root = balanced;
+			}
+		}
+		return root;
+	}
+	
+	/**
+	 * Replaces the child of _path[depth - 1] that is old with replacement, or the root if depth is 0
+	 * @param depth       The depth of old
+	 * @param old         The old child
+	 * @param replacement The replacement
+	 */
+	private void replaceChild(int depth, Node<T> old, Node<T> replacement) {
+		if (depth == 0) {
+			this._root = replacement;
+		} else if (this._path[depth - 1]._left == old) {
+			this._path[depth - 1]._left = replacement;
+		} else {
+			this._path[depth - 1]._right = replacement;
+		}
+	}
+	
+	/**
+	 * Rebalances every node on _path[0 .. depth - 1], from the bottom up
+	 * @param depth The path length
+	 */
+	private void rebalancePath(int depth) {
+		for (int i = depth - 1; i >= 0; i--) {
+			Node<T> node = this._path[i], balanced = rebalance(node);
+			if (balanced != node) {
+				this.replaceChild(i, node, balanced);
+			}
+		}
+	}
+	
+	/**
+	 * Rebalances a subtree whose children are balanced and differ in height by at most two
+	 * @param node The subtree
+	 * @return The balanced subtree
+	 */
+	private static <T> Node<T> rebalance(Node<T> node) {
+		update(node);
+		int diff = height(node._left) - height(node._right);
+		if (diff > 1) {
+			if (height(node._left._left) < height(node._left._right)) {
+				node._left = rotateLeft(node._left);
+			}
+			return rotateRight(node);
+		} else if (diff < -1) {
+			if (height(node._right._right) < height(node._right._left)) {
+				node._right = rotateRight(node._right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+	
+	/**
+	 * Rotates a subtree to the left, so its right child becomes the root
+	 * @param node The subtree
+	 * @return The new root
+	 */
+	private static <T> Node<T> rotateLeft(Node<T> node) {
+		Node<T> ret = node._right;
+		node._right = ret._left;
+		ret._left = node;
+		update(node);
+		update(ret);
+		return ret;
+	}
+	
+	/**
+	 * Rotates a subtree to the right, so its left child becomes the root
+	 * @param node The subtree
+	 * @return The new root
+	 */
+	private static <T> Node<T> rotateRight(Node<T> node) {
+		Node<T> ret = node._left;
+		node._left = ret._right;
+		ret._right = node;
+		update(node);
+		update(ret);
+		return ret;
+	}
+	
+	/**
+	 * Recomputes a node's height and size from its children
+	 * @param node The node
+	 */
+	private static <T> void update(Node<T> node) {
+		node._height = Math.max(height(node._left), height(node._right)) + 1;
+		node._size = size(node._left) + size(node._right) + 1;
+	}
+	
+	/**
+	 * Returns the height of a subtree
+	 * @param node The subtree, or null
+	 * @return The height
+	 */
+	private static <T> int height(Node<T> node) {
+		return node == null ? 0 : node._height;
+	}
+	
+	/**
+	 * Returns the size of a subtree
+	 * @param node The subtree, or null
+	 * @return The size
+	 */
+	private static <T> int size(Node<T> node) {
+		return node == null ? 0 : node._size;
+	}
+}
@@ -0,0 +1,74 @@
+package com.numinit.bench;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A small benchmark harness: runs a body some number of warmup and measured iterations,
+ * and reports the median and best time per operation.
+ * @author Morgan Jones
+ *
+ */
+public class Benchmark {
+	/**
+	 * A sink for consumed values
+	 */
+	private static volatile Object _sink;
+	
+	/**
+	 * Where to report results
+	 */
+	private PrintStream _out;
+	
+	/**
+	 * Warmup and measured iteration counts
+	 */
+	private int _warmup, _iterations;
+	
+	/**
+	 * Initializes this Benchmark
+	 * @param out        Where to report results
+	 * @param warmup     The number of unmeasured iterations
+	 * @param iterations The number of measured iterations
+	 */
+	public Benchmark(PrintStream out, int warmup, int iterations) {
+		if (warmup < 0 || iterations <= 0) {
+			throw new IllegalArgumentException("need at least 0 warmup iterations and 1 measured iteration");
+		}
+		this._out = out;
+		this._warmup = warmup;
+		this._iterations = iterations;
+	}
+	
+	/**
+	 * Runs body, reporting nanoseconds per operation
+	 * @param name The name to report
+	 * @param ops  The number of operations each run of body performs
+	 * @param body The body
+	 * @return The median nanoseconds per operation
+	 */
+	public double run(String name, int ops, Runnable body) {
+		for (int i = 0; i < this._warmup; i++) {
+			body.run();
+		}
+		
+		double[] times = new double[this._iterations];
+		for (int i = 0; i < this._iterations; i++) {
+			long start = System.nanoTime();
+			body.run();
+			times[i] = (System.nanoTime() - start) / (double)ops;
+		}
+		
+		Arrays.sort(times);
+		double median = times[times.length / 2];
+		this._out.format("%-40s %12.1f ns/op (best %.1f, %d ops x %d)\n", name, median, times[0], ops, this._iterations);
+		return median;
+	}
+	
+	/**
+	 * Keeps a value alive so the JIT can't discard the work that produced it
+	 * @param value The value
+	 */
+	public static void consume(Object value) {
+		_sink = value;
+	}
+}
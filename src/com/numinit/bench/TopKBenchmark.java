@@ -0,0 +1,52 @@
+package com.numinit.bench;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import com.numinit.avl.AVLTopKMachine;
+import com.numinit.avl.HeapTopKMachine;
+import com.numinit.avl.ITopKMachine;
+import com.numinit.interactive.CommandLine;
+
+/**
+ * Compares ITopKMachine implementations on a stream of random scores.
+ * @author Morgan Jones
+ *
+ */
+public class TopKBenchmark {
+	public static void main(String[] args) {
+		CommandLine cmdline = new CommandLine("TopKBenchmark", args)
+		.add(new CommandLine.Option<Integer>(Integer.class, "count", "n", 100000, "How many scores to insert per run", "number"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "iterations", "i", 10, "Measured iterations per benchmark", "number"))
+		.add(new CommandLine.Option<Long>(Long.class, "seed", "s", 215L, "The random seed", "number")).parse();
+		
+		Random random = new Random(cmdline.get(Long.class, "seed"));
+		final double[] scores = new double[cmdline.get(Integer.class, "count")];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = random.nextDouble();
+		}
+		
+		Benchmark bench = new Benchmark(System.out, 3, cmdline.get(Integer.class, "iterations"));
+		for (int k : new int[] {1, 10, 100}) {
+			run(bench, "AVLTopKMachine", k, scores, AVLTopKMachine<Integer>::new);
+			run(bench, "HeapTopKMachine", k, scores, HeapTopKMachine<Integer>::new);
+		}
+	}
+	
+	/**
+	 * Benchmarks one machine implementation
+	 * @param bench   The benchmark
+	 * @param name    The implementation's name
+	 * @param k       K
+	 * @param scores  The scores to insert
+	 * @param factory Builds an empty machine for k
+	 */
+	private static void run(Benchmark bench, String name, final int k, final double[] scores, final IntFunction<ITopKMachine<Integer>> factory) {
+		bench.run(String.format("%s[k=%d]", name, k), scores.length, () -> {
+			ITopKMachine<Integer> machine = factory.apply(k);
+			for (int i = 0; i < scores.length; i++) {
+				machine.insert(scores[i], i);
+			}
+			Benchmark.consume(machine.getTopK());
+		});
+	}
+}
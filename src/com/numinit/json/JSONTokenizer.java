@@ -0,0 +1,574 @@
+package com.numinit.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A pull tokenizer for JSON. It reads one token at a time from a fixed-size buffer and keeps only the current token,
+ * so memory stays the same however large the document is. Structure (commas, colons, nesting) is checked as we go.
+ * @author Morgan Jones
+ *
+ */
+public class JSONTokenizer implements Closeable {
+	/**
+	 * The default buffer size, in chars
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	/**
+	 * The deepest nesting we'll follow
+	 */
+	public static final int MAX_DEPTH = 256;
+	
+	/**
+	 * Tokens
+	 * @author Morgan Jones
+	 *
+	 */
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END
+	}
+	
+	/**
+	 * The reader
+	 */
+	private final Reader _in;
+	
+	/**
+	 * The buffer, the next char to read from it, and the end of what's in it
+	 */
+	private final char[] _buffer;
+	private int _pos, _limit;
+	
+	/**
+	 * Chars read before the start of the buffer
+	 */
+	private long _offset;
+	
+	/**
+	 * Whether each open container is an object (rather than an array), and how many are open
+	 */
+	private final boolean[] _objects;
+	private int _depth;
+	
+	/**
+	 * Whether the input is a sequence of documents, like NDJSON, rather than just one
+	 */
+	private boolean _sequence;
+	
+	/**
+	 * Whether we just read a whole value, or a name
+	 */
+	private boolean _afterValue, _afterName;
+	
+	/**
+	 * The current token
+	 */
+	private Token _token;
+	
+	/**
+	 * The current name or string, or the text of the current number
+	 */
+	private final StringBuilder _text;
+	
+	/**
+	 * The current number, and whether it's an integer that fits in a long
+	 */
+	private long _long;
+	private double _double;
+	private boolean _integral;
+	
+	/**
+	 * Initializes this JSONTokenizer
+	 * @param in The reader
+	 */
+	public JSONTokenizer(Reader in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Initializes this JSONTokenizer
+	 * @param in         The reader
+	 * @param bufferSize The buffer size, in chars
+	 */
+	public JSONTokenizer(Reader in, int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize must be positive");
+		}
+		this._in = in;
+		this._buffer = new char[bufferSize];
+		this._objects = new boolean[MAX_DEPTH];
+		this._text = new StringBuilder();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[token=%s,depth=%d,offset=%d]@%#08x>", this.getClass().getSimpleName(),
+				this._token, this._depth, this.getOffset(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Reads the next token
+	 * @return The token; END once the document (or sequence of them) is done
+	 * @throws IOException if the reader fails or the document isn't valid JSON
+	 */
+	public Token next() throws IOException {
+		return this._token = this.advance();
+	}
+	
+	/**
+	 * Reads the next token
+	 * @return The token
+	 * @throws IOException if the reader fails or the document isn't valid JSON
+	 */
+	private Token advance() throws IOException {
+		int c = this.skipWhitespace();
+		if (this._depth == 0) {
+			if (c < 0 && (this._afterValue || this._sequence)) {
+				return Token.END;
+			} else if (this._afterValue) {
+				if (!this._sequence) {
+					throw this.error("trailing characters after the document");
+				}
+				this._afterValue = false;
+			}
+			return this.value(c);
+		} else if (c < 0) {
+			throw this.error("unexpected end of input");
+		}
+		
+		boolean object = this._objects[this._depth - 1];
+		if (this._afterName) {
+			if (c != ':') {
+				throw this.error("expected ':'");
+			}
+			this._afterName = false;
+			return this.value(this.skipWhitespace());
+		}
+		
+		if (c == (object ? '}' : ']')) {
+			// Only ever straight after an open or a value; after a comma, we're looking for a name or value instead
+			this._depth--;
+			this._afterValue = true;
+			return object ? Token.END_OBJECT : Token.END_ARRAY;
+		} else if (this._afterValue) {
+			if (c != ',') {
+				throw this.error(object ? "expected ',' or '}'" : "expected ',' or ']'");
+			}
+			this._afterValue = false;
+			c = this.skipWhitespace();
+		}
+		
+		if (object) {
+			if (c != '"') {
+				throw this.error("expected a name");
+			}
+			this.readString();
+			this._afterName = true;
+			return Token.NAME;
+		}
+		return this.value(c);
+	}
+	
+	/**
+	 * Reads a value
+	 * @param c Its first char
+	 * @return Its token
+	 * @throws IOException if the reader fails or the value isn't valid
+	 */
+	private Token value(int c) throws IOException {
+		switch (c) {
+		case '{':
+		case '[':
+			if (this._depth == MAX_DEPTH) {
+				throw this.error("nested too deeply");
+			}
+			this._objects[this._depth++] = c == '{';
+			this._afterValue = false;
+			return c == '{' ? Token.BEGIN_OBJECT : Token.BEGIN_ARRAY;
+		case '"':
+			this.readString();
+			this._afterValue = true;
+			return Token.STRING;
+		case 't':
+			this.readLiteral("rue");
+			this._afterValue = true;
+			return Token.TRUE;
+		case 'f':
+			this.readLiteral("alse");
+			this._afterValue = true;
+			return Token.FALSE;
+		case 'n':
+			this.readLiteral("ull");
+			this._afterValue = true;
+			return Token.NULL;
+		case -1:
+			throw this.error("unexpected end of input");
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				this.readNumber(c);
+				this._afterValue = true;
+				return Token.NUMBER;
+			}
+			throw this.error(String.format("unexpected '%c'", (char)c));
+		}
+	}
+	
+	/**
+	 * Skips the rest of the value whose first token was just read: nothing for a scalar, and up to the matching close for a container
+	 * @throws IOException if the reader fails or the document isn't valid JSON
+	 */
+	public void skipValue() throws IOException {
+		if (this._token == Token.BEGIN_OBJECT || this._token == Token.BEGIN_ARRAY) {
+			int depth = this._depth - 1;
+			while (this._depth > depth) {
+				this.next();
+			}
+		} else if (this._token == Token.NAME) {
+			this.next();
+			this.skipValue();
+		}
+	}
+	
+	/**
+	 * Accepts any number of documents one after another, as in NDJSON, instead of just one. END comes at the end of input.
+	 * @param sequence Whether to
+	 * @return This JSONTokenizer
+	 */
+	public JSONTokenizer setSequence(boolean sequence) {
+		this._sequence = sequence;
+		return this;
+	}
+	
+	/**
+	 * Reads the next token and checks it's the one we wanted
+	 * @param token The token
+	 * @throws IOException if it isn't
+	 */
+	public void expect(Token token) throws IOException {
+		if (this.next() != token) {
+			throw this.error(String.format("expected %s, got %s", token, this._token));
+		}
+	}
+	
+	/**
+	 * @return the current token, or null before the first
+	 */
+	public Token getToken() {
+		return this._token;
+	}
+	
+	/**
+	 * @return the current name or string
+	 */
+	public String getString() {
+		if (this._token != Token.NAME && this._token != Token.STRING) {
+			throw new IllegalStateException(String.format("%s is not a string", this._token));
+		}
+		return this._text.toString();
+	}
+	
+	/**
+	 * Returns whether the current name or string equals some text, without making a String of it
+	 * @param text The text
+	 * @return True if it does
+	 */
+	public boolean isString(String text) {
+		if ((this._token != Token.NAME && this._token != Token.STRING) || this._text.length() != text.length()) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			if (this._text.charAt(i) != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return true if the current number is an integer that fits in a long
+	 */
+	public boolean isIntegral() {
+		return this._token == Token.NUMBER && this._integral;
+	}
+	
+	/**
+	 * @return the current number as it was written
+	 */
+	public String getNumberText() {
+		if (this._token != Token.NUMBER) {
+			throw new IllegalStateException(String.format("%s is not a number", this._token));
+		}
+		return this._text.toString();
+	}
+	
+	/**
+	 * @return the current number, which must be an integer that fits in a long
+	 */
+	public long getLong() {
+		if (!this.isIntegral()) {
+			throw new IllegalStateException(String.format("%s is not an integer", this._token == Token.NUMBER ? this._text : this._token));
+		}
+		return this._long;
+	}
+	
+	/**
+	 * @return the current number
+	 */
+	public double getDouble() {
+		if (this._token != Token.NUMBER) {
+			throw new IllegalStateException(String.format("%s is not a number", this._token));
+		}
+		return this._integral ? this._long : this._double;
+	}
+	
+	/**
+	 * @return how deeply nested the current token is
+	 */
+	public int getDepth() {
+		return this._depth;
+	}
+	
+	/**
+	 * @return how many chars have been read
+	 */
+	public long getOffset() {
+		return this._offset + this._pos;
+	}
+	
+	/**
+	 * Returns an exception for a problem at the current position, for callers checking the document's shape too
+	 * @param message The problem
+	 * @return The exception
+	 */
+	public IOException error(String message) {
+		return new IOException(String.format("%s at offset %d", message, this.getOffset()));
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this._in.close();
+	}
+	
+	/**
+	 * Refills the buffer once it's been read
+	 * @return False at the end of input
+	 * @throws IOException if the reader fails
+	 */
+	private boolean fill() throws IOException {
+		this._offset += this._limit;
+		this._pos = this._limit = 0;
+		int read;
+		while ((read = this._in.read(this._buffer, 0, this._buffer.length)) == 0) {
+		}
+		if (read < 0) {
+			return false;
+		}
+		this._limit = read;
+		return true;
+	}
+	
+	/**
+	 * @return the next char, or -1 at the end of input
+	 * @throws IOException if the reader fails
+	 */
+	private int read() throws IOException {
+		if (this._pos == this._limit && !this.fill()) {
+			return -1;
+		}
+		return this._buffer[this._pos++];
+	}
+	
+	/**
+	 * @return the next char without reading it, or -1 at the end of input
+	 * @throws IOException if the reader fails
+	 */
+	private int peek() throws IOException {
+		if (this._pos == this._limit && !this.fill()) {
+			return -1;
+		}
+		return this._buffer[this._pos];
+	}
+	
+	/**
+	 * @return the next char that isn't whitespace, or -1 at the end of input
+	 * @throws IOException if the reader fails
+	 */
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			int c = this.read();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the rest of a literal
+	 * @param rest Its chars after the first
+	 * @throws IOException if they're not there
+	 */
+	private void readLiteral(String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i++) {
+			if (this.read() != rest.charAt(i)) {
+				throw this.error("invalid literal");
+			}
+		}
+	}
+	
+	/**
+	 * Reads a string after its opening quote into _text
+	 * @throws IOException if the reader fails or the string isn't valid
+	 */
+	private void readString() throws IOException {
+		StringBuilder text = this._text;
+		text.setLength(0);
+		while (true) {
+			// Copy runs of plain chars straight out of the buffer
+			int start = this._pos;
+			char[] buffer = this._buffer;
+			while (this._pos < this._limit) {
+				char c = buffer[this._pos];
+				if (c == '"' || c == '\\' || c < 0x20) {
+					break;
+				}
+				this._pos++;
+			}
+			text.append(buffer, start, this._pos - start);
+			
+			int c = this.read();
+			if (c < 0) {
+				throw this.error("unterminated string");
+			} else if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				text.append(this.readEscape());
+			} else if (c < 0x20) {
+				throw this.error("control character in string");
+			} else {
+				// The run stopped because the buffer ran out
+				text.append((char)c);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an escape after its backslash
+	 * @return The char it stands for
+	 * @throws IOException if the reader fails or the escape isn't valid
+	 */
+	private char readEscape() throws IOException {
+		int c = this.read();
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return (char)c;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int ret = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(this.read(), 16);
+				if (digit < 0) {
+					throw this.error("invalid unicode escape");
+				}
+				ret = (ret << 4) | digit;
+			}
+			return (char)ret;
+		default:
+			throw this.error("invalid escape");
+		}
+	}
+	
+	/**
+	 * Reads a number. Integers that fit in a long are read straight into _long; anything else goes through Double.parseDouble.
+	 * @param first Its first char
+	 * @throws IOException if the reader fails or the number isn't valid
+	 */
+	private void readNumber(int first) throws IOException {
+		StringBuilder text = this._text;
+		text.setLength(0);
+		text.append((char)first);
+		boolean negative = first == '-';
+		int c = first;
+		if (negative) {
+			c = this.read();
+			text.append((char)c);
+			if (c < '0' || c > '9') {
+				throw this.error("invalid number");
+			}
+		}
+		
+		// Accumulate negatively, so Long.MIN_VALUE fits
+		long value = -(c - '0');
+		boolean integral = true;
+		if (c != '0') {
+			while ((c = this.peek()) >= '0' && c <= '9') {
+				this._pos++;
+				text.append((char)c);
+				int digit = c - '0';
+				if (value < (Long.MIN_VALUE + digit) / 10) {
+					integral = false;
+				}
+				value = value * 10 - digit;
+			}
+		}
+		
+		c = this.peek();
+		if (c == '.') {
+			integral = false;
+			this._pos++;
+			text.append('.');
+			this.readDigits(text);
+		}
+		c = this.peek();
+		if (c == 'e' || c == 'E') {
+			integral = false;
+			this._pos++;
+			text.append((char)c);
+			c = this.peek();
+			if (c == '+' || c == '-') {
+				this._pos++;
+				text.append((char)c);
+			}
+			this.readDigits(text);
+		}
+		
+		if (integral && !negative && value == Long.MIN_VALUE) {
+			integral = false;
+		}
+		this._integral = integral;
+		if (integral) {
+			this._long = negative ? value : -value;
+		} else {
+			this._double = Double.parseDouble(text.toString());
+		}
+	}
+	
+	/**
+	 * Reads one or more digits
+	 * @param text Where to append them
+	 * @throws IOException if there aren't any
+	 */
+	private void readDigits(StringBuilder text) throws IOException {
+		int c, count = 0;
+		while ((c = this.peek()) >= '0' && c <= '9') {
+			this._pos++;
+			text.append((char)c);
+			count++;
+		}
+		if (count == 0) {
+			throw this.error("invalid number");
+		}
+	}
+}
@@ -1,10 +1,19 @@
 package com.numinit.mtree;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import com.numinit.avl.AVLTopKMachine;
+import com.numinit.avl.ConcurrentTopKMachine;
+import com.numinit.avl.HeapTopKMachine;
 import com.numinit.avl.ITopKMachine;
+import com.numinit.avl.TopKStatistics;
+import com.numinit.mtree.event.MTreeFindEvent;
+import com.numinit.mtree.event.MTreeInsertEvent;
+import com.numinit.mtree.event.MTreeKClosestEvent;
+import com.numinit.mtree.node.IMTreeLeafObserver;
 import com.numinit.mtree.node.IMTreeNode;
 import com.numinit.mtree.node.IMTreeTraversalCallback;
+import com.numinit.mtree.node.MTreeLNode;
 import com.numinit.mtree.node.MTreeNodeFactory;
 import com.numinit.mtree.point.IPointInMetricSpace;
 import com.numinit.mtree.utils.DataWrapper;
@@ -15,6 +24,11 @@ import com.numinit.mtree.utils.DataWrapper;
  *
  */
 public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V> {
+	/**
+	 * How many levels below the root a parallel search forks tasks at
+	 */
+	public static final int PARALLEL_FORK_DEPTH = 3;
+	
 	/**
 	 * Limits on internal and leaf nodes
 	 */
@@ -29,6 +43,21 @@ public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V>
 	 * A factory for producing nodes
 	 */
 	private MTreeNodeFactory<K, V> _factory;
+	
+	/**
+	 * Insert, split and query counters
+	 */
+	private MTreeStatistics _statistics;
+	
+	/**
+	 * Every leaf ever created, by id
+	 */
+	private ArrayList<MTreeLNode<K, V>> _leaves;
+	
+	/**
+	 * Told where values land, or null
+	 */
+	private IMTreeLeafObserver<K, V> _observer;
 
 	/**
 	 * Initializes this MTree
@@ -42,6 +71,8 @@ public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V>
 		this._maxInternal = maxInternal;
 		this._maxLeaf = maxLeaf;
 		this._factory = new MTreeNodeFactory<K, V>(this);
+		this._statistics = new MTreeStatistics();
+		this._leaves = new ArrayList<MTreeLNode<K, V>>();
 		this._root = this.getNodeFactory().getNewLNode();
 	}
 	
@@ -53,12 +84,25 @@ public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V>
 	
 	@Override
 	public void insert(K key, V value) {
+		MTreeInsertEvent event = new MTreeInsertEvent();
+		event.begin();
+		long splits = event.isEnabled() ? this._statistics.getLeafSplits() + this._statistics.getInternalSplits() : 0;
+		
+		this._statistics.recordInsert();
 		IMTreeNode<K, V> node = this._root.insert(key, value);
 		
 		// Re-root the tree if we ended up splitting the root
-		if (node != this._root) {
+		boolean reroot = node != this._root;
+		if (reroot) {
+			this._statistics.recordReroot();
 			this._root = this.getNodeFactory().getNewINode().push(this._root.getCentroid(), this._root).push(node.getCentroid(), node);
 		}
+		
+		if (event.shouldCommit()) {
+			event.splits = (int)(this._statistics.getLeafSplits() + this._statistics.getInternalSplits() - splits);
+			event.reroot = reroot;
+			event.commit();
+		}
 	}
 
 	@Override
@@ -67,8 +111,18 @@ public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V>
 			throw new IllegalArgumentException("distance must be >= 0");
 		}
 		
+		MTreeFindEvent event = new MTreeFindEvent();
+		event.begin();
+		this._statistics.getFinds().mark();
 		ArrayList<DataWrapper<K, V>> ret = new ArrayList<DataWrapper<K, V>>();
-		this._root.find(query, distance, ret);
+		int visited = this._root.find(query, distance, ret);
+		
+		if (event.shouldCommit()) {
+			event.radius = distance;
+			event.results = ret.size();
+			event.nodesVisited = visited;
+			event.commit();
+		}
 		return ret;
 	}
 
@@ -77,11 +131,159 @@ public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V>
 		if (k < 0) {
 			throw new IllegalArgumentException("k must be >= 0");
 		}
-		ITopKMachine<DataWrapper<K, V>> topKMachine = new AVLTopKMachine<DataWrapper<K, V>>(k);
-		this._root.find(query, topKMachine);
-		return topKMachine.getTopK();
+		return this.findKClosest(query, new HeapTopKMachine<DataWrapper<K, V>>(k), k);
+	}
+	
+	/**
+	 * Find the closest key/data pairs in the map to a particular query point, using the given ITopKMachine.
+	 * The machine decides how many pairs are returned.
+	 * @param query The query
+	 * @param topK  An empty ITopKMachine
+	 * @return The closest points
+	 */
+	public ArrayList<DataWrapper<K, V>> findKClosest(K query, ITopKMachine<DataWrapper<K, V>> topK) {
+		return this.findKClosest(query, topK, -1);
+	}
+	
+	/**
+	 * Find the closest key/data pairs in the map to a particular query point, using the given ITopKMachine.
+	 * @param query The query
+	 * @param topK  An empty ITopKMachine
+	 * @param k     The number of pairs topK was made for, or -1 if unknown; only used for recording
+	 * @return The closest points
+	 */
+	private ArrayList<DataWrapper<K, V>> findKClosest(K query, ITopKMachine<DataWrapper<K, V>> topK, int k) {
+		MTreeKClosestEvent event = new MTreeKClosestEvent();
+		event.begin();
+		this._statistics.getKClosest().mark();
+		int visited = this._root.find(query, topK);
+		ArrayList<DataWrapper<K, V>> ret = topK.getTopK();
+		TopKStatistics.getInstance().recordResult(topK);
+		
+		if (event.shouldCommit()) {
+			event.k = k;
+			event.parallel = false;
+			event.results = ret.size();
+			event.nodesVisited = visited;
+			event.commit();
+		}
+		return ret;
 	}
 
+	/**
+	 * Find the k closest key/data pairs in the map to a particular query point, searching subtrees in parallel on pool.
+	 * Workers share the tightest cutoff found so far, so they prune as well as a sequential search would.
+	 * @param query The query
+	 * @param k     The number of items to return
+	 * @param pool  The pool to search on
+	 * @return The k closest points
+	 */
+	public ArrayList<DataWrapper<K, V>> findKClosest(final K query, int k, ForkJoinPool pool) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be >= 0");
+		}
+		MTreeKClosestEvent event = new MTreeKClosestEvent();
+		event.begin();
+		this._statistics.getKClosest().mark();
+		final ConcurrentTopKMachine<DataWrapper<K, V>> topK = new ConcurrentTopKMachine<DataWrapper<K, V>>(k);
+		int visited = pool.invoke(ForkJoinTask.adapt(() -> this._root.find(query, topK, PARALLEL_FORK_DEPTH)));
+		ArrayList<DataWrapper<K, V>> ret = topK.getTopK();
+		TopKStatistics.getInstance().recordResult(topK);
+		
+		if (event.shouldCommit()) {
+			event.k = k;
+			event.parallel = true;
+			event.results = ret.size();
+			event.nodesVisited = visited;
+			event.commit();
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns the key/data pair at a position
+	 * @param position The position, as reported to our IMTreeLeafObserver
+	 * @return The pair
+	 */
+	public DataWrapper<K, V> get(long position) {
+		return this.getLeaf(position).getMapping(getSlot(position));
+	}
+	
+	/**
+	 * Removes the key/data pair at a position. The last pair in its leaf moves into its slot, and is reported as placed there.
+	 * Covering radii aren't shrunk, so they stay correct but may be looser than a fresh tree's.
+	 * @param position The position, as reported to our IMTreeLeafObserver
+	 * @return The removed pair
+	 */
+	public DataWrapper<K, V> remove(long position) {
+		this._statistics.recordRemove();
+		return this.getLeaf(position).remove(getSlot(position));
+	}
+	
+	/**
+	 * Replaces the data at a position, keeping its key. Pairs already returned from queries aren't changed.
+	 * @param position The position, as reported to our IMTreeLeafObserver
+	 * @param value    The new data
+	 * @return The old pair
+	 */
+	public DataWrapper<K, V> replace(long position, V value) {
+		return this.getLeaf(position).replace(getSlot(position), value);
+	}
+	
+	/**
+	 * Sets what's told where values land. Values already in the tree aren't reported.
+	 * @param observer The observer, or null
+	 * @return This MTree
+	 */
+	public MTree<K, V> setLeafObserver(IMTreeLeafObserver<K, V> observer) {
+		this._observer = observer;
+		return this;
+	}
+	
+	/**
+	 * Gives a new leaf its id. Only leaves call this.
+	 * @param leaf The leaf
+	 * @return Its id
+	 */
+	public int addLeaf(MTreeLNode<K, V> leaf) {
+		this._leaves.add(leaf);
+		return this._leaves.size() - 1;
+	}
+	
+	/**
+	 * Reports a value landing in a leaf slot. Only leaves call this.
+	 * @param leaf  The leaf's id
+	 * @param slot  The slot
+	 * @param value The value
+	 */
+	public void placed(int leaf, int slot, V value) {
+		if (this._observer != null) {
+			this._observer.placed(value, ((long)leaf << 32) | slot);
+		}
+	}
+	
+	/**
+	 * Returns the leaf a position is in
+	 * @param position The position
+	 * @return The leaf
+	 */
+	private MTreeLNode<K, V> getLeaf(long position) {
+		int leaf = (int)(position >>> 32);
+		if (leaf >= this._leaves.size()) {
+			throw new IndexOutOfBoundsException(String.format("no leaf %d", leaf));
+		}
+		return this._leaves.get(leaf);
+	}
+	
+	/**
+	 * Returns the slot a position is in
+	 * @param position The position
+	 * @return The slot
+	 */
+	private static int getSlot(long position) {
+		return (int)position;
+	}
+	
 	@Override
 	public int depth() {
 		return this._root.getDepth();
@@ -95,6 +297,22 @@ public class MTree<K extends IPointInMetricSpace<K>, V> implements IMTree<K, V>
 		this._root.traverse(callback);
 	}
 	
+	/**
+	 * Returns this MTree's insert, split and query counters
+	 * @return The statistics
+	 */
+	public MTreeStatistics getStatistics() {
+		return this._statistics;
+	}
+	
+	/**
+	 * Takes a snapshot of this MTree's shape. This visits every node.
+	 * @return The shape
+	 */
+	public MTreeShape getShape() {
+		return new MTreeShape(this);
+	}
+	
 	/**
 	 * Returns the max number of internal entries in the nodes of this MTree
 	 * @return The max number of internal entries in the nodes of this MTree
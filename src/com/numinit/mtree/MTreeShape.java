@@ -0,0 +1,119 @@
+package com.numinit.mtree;
+
+import com.numinit.mtree.node.IMTreeTraversalCallback;
+import com.numinit.mtree.node.MTreeINode;
+import com.numinit.mtree.node.MTreeLNode;
+import com.numinit.mtree.point.IPointInMetricSpace;
+
+/**
+ * A snapshot of an MTree's shape, taken by traversing every node.
+ * @author Morgan Jones
+ *
+ */
+public class MTreeShape {
+	/**
+	 * The depth of the tree
+	 */
+	private int _depth;
+	
+	/**
+	 * Node counts
+	 */
+	private long _internalNodes, _leafNodes;
+	
+	/**
+	 * Entry counts, and slots available, across internal and leaf nodes
+	 */
+	private long _internalEntries, _leafEntries, _internalSlots, _leafSlots;
+	
+	/**
+	 * The sum of subtree radii under internal nodes
+	 */
+	private double _radiusSum;
+	
+	/**
+	 * Takes a snapshot of a tree's shape
+	 * @param tree The tree
+	 */
+	public <K extends IPointInMetricSpace<K>, V> MTreeShape(MTree<K, V> tree) {
+		this._depth = tree.depth();
+		tree.traverse(new IMTreeTraversalCallback<K, V>() {
+			@Override
+			public void operation(MTreeINode<K, V> internal) {
+				_internalNodes++;
+				_internalEntries += internal.getCurrentSize();
+				_internalSlots += internal.getLimit();
+				for (int i = 0; i < internal.getCurrentSize(); i++) {
+					_radiusSum += internal.getRadiusFor(i);
+				}
+			}
+			
+			@Override
+			public void operation(MTreeLNode<K, V> leaf) {
+				_leafNodes++;
+				_leafEntries += leaf.getCurrentSize();
+				_leafSlots += leaf.getLimit();
+			}
+		});
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[depth=%d,nodes=<internal=%d,leaf=%d>,size=%d,fill=%.2f,radius=%.2f]@%#08x>", this.getClass().getSimpleName(),
+				this.getDepth(), this.getInternalNodes(), this.getLeafNodes(), this.getSize(), this.getFillFactor(), this.getAverageRadius(),
+				System.identityHashCode(this));
+	}
+	
+	/**
+	 * @return the depth
+	 */
+	public int getDepth() {
+		return this._depth;
+	}
+	
+	/**
+	 * @return the number of internal nodes
+	 */
+	public long getInternalNodes() {
+		return this._internalNodes;
+	}
+	
+	/**
+	 * @return the number of leaf nodes
+	 */
+	public long getLeafNodes() {
+		return this._leafNodes;
+	}
+	
+	/**
+	 * @return the number of key/value pairs
+	 */
+	public long getSize() {
+		return this._leafEntries;
+	}
+	
+	/**
+	 * Returns the fraction of slots in use, across every node
+	 * @return The fill factor, from 0 to 1
+	 */
+	public double getFillFactor() {
+		long slots = this._internalSlots + this._leafSlots;
+		return slots == 0 ? 0.0d : (double)(this._internalEntries + this._leafEntries) / slots;
+	}
+	
+	/**
+	 * Returns the fraction of leaf slots in use
+	 * @return The fill factor, from 0 to 1
+	 */
+	public double getLeafFillFactor() {
+		return this._leafSlots == 0 ? 0.0d : (double)this._leafEntries / this._leafSlots;
+	}
+	
+	/**
+	 * Returns the mean covering radius of the subtrees under internal nodes
+	 * @return The average radius
+	 */
+	public double getAverageRadius() {
+		return this._internalEntries == 0 ? 0.0d : this._radiusSum / this._internalEntries;
+	}
+}
@@ -0,0 +1,120 @@
+package com.numinit.mtree;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.numinit.utils.RateMeter;
+
+/**
+ * Cumulative counters for an MTree: inserts, removals, splits and queries.
+ * @author Morgan Jones
+ *
+ */
+public class MTreeStatistics {
+	/**
+	 * Insert, removal, split and re-root counts
+	 */
+	private final LongAdder _inserts, _removes, _leafSplits, _internalSplits, _reroots;
+	
+	/**
+	 * Range and nearest-neighbor query meters
+	 */
+	private final RateMeter _finds, _kClosest;
+	
+	/**
+	 * Initializes this MTreeStatistics
+	 */
+	public MTreeStatistics() {
+		this._inserts = new LongAdder();
+		this._removes = new LongAdder();
+		this._leafSplits = new LongAdder();
+		this._internalSplits = new LongAdder();
+		this._reroots = new LongAdder();
+		this._finds = new RateMeter();
+		this._kClosest = new RateMeter();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[inserts=%d,removes=%d,splits=<leaf=%d,internal=%d>,reroots=%d,finds=%d,kClosest=%d]@%#08x>", this.getClass().getSimpleName(),
+				this.getInserts(), this.getRemoves(), this.getLeafSplits(), this.getInternalSplits(), this.getReroots(), this.getFinds().getCount(), this.getKClosest().getCount(),
+				System.identityHashCode(this));
+	}
+	
+	/**
+	 * Records an insert
+	 */
+	public void recordInsert() {
+		this._inserts.increment();
+	}
+	
+	/**
+	 * Records a removal
+	 */
+	public void recordRemove() {
+		this._removes.increment();
+	}
+	
+	/**
+	 * Records a node split
+	 * @param leaf Whether the split node was a leaf
+	 */
+	public void recordSplit(boolean leaf) {
+		(leaf ? this._leafSplits : this._internalSplits).increment();
+	}
+	
+	/**
+	 * Records the root splitting, which adds a level to the tree
+	 */
+	public void recordReroot() {
+		this._reroots.increment();
+	}
+	
+	/**
+	 * @return the number of inserts
+	 */
+	public long getInserts() {
+		return this._inserts.sum();
+	}
+	
+	/**
+	 * @return the number of removals
+	 */
+	public long getRemoves() {
+		return this._removes.sum();
+	}
+	
+	/**
+	 * @return the number of leaf splits
+	 */
+	public long getLeafSplits() {
+		return this._leafSplits.sum();
+	}
+	
+	/**
+	 * @return the number of internal node splits
+	 */
+	public long getInternalSplits() {
+		return this._internalSplits.sum();
+	}
+	
+	/**
+	 * @return the number of times the root split
+	 */
+	public long getReroots() {
+		return this._reroots.sum();
+	}
+	
+	/**
+	 * @return the range query meter
+	 */
+	public RateMeter getFinds() {
+		return this._finds;
+	}
+	
+	/**
+	 * @return the nearest-neighbor query meter
+	 */
+	public RateMeter getKClosest() {
+		return this._kClosest;
+	}
+}
@@ -0,0 +1,36 @@
+package com.numinit.mtree.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for an MTree range query
+ * @author Morgan Jones
+ *
+ */
+@Name("com.numinit.mtree.Find")
+@Label("MTree Find")
+@Category({"RoadTrip", "MTree"})
+@Description("A range query on an MTree")
+public class MTreeFindEvent extends Event {
+	/**
+	 * The query radius, in the tree's metric
+	 */
+	@Label("Radius")
+	public double radius;
+	
+	/**
+	 * The number of results
+	 */
+	@Label("Results")
+	public int results;
+	
+	/**
+	 * The number of nodes searched
+	 */
+	@Label("Nodes Visited")
+	public int nodesVisited;
+}
@@ -0,0 +1,30 @@
+package com.numinit.mtree.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for an MTree insert
+ * @author Morgan Jones
+ *
+ */
+@Name("com.numinit.mtree.Insert")
+@Label("MTree Insert")
+@Category({"RoadTrip", "MTree"})
+@Description("An insert into an MTree, including any node splits it caused")
+public class MTreeInsertEvent extends Event {
+	/**
+	 * The number of nodes the insert split
+	 */
+	@Label("Splits")
+	public int splits;
+	
+	/**
+	 * Whether the root split, adding a level to the tree
+	 */
+	@Label("Re-root")
+	public boolean reroot;
+}
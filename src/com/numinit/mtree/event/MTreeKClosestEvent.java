@@ -0,0 +1,42 @@
+package com.numinit.mtree.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for an MTree nearest-neighbor query
+ * @author Morgan Jones
+ *
+ */
+@Name("com.numinit.mtree.KClosest")
+@Label("MTree K Closest")
+@Category({"RoadTrip", "MTree"})
+@Description("A nearest-neighbor query on an MTree")
+public class MTreeKClosestEvent extends Event {
+	/**
+	 * The number of neighbors asked for, or -1 if the query's ITopKMachine decided
+	 */
+	@Label("K")
+	public int k;
+	
+	/**
+	 * Whether subtrees were searched in parallel
+	 */
+	@Label("Parallel")
+	public boolean parallel;
+	
+	/**
+	 * The number of results
+	 */
+	@Label("Results")
+	public int results;
+	
+	/**
+	 * The number of nodes searched
+	 */
+	@Label("Nodes Visited")
+	public int nodesVisited;
+}
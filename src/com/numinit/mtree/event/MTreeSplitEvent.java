@@ -0,0 +1,42 @@
+package com.numinit.mtree.event;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for an MTree node being clustered into two
+ * @author Morgan Jones
+ *
+ */
+@Name("com.numinit.mtree.Split")
+@Label("MTree Split")
+@Category({"RoadTrip", "MTree"})
+@Description("A full MTree node being clustered and split in two")
+public class MTreeSplitEvent extends Event {
+	/**
+	 * Whether the split node was a leaf
+	 */
+	@Label("Leaf")
+	public boolean leaf;
+	
+	/**
+	 * The number of entries in the node before it split
+	 */
+	@Label("Entries")
+	public int entries;
+	
+	/**
+	 * The radius of the node that was split, afterwards
+	 */
+	@Label("Keep Radius")
+	public double keepRadius;
+	
+	/**
+	 * The radius of the node created by the split
+	 */
+	@Label("Create Radius")
+	public double createRadius;
+}
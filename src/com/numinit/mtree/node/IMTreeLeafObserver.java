@@ -0,0 +1,20 @@
+package com.numinit.mtree.node;
+
+import com.numinit.mtree.point.IPointInMetricSpace;
+
+/**
+ * Told where each value lands in an MTree's leaves, so values can be found again by position without searching.
+ * Inserts, splits and removals all move values; each move is reported.
+ * @author Morgan Jones
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public interface IMTreeLeafObserver<K extends IPointInMetricSpace<K>, V> {
+	/**
+	 * Called when a value is put in a leaf slot
+	 * @param value    The value
+	 * @param position Its position, for MTree.get and MTree.remove
+	 */
+	void placed(V value, long position);
+}
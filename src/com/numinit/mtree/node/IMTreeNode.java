@@ -1,6 +1,7 @@
 package com.numinit.mtree.node;
 import java.util.Collection;
 
+import com.numinit.avl.ConcurrentTopKMachine;
 import com.numinit.avl.ITopKMachine;
 import com.numinit.mtree.MTree;
 import com.numinit.mtree.node.result.MTreeResultMinFast;
@@ -51,17 +52,27 @@ public interface IMTreeNode<K extends IPointInMetricSpace<K>, V> {
 	 * @param query    The query key
 	 * @param distance The distance from the query key
 	 * @param output   A collection to output to
-	 * @return This node
+	 * @return The number of nodes searched, including this one
 	 */
-	IMTreeNode<K, V> find(K query, double distance, Collection<DataWrapper<K, V>> output);
+	int find(K query, double distance, Collection<DataWrapper<K, V>> output);
 	
 	/**
 	 * Finds the closest objects to `query' in this subtree.
 	 * @param query The query key
 	 * @param topK  An ITopKMachine to output to
-	 * @return This node
+	 * @return The number of nodes searched, including this one
+	 */
+	int find(K query, ITopKMachine<DataWrapper<K, V>> topK);
+	
+	/**
+	 * Finds the closest objects to `query' in this subtree, searching subtrees in parallel.
+	 * Must be called from within a ForkJoinPool.
+	 * @param query     The query key
+	 * @param topK      A ConcurrentTopKMachine to output to
+	 * @param forkDepth How many more levels to fork tasks at before searching sequentially
+	 * @return The number of nodes searched, including this one
 	 */
-	IMTreeNode<K, V> find(K query, ITopKMachine<DataWrapper<K, V>> topK);
+	int find(K query, ConcurrentTopKMachine<DataWrapper<K, V>> topK, int forkDepth);
 	
 	/**
 	 * Returns the index and radius of the key nearest query
@@ -23,6 +23,11 @@ import com.numinit.utils.IndexedData;
  * @param <V> The value
  */
 public abstract class MTreeANode<K extends IPointInMetricSpace<K>, V> implements IMTreeNode<K, V> {
+	/**
+	 * Each thread's machine for sorting subtrees by distance, reset for every search
+	 */
+	private static final ThreadLocal<AVLTopKMachine<Object>> DISTANCE_MACHINE = ThreadLocal.withInitial(() -> new AVLTopKMachine<Object>(0));
+	
 	/**
 	 * The tree we're a member of
 	 */
@@ -97,7 +102,8 @@ public abstract class MTreeANode<K extends IPointInMetricSpace<K>, V> implements
 	public MTreeResultMinSlow<K, V> minSlow(K query) {
 		double minRadius = Double.POSITIVE_INFINITY;
 		int minIdx = 0;
-		ITopKMachine<MTreeResultDistance<K, V>> distanceMachine = new AVLTopKMachine<MTreeResultDistance<K, V>>(this.getCurrentSize());
+		@SuppressWarnings("unchecked")
+		ITopKMachine<MTreeResultDistance<K, V>> distanceMachine = (ITopKMachine<MTreeResultDistance<K, V>>)(ITopKMachine<?>)DISTANCE_MACHINE.get().reset(this.getCurrentSize());
 		
 		// Pick the subtree that minimizes distance
 		for (IIndexedData<K> subkey : this.keys()) {
@@ -1,9 +1,13 @@
 package com.numinit.mtree.node;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 
+import com.numinit.avl.ConcurrentTopKMachine;
 import com.numinit.avl.ITopKMachine;
 import com.numinit.mtree.MTree;
+import com.numinit.mtree.event.MTreeSplitEvent;
 import com.numinit.mtree.node.result.MTreeResultCluster;
 import com.numinit.mtree.node.result.MTreeResultDistance;
 import com.numinit.mtree.node.result.MTreeResultMinFast;
@@ -100,6 +104,10 @@ public class MTreeINode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 			
 			if (this.isFull()) {
 				// Cluster
+				MTreeSplitEvent event = new MTreeSplitEvent();
+				event.begin();
+				this.getTree().getStatistics().recordSplit(false);
+				int entries = this.getCurrentSize();
 				MTreeResultCluster<K, V> result = this.cluster();
 				MTreeINode<K, V> createdInternal = this.updateRadius(result.getKeepRadius()).getTree().getNodeFactory().getNewINode();
 				ArrayList<Sphere> oldSubtrees = this._subtrees;
@@ -116,7 +124,15 @@ public class MTreeINode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 				}
 				
 				// Commit
-				return createdInternal.updateRadius(result.getCreateRadius());
+				createdInternal.updateRadius(result.getCreateRadius());
+				if (event.shouldCommit()) {
+					event.leaf = false;
+					event.entries = entries;
+					event.keepRadius = this.getRadius();
+					event.createRadius = createdInternal.getRadius();
+					event.commit();
+				}
+				return createdInternal;
 			} else {
 				// This node didn't need a split
 				return this;
@@ -128,28 +144,61 @@ public class MTreeINode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 	}
 	
 	@Override
-	public IMTreeNode<K, V> find(K query, double distance, Collection<DataWrapper<K, V>> output) {
+	public int find(K query, double distance, Collection<DataWrapper<K, V>> output) {
+		int visited = 1;
 		for (IIndexedData<K> key : this.keys()) {
 			Sphere sphere = this.get(key.getIndex());
-			if (DoubleUtils.compare(query.getDistance(sphere.getKey()), distance + sphere.getData().getRadius()) <= 0) {
-				sphere.getData().find(query, distance, output);
+			double bound = distance + sphere.getData().getRadius();
+			if (DoubleUtils.compare(query.getDistance(sphere.getKey(), bound), bound) <= 0) {
+				visited += sphere.getData().find(query, distance, output);
 			}
 		}
-		return this;
+		return visited;
 	}
 	
 	@Override
-	public IMTreeNode<K, V> find(K query, ITopKMachine<DataWrapper<K, V>> topK) {
+	public int find(K query, ITopKMachine<DataWrapper<K, V>> topK) {
+		// Visit the nearest subtrees first, so the cutoff tightens early
 		MTreeResultMinSlow<K, V> minResult = this.minSlow(query);
+		int visited = 1;
 		for (MTreeResultDistance<K, V> distance : minResult.getKeys()) {
 			Sphere sphere = this.get(distance.getIndex());
-			if (DoubleUtils.compare(query.getDistance(sphere.getKey()), distance.getDistance() + topK.getCurrentCutoff()) <= 0) {
-				sphere.getData().find(query, topK);
-			} else {
-				break;
+			if (this.canImprove(distance, sphere, topK.getCurrentCutoff())) {
+				visited += sphere.getData().find(query, topK);
 			}
 		}
-		return this;
+		return visited;
+	}
+	
+	@Override
+	public int find(final K query, final ConcurrentTopKMachine<DataWrapper<K, V>> topK, final int forkDepth) {
+		if (forkDepth <= 0) {
+			return this.find(query, topK.getLocal());
+		}
+		
+		// Search the nearest subtree ourselves to get a cutoff, then fork the rest
+		List<MTreeResultDistance<K, V>> distances = this.minSlow(query).getKeys();
+		ArrayList<ForkJoinTask<Integer>> tasks = new ArrayList<ForkJoinTask<Integer>>(distances.size());
+		int visited = 1;
+		for (int i = 0; i < distances.size(); i++) {
+			final MTreeResultDistance<K, V> distance = distances.get(i);
+			final Sphere sphere = this.get(distance.getIndex());
+			if (i == 0) {
+				visited += sphere.getData().find(query, topK, forkDepth - 1);
+			} else if (this.canImprove(distance, sphere, topK.getCurrentCutoff())) {
+				tasks.add(ForkJoinTask.adapt(() -> {
+					// Other workers may have tightened the cutoff while we were queued
+					if (this.canImprove(distance, sphere, topK.getCurrentCutoff())) {
+						return sphere.getData().find(query, topK, forkDepth - 1);
+					}
+					return 0;
+				}));
+			}
+		}
+		for (ForkJoinTask<Integer> task : ForkJoinTask.invokeAll(tasks)) {
+			visited += task.join();
+		}
+		return visited;
 	}
 	
 	@Override
@@ -175,6 +224,17 @@ public class MTreeINode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 		return this.get(n).getKey();
 	}
 	
+	/**
+	 * Returns whether a subtree could hold anything within cutoff of the query
+	 * @param distance The distance from the query to the subtree's key
+	 * @param sphere   The subtree
+	 * @param cutoff   The cutoff
+	 * @return True if the subtree should be searched
+	 */
+	private boolean canImprove(MTreeResultDistance<K, V> distance, Sphere sphere, double cutoff) {
+		return DoubleUtils.compare(distance.getDistance() - sphere.getData().getRadius(), cutoff) <= 0;
+	}
+	
 	/**
 	 * Pushes (key, value) into this Node
 	 * @param key The key
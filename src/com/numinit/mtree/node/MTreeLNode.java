@@ -1,14 +1,16 @@
 package com.numinit.mtree.node;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 
+import com.numinit.avl.ConcurrentTopKMachine;
 import com.numinit.avl.ITopKMachine;
 import com.numinit.mtree.MTree;
+import com.numinit.mtree.event.MTreeSplitEvent;
 import com.numinit.mtree.node.result.MTreeResultCluster;
 import com.numinit.mtree.point.IPointInMetricSpace;
 import com.numinit.mtree.utils.DataWrapper;
 import com.numinit.utils.DoubleUtils;
-import com.numinit.utils.IIndexedData;
 
 /**
  * A leaf MTreeNode.
@@ -37,6 +39,16 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 	 * Our value array
 	 */
 	private ArrayList<Mapping> _mappings;
+	
+	/**
+	 * Our keys, in the same order as _mappings, for batch distance computation
+	 */
+	private K[] _keys;
+	
+	/**
+	 * Our id in the tree, for positions
+	 */
+	private final int _id;
 
 	/**
 	 * Initializes this leaf node
@@ -45,6 +57,8 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 	public MTreeLNode(MTree<K, V> tree) {
 		super(tree);
 		this._mappings = this.getNewMappingArray();
+		this._keys = null;
+		this._id = tree.addLeaf(this);
 	}
 	
 	@Override
@@ -75,6 +89,10 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 		
 		if (this.isFull()) {
 			// Cluster
+			MTreeSplitEvent event = new MTreeSplitEvent();
+			event.begin();
+			this.getTree().getStatistics().recordSplit(true);
+			int entries = this.getCurrentSize();
 			MTreeResultCluster<K, V> result = this.cluster();
 			MTreeLNode<K, V> createdLeaf = this.updateRadius(result.getKeepRadius()).getTree().getNodeFactory().getNewLNode();
 			ArrayList<Mapping> oldMappings = this._mappings;
@@ -91,7 +109,15 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 			}
 			
 			// Commit
-			return createdLeaf.updateRadius(result.getCreateRadius());
+			createdLeaf.updateRadius(result.getCreateRadius());
+			if (event.shouldCommit()) {
+				event.leaf = true;
+				event.entries = entries;
+				event.keepRadius = this.getRadius();
+				event.createRadius = createdLeaf.getRadius();
+				event.commit();
+			}
+			return createdLeaf;
 		} else {
 			// This node didn't need a split
 			return this;
@@ -99,23 +125,30 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 	}
 	
 	@Override
-	public IMTreeNode<K, V> find(K query, double distance, Collection<DataWrapper<K, V>> output) {
-		for (IIndexedData<K> key : this.keys()) {
-			if (DoubleUtils.compare(query.getDistance(key.getData()), distance) <= 0) {
-				output.add(this.get(key.getIndex()));
+	public int find(K query, double distance, Collection<DataWrapper<K, V>> output) {
+		double[] distances = this.distancesFrom(query, distance);
+		for (int i = 0; i < distances.length; i++) {
+			if (DoubleUtils.compare(distances[i], distance) <= 0) {
+				output.add(this.get(i));
 			}
 		}
-		return this;
+		return 1;
 	}
 	
 	@Override
-	public IMTreeNode<K, V> find(K query, ITopKMachine<DataWrapper<K, V>> topK) {
-		// Add all of this node's children
-		for (IIndexedData<K> key : this.keys()) {
-			Mapping mapping = this.get(key.getIndex());
-			topK.insert(query.getDistance(mapping.getKey()), mapping);
+	public int find(K query, ITopKMachine<DataWrapper<K, V>> topK) {
+		// Add all of this node's children; nothing past the current cutoff can get in
+		double[] distances = this.distancesFrom(query, topK.getCurrentCutoff());
+		for (int i = 0; i < distances.length; i++) {
+			topK.insert(distances[i], this.get(i));
 		}
-		return this;
+		return 1;
+	}
+	
+	@Override
+	public int find(K query, ConcurrentTopKMachine<DataWrapper<K, V>> topK, int forkDepth) {
+		// Nothing to fork
+		return this.find(query, topK.getLocal());
 	}
 	
 	@Override
@@ -152,10 +185,56 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 	 * @return this
 	 */
 	protected MTreeLNode<K, V> push(Mapping val) {
+		if (this._keys == null || !this._keys.getClass().getComponentType().isInstance(val.getKey())) {
+			this._keys = this.getNewKeyArray(val.getKey().getClass());
+		}
+		this._keys[this._mappings.size()] = val.getKey();
 		this._mappings.add(val);
+		this.getTree().placed(this._id, this._mappings.size() - 1, val.getData());
 		return this;
 	}
 	
+	/**
+	 * Returns the key/data pair in a slot
+	 * @param idx The slot
+	 * @return The pair
+	 */
+	public DataWrapper<K, V> getMapping(int idx) {
+		return this.get(idx);
+	}
+	
+	/**
+	 * Replaces the data in a slot, keeping its key
+	 * @param idx   The slot
+	 * @param value The new data
+	 * @return The old pair
+	 */
+	public DataWrapper<K, V> replace(int idx, V value) {
+		Mapping ret = this.get(idx);
+		this._mappings.set(idx, new Mapping(ret.getKey(), value));
+		this.getTree().placed(this._id, idx, value);
+		return ret;
+	}
+	
+	/**
+	 * Removes the key/data pair in a slot, moving our last pair into it
+	 * @param idx The slot
+	 * @return The removed pair
+	 */
+	public DataWrapper<K, V> remove(int idx) {
+		int last = this.getCurrentSize() - 1;
+		Mapping ret = this.get(idx);
+		if (idx != last) {
+			Mapping moved = this.get(last);
+			this._mappings.set(idx, moved);
+			this._keys[idx] = moved.getKey();
+			this.getTree().placed(this._id, idx, moved.getData());
+		}
+		this._mappings.remove(last);
+		this._keys[last] = null;
+		return ret;
+	}
+	
 	/**
 	 * Returns the idx-th DataWrapper object
 	 * @param idx The index
@@ -165,6 +244,18 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 		return this._mappings.get(idx);
 	}
 	
+	/**
+	 * Returns the distances from query to every key in this leaf, computed in one batch
+	 * @param query The query
+	 * @param bound Distances past this bound may be reported as anything greater than it
+	 * @return The distances, indexed the same as our mappings
+	 */
+	private double[] distancesFrom(K query, double bound) {
+		double[] ret = new double[this.getCurrentSize()];
+		query.getDistances(this._keys, ret.length, ret, bound);
+		return ret;
+	}
+	
 	/**
 	 * Returns a new mapping array
 	 * @return A new mapping array
@@ -172,4 +263,27 @@ public class MTreeLNode<K extends IPointInMetricSpace<K>, V> extends MTreeANode<
 	private ArrayList<Mapping> getNewMappingArray() {
 		return new ArrayList<Mapping>(this.getLimit());
 	}
+	
+	/**
+	 * Returns a new key array that can hold both our current keys and keys of type klass,
+	 * since implementations of getDistances may take a more specific array type than K[]
+	 * @param klass The class of the key being added
+	 * @return A new key array
+	 */
+	@SuppressWarnings("unchecked")
+	private K[] getNewKeyArray(Class<?> klass) {
+		// Widen to the nearest common superclass of what we're holding
+		Class<?> component = klass;
+		if (this._keys != null) {
+			while (!component.isAssignableFrom(this._keys.getClass().getComponentType())) {
+				component = component.getSuperclass();
+			}
+		}
+		
+		K[] ret = (K[])Array.newInstance(component, this.getLimit());
+		for (int i = 0; i < this._mappings.size(); i++) {
+			ret[i] = this._mappings.get(i).getKey();
+		}
+		return ret;
+	}
 }
\ No newline at end of file
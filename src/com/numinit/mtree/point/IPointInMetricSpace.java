@@ -13,4 +13,40 @@ public interface IPointInMetricSpace<PointInMetricSpace> {
 	 * @return
 	 */
 	double getDistance(PointInMetricSpace toMe);
-}
\ No newline at end of file
+	
+	/**
+	 * Get the distance to another point, for callers that only care whether it is within bound.
+	 * Implementations can stop early once the distance must exceed bound, returning any value
+	 * greater than bound that is no greater than the true distance.
+	 * @param toMe  The other point
+	 * @param bound The bound
+	 * @return The distance if it is within bound, otherwise a lower bound on it that exceeds bound
+	 */
+	default double getDistance(PointInMetricSpace toMe, double bound) {
+		return this.getDistance(toMe);
+	}
+	
+	/**
+	 * Gets the distances to the first n points in others, writing them to out.
+	 * Implementations can override this to hoist per-query work out of the loop.
+	 * @param others The other points
+	 * @param n      The number of points to measure
+	 * @param out    The output array; out[i] is the distance to others[i]
+	 */
+	default void getDistances(PointInMetricSpace[] others, int n, double[] out) {
+		for (int i = 0; i < n; i++) {
+			out[i] = this.getDistance(others[i]);
+		}
+	}
+	
+	/**
+	 * Gets the distances to the first n points in others, writing them to out, as getDistance(toMe, bound) would
+	 * @param others The other points
+	 * @param n      The number of points to measure
+	 * @param out    The output array
+	 * @param bound  The bound
+	 */
+	default void getDistances(PointInMetricSpace[] others, int n, double[] out, double bound) {
+		this.getDistances(others, n, out);
+	}
+}
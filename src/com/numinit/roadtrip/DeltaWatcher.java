@@ -0,0 +1,205 @@
+package com.numinit.roadtrip;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+import com.numinit.roadtrip.StageLatencies.Stage;
+import com.numinit.roadtrip.index.PortalDelta;
+import com.numinit.roadtrip.index.PortalIndex;
+
+/**
+ * Watches a directory for delta files and applies each one to a PortalIndex once, in name order, as it arrives.
+ * Files already there when we start are applied first. Write a delta somewhere else and move it in, so we never read half of one;
+ * one we can't parse is retried if it changes again. When the index is rebuilt, retarget replays the deltas applied since the rebuild started onto the new one.
+ * @author Morgan Jones
+ *
+ */
+public class DeltaWatcher {
+	/**
+	 * The directory
+	 */
+	private Path _directory;
+	
+	/**
+	 * What to apply deltas to
+	 */
+	private volatile PortalIndex _index;
+	
+	/**
+	 * Where to record how long deltas take
+	 */
+	private StageLatencies _latencies;
+	
+	/**
+	 * Where to log each delta
+	 */
+	private PrintStream _out;
+	
+	/**
+	 * The names of the files we've applied
+	 */
+	private HashSet<String> _applied;
+	
+	/**
+	 * The same names, in the order we applied them
+	 */
+	private ArrayList<String> _history;
+	
+	/**
+	 * Initializes this DeltaWatcher
+	 * @param directory The directory to watch
+	 * @param index     What to apply deltas to
+	 * @param latencies Where to record how long deltas take
+	 * @param out       Where to log each delta
+	 */
+	public DeltaWatcher(String directory, PortalIndex index, StageLatencies latencies, PrintStream out) {
+		this._directory = Paths.get(directory);
+		this._index = index;
+		this._latencies = latencies;
+		this._out = out;
+		this._applied = new HashSet<String>();
+		this._history = new ArrayList<String>();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[directory=%s,applied=%d]@%#08x>", this.getClass().getSimpleName(), this._directory, this._applied.size(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Starts a daemon thread that watches for deltas until it's interrupted or the directory goes away
+	 * @return The thread
+	 */
+	public Thread start() {
+		Thread ret = new Thread(() -> {
+			try {
+				this.watch();
+			} catch (IOException e) {
+				e.printStackTrace(this._out);
+			} catch (InterruptedException e) {
+				// Stopped
+			}
+		}, "delta-watcher");
+		ret.setDaemon(true);
+		ret.start();
+		return ret;
+	}
+	
+	/**
+	 * Watches for deltas
+	 * @throws IOException          if the directory can't be watched
+	 * @throws InterruptedException if we're interrupted
+	 */
+	private void watch() throws IOException, InterruptedException {
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			// Register before listing what's there, so nothing arrives unseen in between
+			this._directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			this.applyAll(this.list(), System.nanoTime());
+			
+			while (true) {
+				WatchKey key = watcher.take();
+				long noticed = System.nanoTime();
+				TreeSet<String> names = new TreeSet<String>();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						names.addAll(this.list());
+					} else {
+						names.add(event.context().toString());
+					}
+				}
+				this.applyAll(names, noticed);
+				if (!key.reset()) {
+					this._out.format("=== %s went away; no more deltas\n", this._directory);
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Marks where we are, so a rebuild that starts now can replay only the deltas applied after it
+	 * @return The mark
+	 */
+	public synchronized int mark() {
+		return this._history.size();
+	}
+	
+	/**
+	 * Replays the deltas we've applied since a mark onto another index, in order, and applies deltas to it from now on.
+	 * Changes it already has are skipped, going by their timestamps.
+	 * @param index The index
+	 * @param mark  The mark, from before the index was loaded
+	 * @return The number of changes applied to it
+	 */
+	public synchronized int retarget(PortalIndex index, int mark) {
+		int ret = 0;
+		for (String name : this._history.subList(mark, this._history.size())) {
+			try {
+				ret += index.apply(PortalDelta.read(this._directory.resolve(name).toString()));
+			} catch (IOException e) {
+				this._out.format("=== Can't replay delta %s: %s\n", name, e.getMessage());
+			}
+		}
+		this._index = index;
+		return ret;
+	}
+	
+	/**
+	 * Lists the delta files in our directory
+	 * @return Their names, in order
+	 * @throws IOException if the directory couldn't be read
+	 */
+	private TreeSet<String> list() throws IOException {
+		TreeSet<String> ret = new TreeSet<String>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this._directory, "*" + PortalDelta.EXTENSION)) {
+			for (Path file : files) {
+				ret.add(file.getFileName().toString());
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Applies the delta files we haven't yet, in order
+	 * @param names   File names in our directory, in order
+	 * @param noticed When we noticed them, from System.nanoTime
+	 */
+	private synchronized void applyAll(Iterable<String> names, long noticed) {
+		for (String name : names) {
+			if (!name.endsWith(PortalDelta.EXTENSION) || !this._applied.add(name)) {
+				continue;
+			}
+			
+			PortalDelta delta;
+			try {
+				delta = PortalDelta.read(this._directory.resolve(name).toString());
+			} catch (IOException e) {
+				// Try it again if it changes
+				this._applied.remove(name);
+				this._out.format("=== Can't read delta %s: %s\n", name, e.getMessage());
+				continue;
+			}
+			
+			this._index.apply(delta);
+			this._history.add(name);
+			long visible = System.nanoTime() - noticed;
+			this._latencies.record(Stage.DELTA, visible);
+			this._latencies.record(Stage.DELTA_LOCK, delta.getLockNanos());
+			this._out.format("=== Delta %s: %d applied, %d skipped, visible in %.1fms, queries held %.3fms\n",
+					name, delta.getApplied(), delta.getSkipped(), visible / 1.0e6d, delta.getLockNanos() / 1.0e6d);
+		}
+		this._out.flush();
+	}
+}
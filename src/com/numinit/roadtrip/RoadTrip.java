@@ -8,10 +8,20 @@ public class RoadTrip {
 		CommandLine cmdline = new CommandLine("RoadTrip", args)
 		.add(new CommandLine.Option<String>(String.class, "nmea-host", "h", null, "The NMEA host", "host"))
 		.add(new CommandLine.Option<Integer>(Integer.class, "nmea-port", "p", 50000, "The NMEA port", "port"))
-		.add(new CommandLine.Option<String>(String.class, "file", "f", null, "The location file", "file"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "listen", "L", 0, "Serve many vehicles: accept NMEA streams on this port and write each one's results back to it", "port"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "max-vehicles", "mv", 4096, "The most vehicles to serve at once", "number"))
+		.add(new CommandLine.Option<String>(String.class, "file", "f", null, "The location file, an NDJSON one (.ndjson or .jsonl) to load on every core, or a portal store (.pstore); reloaded in the background on SIGHUP", "file"))
+		.add(new CommandLine.Option<String>(String.class, "deltas", "D", null, "A directory to watch for delta files (.delta) to apply to the portals as they arrive", "directory"))
 		.add(new CommandLine.Option<Integer>(Integer.class, "query-size", "k", 10, "How many neighbors we should retrieve", "number"))
 		.add(new CommandLine.Option<Double>(Double.class, "query-distance", "d", 10.0d, "The max distance (in kilometers) a 'nearby' location should be from us", "number"))
-		.add(new CommandLine.Option<Integer>(Integer.class, "query-distance-size", "dk", 20, "The maximum number of items to return from the distance query", "number")).parse();
+		.add(new CommandLine.Option<Integer>(Integer.class, "query-distance-size", "dk", 20, "The maximum number of items to return from the distance query", "number"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "min-level", "l", 0, "The minimum level of a 'nearby' portal", "level"))
+		.add(new CommandLine.Option<String>(String.class, "search", "s", null, "Portal names to search for near us", "name"))
+		.add(new CommandLine.Option<Double>(Double.class, "refresh-rate", "r", 1.0d, "The most times per second to refresh, or 0 to refresh on every fix", "hz"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "prefetch-ticks", "pt", 3, "How many ticks ahead to prefetch results for, from the vehicle's course and speed, or 0 not to", "ticks"))
+		.add(new CommandLine.Option<Double>(Double.class, "prefetch-tolerance", "pe", 100.0d, "How far (in meters) a vehicle may be from where we predicted and still get prefetched results", "meters"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "latency-every", "le", 0, "Print stage latencies every this many ticks, or only on SIGUSR2 if 0", "ticks"))
+		.add(new CommandLine.Option<String>(String.class, "latency-file", "lf", null, "Where to write stage latencies on exit", "file")).parse();
 
 		final RoadTripRunner runner = new RoadTripRunner(cmdline, System.in, System.out);
 
@@ -19,6 +29,7 @@ public class RoadTrip {
 			@Override
 			public void run() {
 				runner.stop();
+				runner.writeLatencies();
 			}
 		});
 		
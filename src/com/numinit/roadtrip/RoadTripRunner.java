@@ -1,36 +1,79 @@
 package com.numinit.roadtrip;
 
-import java.io.FileReader;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.net.Socket;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
 import com.numinit.interactive.CommandLine;
-import com.numinit.mtree.IMTree;
 import com.numinit.mtree.MTree;
 import com.numinit.mtree.utils.DataWrapper;
 import com.numinit.roadtrip.index.Cardinal;
 import com.numinit.roadtrip.index.Geo2D;
+import com.numinit.roadtrip.index.GeoE6;
+import com.numinit.roadtrip.index.NameKey;
 import com.numinit.roadtrip.index.Portal;
+import com.numinit.roadtrip.index.PortalAttribute;
+import com.numinit.roadtrip.index.PortalIndex;
+import com.numinit.roadtrip.index.PortalQuery;
+import com.numinit.roadtrip.index.PortalStore;
 import com.numinit.roadtrip.index.Team;
-import com.numinit.roadtrip.nmea.NMEAParser;
+import com.numinit.roadtrip.management.MBeans;
+import com.numinit.roadtrip.management.MTreeMonitor;
+import com.numinit.roadtrip.management.PrefetchMonitor;
+import com.numinit.roadtrip.management.TopKMonitor;
+import com.numinit.roadtrip.StageLatencies.Stage;
+import com.numinit.roadtrip.nmea.LatestFix;
+import com.numinit.roadtrip.nmea.NMEAChannelParser;
+import com.numinit.roadtrip.nmea.NMEAFix;
+import com.numinit.roadtrip.predict.PrefetchCache;
+import com.numinit.roadtrip.predict.PrefetchStatistics;
 import com.numinit.utils.DoubleUtils;
+import com.numinit.utils.PerTaskExecutors;
 
 public class RoadTripRunner {
 	/**
 	 * M-Tree constants
 	 */
 	private static final int MT_INTERNAL_SIZE = 4, MT_LEAF_SIZE = 8;
+	
+	/**
+	 * M-Tree constants for names, whose metric prunes less, so wider nodes pay off
+	 */
+	private static final int NAME_MT_INTERNAL_SIZE = 32, NAME_MT_LEAF_SIZE = 64;
+	
+	/**
+	 * Per-vehicle buffer sizes in server mode, in bytes
+	 */
+	private static final int VEHICLE_INPUT_SIZE = 1024, VEHICLE_OUTPUT_SIZE = 8192;
+	
+	/**
+	 * The stack size of a vehicle thread when we can't have virtual threads, in bytes
+	 */
+	private static final long VEHICLE_STACK_SIZE = 256 * 1024;
+	
+	/**
+	 * How many prefetches may wait for a prefetch thread before we start dropping them
+	 */
+	private static final int PREFETCH_QUEUE_SIZE = 1024;
 
 	/**
 	 * The command line
@@ -49,14 +92,40 @@ public class RoadTripRunner {
 	private PrintStream _out;
 	
 	/**
-	 * A M-Tree for spatial indexing
+	 * Portals, with spatial, attribute and name indexes. A rebuild swaps in a new one; each tick queries whichever it started with.
+	 */
+	private volatile PortalIndex _portals;
+	
+	/**
+	 * Applies deltas to the portals, or null if we aren't watching for them
+	 */
+	private DeltaWatcher _deltas;
+	
+	/**
+	 * Where rebuilds run, and whether one is
+	 */
+	private ExecutorService _rebuildExecutor;
+	private AtomicBoolean _rebuilding;
+	
+	/**
+	 * Per-stage tick latencies
+	 */
+	private StageLatencies _latencies;
+	
+	/**
+	 * Where every vehicle's prefetches run, or null if we aren't prefetching
 	 */
-	private IMTree<Geo2D, Portal> _m;
+	private ExecutorService _prefetchExecutor;
+	
+	/**
+	 * Prefetch hits and misses across every vehicle
+	 */
+	private PrefetchStatistics _prefetchStatistics;
 	
 	/**
 	 * Whether we're running
 	 */
-	private boolean _run;
+	private volatile boolean _run;
 
 	/**
 	 * Initializes this RoadTripRunner
@@ -68,79 +137,272 @@ public class RoadTripRunner {
 		this._cmdline = cmdline;
 		this._in = in;
 		this._out = out;
+		this._latencies = new StageLatencies();
+		this._prefetchStatistics = new PrefetchStatistics();
+		this._rebuilding = new AtomicBoolean();
 		this._run = true;
 	}
 	
 	/**
-	 * Starts this Runner's main loop
+	 * Starts this Runner's main loop: following one NMEA stream, or serving many if we're listening
 	 */
 	public void go() {
 		// Load the M-Tree
-		this._m = this.loadMTreeFrom(this._cmdline.get(String.class, "file"));
+		this._portals = this.loadMTreeFrom(this._cmdline.get(String.class, "file"));
+		this.registerMBeans();
+		if (this._cmdline.get(String.class, "deltas") != null) {
+			this._deltas = new DeltaWatcher(this._cmdline.get(String.class, "deltas"), this._portals, this._latencies, this._out);
+			this._deltas.start();
+		}
+		this._rebuildExecutor = newRebuildExecutor();
+		this.installSignals();
+		if (this._cmdline.get(Integer.class, "prefetch_ticks") > 0) {
+			this._prefetchExecutor = newPrefetchExecutor();
+		}
 		
+		if (this._cmdline.get(Integer.class, "listen") > 0) {
+			this.serve(this._cmdline.get(Integer.class, "listen"));
+		} else {
+			this.follow(this._cmdline.get(String.class, "nmea_host"), this._cmdline.get(Integer.class, "nmea_port"));
+		}
+	}
+	
+	/**
+	 * Connects to one NMEA stream and renders the newest fix from it to our output
+	 * @param host The host
+	 * @param port The port
+	 */
+	private void follow(String host, int port) {
 		// Connect to the socket
-		try (final Socket client = new Socket(this._cmdline.get(String.class, "nmea_host"), this._cmdline.get(Integer.class, "nmea_port"))) {
-			final NMEAParser parser = new NMEAParser(client.getInputStream());
-			client.setTcpNoDelay(true);
-			client.setReuseAddress(true);
+		try (final SocketChannel client = SocketChannel.open(new InetSocketAddress(host, port))) {
+			final NMEAChannelParser parser = new NMEAChannelParser(client);
+			client.socket().setTcpNoDelay(true);
+			client.socket().setReuseAddress(true);
 			
-			while (this._run) {
-				final double distance = this._cmdline.get(Double.class, "query_distance") * 1000;
-				final int size = this._cmdline.get(Integer.class, "query_size"), distanceSize = this._cmdline.get(Integer.class, "query_distance_size");
+			// Read fixes as fast as they come, so we always render the newest one instead of working through a backlog
+			final LatestFix latest = new LatestFix();
+			latest.startReading(parser);
+			final PrefetchCache prefetch = this.newPrefetchCache();
+			
+			long nextTick = System.nanoTime();
+			for (long tick = 1; this._run; tick++) {
+				final int latencyEvery = this._cmdline.get(Integer.class, "latency_every");
+				final double refreshRate = this._cmdline.get(Double.class, "refresh_rate");
 				
-				final Geo2D currentLocation;
+				// Wait out the refresh interval, then take the newest fix
+				final NMEAFix fix;
+				final StageLatencies.Stopwatch stopwatch = this._latencies.start();
 				try {
-					currentLocation = parser.getNextPoint();
+					long wait = nextTick - System.nanoTime();
+					if (wait > 0) {
+						Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+					}
+					fix = latest.take();
 				} catch (IOException e) {
 					e.printStackTrace(this._out);
-					client.close();
+					this.stop();
+					continue;
+				} catch (InterruptedException e) {
 					this.stop();
 					continue;
 				}
+				stopwatch.lap(Stage.WAIT);
+				nextTick = System.nanoTime() + (refreshRate > 0 ? (long)(1.0e9d / refreshRate) : 0);
 				
-				// Run a find and a top-K query
-				List<DataWrapper<Geo2D, Portal>> nearbyList = this._m.find(currentLocation, distance);
-				List<DataWrapper<Geo2D, Portal>> closestList = this._m.findKClosest(currentLocation, size);
-				nearbyList = nearbyList.subList(0, Math.min(distanceSize, nearbyList.size()));
-				nearbyList.sort(new Comparator<DataWrapper<Geo2D, Portal>>() {
-					@Override
-					public int compare(DataWrapper<Geo2D, Portal> o1, DataWrapper<Geo2D, Portal> o2) {
-						return DoubleUtils.compare(o1.getKey().getDistance(currentLocation), o2.getKey().getDistance(currentLocation));
-					}
-				});
-				
-				// Search the lists for interesting portals
-				List<String> closest = describe(currentLocation, closestList);	
-				List<String> nearby  = describe(currentLocation, nearbyList);
-				
-				// Print everything
-				this._out.print("\033[H\033[2J");
-				this._out.flush();
-				this._out.format("=== Portals within %.2fkm\n", distance / 1000);
-				for (String line : nearby) {
-					this._out.println(line);
-				}
-				
-				this._out.format("\n=== %d closest %s\n", closest.size(), closest.size() == 1 ? "portal" : "portals");
-				for (String line : closest) {
-					this._out.println(line);
+				this.tick(fix, this._out, stopwatch, prefetch);
+				if (latencyEvery > 0 && tick % latencyEvery == 0) {
+					this._out.println();
+					this._latencies.print(this._out);
+					this._out.format("%d fixes, %d dropped\n", latest.getOffered(), latest.getDropped());
+					this.printPrefetchStatistics(this._out);
 				}
-				
-				List<String> loneWolf = describe(currentLocation, this.loneWolf(closestList, 3, 5000));
-				this._out.format("\n== %d potential lone %s\n", loneWolf.size(), loneWolf.size() == 1 ? "wolf" : "wolves");
-				for (String line : loneWolf) {
-					this._out.println(line);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Accepts NMEA streams from many vehicles, rendering each one's fixes back to its own connection.
+	 * Every vehicle gets a thread of its own, virtual where the JVM has them, and they all share our indexes, which deltas change under a lock.
+	 * @param port The port to listen on
+	 */
+	private void serve(int port) {
+		final int maxVehicles = this._cmdline.get(Integer.class, "max_vehicles");
+		final Semaphore slots = new Semaphore(maxVehicles);
+		final ExecutorService executor = PerTaskExecutors.newExecutor("vehicle", maxVehicles, VEHICLE_STACK_SIZE);
+		try (final ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.socket().setReuseAddress(true);
+			server.bind(new InetSocketAddress(port));
+			this._out.format("Listening for up to %d vehicles on port %d\n", maxVehicles, port);
+			this._out.flush();
+			
+			while (this._run) {
+				final SocketChannel vehicle = server.accept();
+				if (!slots.tryAcquire()) {
+					// Full; turn them away rather than queueing a connection we can't serve
+					vehicle.close();
+					continue;
 				}
-				
 				try {
-					Thread.sleep(5000);
-				} catch (InterruptedException e) {}
+					executor.execute(() -> {
+						try {
+							this.drive(vehicle);
+						} finally {
+							slots.release();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// A pool thread that just released its slot hasn't gone back to the pool yet
+					slots.release();
+					vehicle.close();
+				}
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 	
+	/**
+	 * Renders one vehicle's fixes back to it until it hangs up.
+	 * Fixes that arrive faster than the refresh rate are parsed and dropped, so a vehicle holds only its parser and output buffers.
+	 * @param vehicle The vehicle's connection
+	 */
+	private void drive(SocketChannel vehicle) {
+		try (final SocketChannel channel = vehicle;
+		     final PrintStream out = new PrintStream(new BufferedOutputStream(Channels.newOutputStream(channel), VEHICLE_OUTPUT_SIZE), false, "UTF-8")) {
+			channel.socket().setTcpNoDelay(true);
+			final NMEAChannelParser parser = new NMEAChannelParser(channel, VEHICLE_INPUT_SIZE);
+			final PrefetchCache prefetch = this.newPrefetchCache();
+			
+			long nextTick = System.nanoTime();
+			while (this._run && !out.checkError()) {
+				final double refreshRate = this._cmdline.get(Double.class, "refresh_rate");
+				final StageLatencies.Stopwatch stopwatch = this._latencies.start();
+				final NMEAFix fix = parser.getNextFix();
+				if (System.nanoTime() < nextTick) {
+					continue;
+				}
+				stopwatch.lap(Stage.WAIT);
+				nextTick = System.nanoTime() + (refreshRate > 0 ? (long)(1.0e9d / refreshRate) : 0);
+				this.tick(fix, out, stopwatch, prefetch);
+			}
+		} catch (IOException e) {
+			// They hung up
+		}
+	}
+	
+	/**
+	 * Runs every query for a fix and renders the results
+	 * @param fix       The fix
+	 * @param out       Where to render them
+	 * @param stopwatch Times the stages
+	 * @param prefetch  The vehicle's prefetches, or null if we aren't prefetching
+	 */
+	private void tick(NMEAFix fix, PrintStream out, StageLatencies.Stopwatch stopwatch, PrefetchCache prefetch) {
+		final double distance = this._cmdline.get(Double.class, "query_distance") * 1000;
+		final int size = this._cmdline.get(Integer.class, "query_size"), distanceSize = this._cmdline.get(Integer.class, "query_distance_size");
+		final int minLevel = this._cmdline.get(Integer.class, "min_level");
+		final String search = this._cmdline.get(String.class, "search");
+		final Geo2D currentLocation = fix.getPoint();
+		final long tickStart = System.nanoTime();
+		
+		// Run a find and a top-K query. The index works in chord distances, so convert our bound first.
+		PortalQuery nearbyQuery = new PortalQuery().within(currentLocation, distance);
+		if (minLevel > 0) {
+			nearbyQuery.where(PortalAttribute.LEVEL, minLevel, Long.MAX_VALUE);
+		}
+		
+		// Hold deltas off while we query, so everything this tick shows comes from the same portals, even if a rebuild swaps them
+		final PortalIndex portals = this._portals;
+		List<DataWrapper<GeoE6, Portal>> nearbyList, closestList, loneWolfList;
+		List<DataWrapper<Geo2D, Portal>> matchingList = null;
+		portals.getReadLock().lock();
+		try {
+			// Answer from a prefetch if we predicted this spot well enough, and start on the next few ticks while this one renders
+			PrefetchCache.Entry prefetched = null;
+			if (prefetch != null) {
+				prefetched = prefetch.lookup(portals, currentLocation, nearbyQuery.getChordDistance());
+				prefetch.observe(portals, fix, nearbyQuery.getChordDistance(), size);
+			}
+			nearbyList = prefetched != null ? prefetched.nearby(nearbyQuery) : portals.query(nearbyQuery);
+			stopwatch.lap(Stage.FIND);
+			closestList = prefetched != null ? prefetched.closest(currentLocation, size) : null;
+			if (closestList == null) {
+				if (prefetched != null) {
+					prefetch.closestFallback();
+				}
+				closestList = portals.findKClosest(currentLocation, size);
+			}
+			stopwatch.lap(Stage.FIND_K_CLOSEST);
+			nearbyList = nearbyList.subList(0, Math.min(distanceSize, nearbyList.size()));
+			final GeoE6 currentKey = GeoE6.fromGeo2D(currentLocation);
+			nearbyList.sort(new Comparator<DataWrapper<GeoE6, Portal>>() {
+				@Override
+				public int compare(DataWrapper<GeoE6, Portal> o1, DataWrapper<GeoE6, Portal> o2) {
+					return DoubleUtils.compare(o1.getKey().getDistance(currentKey), o2.getKey().getDistance(currentKey));
+				}
+			});
+			stopwatch.lap(Stage.SORT);
+			
+			loneWolfList = loneWolf(portals, closestList, 3, 5000);
+			stopwatch.lap(Stage.LONE_WOLF);
+			
+			if (search != null) {
+				// Fall back to the closest names by edit distance if nothing matches exactly
+				matchingList = portals.getNameIndex().search(search, currentLocation, size);
+				if (matchingList.isEmpty()) {
+					matchingList = portals.getNameTree().findKClosest(new NameKey(search), size).stream().map((wrapper) -> {
+						return new DataWrapper<Geo2D, Portal>(wrapper.getData().getPoint(), wrapper.getData());
+					}).collect(Collectors.toList());
+				}
+				stopwatch.lap(Stage.SEARCH);
+			}
+		} finally {
+			portals.getReadLock().unlock();
+		}
+		
+		// Search the lists for interesting portals
+		List<String> closest = describe(currentLocation, closestList);	
+		List<String> nearby  = describe(currentLocation, nearbyList);
+		List<String> loneWolf = describe(currentLocation, loneWolfList);
+		List<String> matching = matchingList != null ? describe(currentLocation, matchingList) : null;
+		stopwatch.lap(Stage.DESCRIBE);
+		
+		// Print everything
+		out.print("\033[H\033[2J");
+		out.flush();
+		if (fix.hasVelocity()) {
+			out.format("=== %.0fkm/h, heading %.0fº\n", fix.getSpeed() * 3.6, fix.getCourse());
+		}
+		out.format("=== Portals within %.2fkm\n", distance / 1000);
+		for (String line : nearby) {
+			out.println(line);
+		}
+		
+		out.format("\n=== %d closest %s\n", closest.size(), closest.size() == 1 ? "portal" : "portals");
+		for (String line : closest) {
+			out.println(line);
+		}
+		
+		out.format("\n== %d potential lone %s\n", loneWolf.size(), loneWolf.size() == 1 ? "wolf" : "wolves");
+		for (String line : loneWolf) {
+			out.println(line);
+		}
+		
+		if (matching != null) {
+			out.format("\n=== %d %s matching '%s'\n", matching.size(), matching.size() == 1 ? "portal" : "portals", search);
+			for (String line : matching) {
+				out.println(line);
+			}
+		}
+		out.flush();
+		stopwatch.lap(Stage.OUTPUT);
+		this._latencies.record(Stage.TICK, System.nanoTime() - tickStart);
+	}
+	
 	/**
 	 * Stops this Runner's main loop
 	 */
@@ -149,34 +411,202 @@ public class RoadTripRunner {
 	}
 	
 	/**
-	 * Loads the M-Tree from a file
+	 * Writes stage latencies to the file named on the command line, if there is one
+	 */
+	public void writeLatencies() {
+		String file = this._cmdline.get(String.class, "latency_file");
+		if (file != null) {
+			try (PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8")) {
+				this._latencies.print(out);
+				this.printPrefetchStatistics(out);
+			} catch (IOException e) {
+				e.printStackTrace(this._out);
+			}
+		}
+	}
+	
+	/**
+	 * Prints prefetch hit rates, if we're prefetching
+	 * @param out Where to print them
+	 */
+	private void printPrefetchStatistics(PrintStream out) {
+		if (this._prefetchExecutor != null) {
+			PrefetchStatistics s = this._prefetchStatistics;
+			out.format("prefetch: %d hits, %d misses (%.1f%% hit), %d closest fallbacks, %d prefetched, %d skipped, %d wasted\n",
+					s.getHits(), s.getMisses(), s.getHitRate() * 100.0d, s.getClosestFallbacks(), s.getPrefetches(), s.getSkipped(), s.getWasted());
+		}
+	}
+	
+	/**
+	 * Returns a vehicle's prefetch cache
+	 * @return The cache, or null if we aren't prefetching
+	 */
+	private PrefetchCache newPrefetchCache() {
+		if (this._prefetchExecutor == null) {
+			return null;
+		}
+		return new PrefetchCache(this._prefetchExecutor, this._prefetchStatistics,
+				this._cmdline.get(Integer.class, "prefetch_ticks"), this._cmdline.get(Double.class, "prefetch_tolerance"));
+	}
+	
+	/**
+	 * Rebuilds every index from the location file in the background, and swaps the new one in once it's complete.
+	 * Ticks already running finish on the old one, which is released once they and any prefetches from it are done.
+	 * Deltas applied to the old one since the rebuild started are replayed onto the new one before it's swapped in;
+	 * the file should already have everything before that. Does nothing if a rebuild is running.
+	 */
+	public void rebuild() {
+		if (!this._rebuilding.compareAndSet(false, true)) {
+			this._out.println("=== Already rebuilding");
+			return;
+		}
+		final String file = this._cmdline.get(String.class, "file");
+		try {
+			this._rebuildExecutor.execute(() -> {
+				try {
+					long start = System.nanoTime();
+					int mark = this._deltas != null ? this._deltas.mark() : 0;
+					PortalIndex next = this.loadMTreeFrom(file);
+					long built = System.nanoTime();
+					int replayed = this._deltas != null ? this._deltas.retarget(next, mark) : 0;
+					this._portals = next;
+					this.registerIndexMBeans(next);
+					this._out.format("=== Rebuilt %d portals from %s in %.1fs; replayed %d changes from deltas in %.1fms\n",
+							next.size(), file, (built - start) / 1.0e9d, replayed, (System.nanoTime() - built) / 1.0e6d);
+				} catch (RuntimeException e) {
+					this._out.format("=== Rebuild from %s failed; still serving the old portals\n", file);
+					e.printStackTrace(this._out);
+				} finally {
+					this._rebuilding.set(false);
+					this._out.flush();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this._rebuilding.set(false);
+		}
+	}
+	
+	/**
+	 * Returns an executor for rebuilds: one daemon thread, so a rebuild never holds up exiting
+	 * @return The executor
+	 */
+	private static ExecutorService newRebuildExecutor() {
+		return Executors.newSingleThreadExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, "rebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Returns an executor for prefetches: one daemon thread per core, and a bounded queue, past which prefetches are dropped
+	 * rather than falling further behind the vehicles they're for
+	 * @return The executor
+	 */
+	private static ExecutorService newPrefetchExecutor() {
+		final AtomicInteger id = new AtomicInteger();
+		int threads = Runtime.getRuntime().availableProcessors();
+		ThreadPoolExecutor ret = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(PREFETCH_QUEUE_SIZE), (runnable) -> {
+			Thread thread = new Thread(runnable, String.format("prefetch-%d", id.incrementAndGet()));
+			thread.setDaemon(true);
+			return thread;
+		});
+		ret.allowCoreThreadTimeOut(true);
+		return ret;
+	}
+	
+	/**
+	 * Prints stage latencies whenever we get SIGUSR2, and rebuilds the indexes whenever we get SIGHUP
+	 */
+	private void installSignals() {
+		this.installSignal("USR2", "print latencies", "use --latency-every instead", () -> {
+			this._latencies.print(this._out);
+			this.printPrefetchStatistics(this._out);
+		});
+		this.installSignal("HUP", "rebuild", "restart to reload the location file", this::rebuild);
+	}
+	
+	/**
+	 * Runs an action whenever we get a signal. Signal handling isn't a standard API,
+	 * so reach it reflectively and carry on without it where it's missing or the signal is taken.
+	 * @param signal      The signal, without SIG
+	 * @param description What the action does
+	 * @param instead     What to do instead if we can't
+	 * @param action      The action
+	 */
+	private void installSignal(final String signal, final String description, String instead, final Runnable action) {
+		try {
+			Class<?> signalClass = Class.forName("sun.misc.Signal"), handlerClass = Class.forName("sun.misc.SignalHandler");
+			Object handler = Proxy.newProxyInstance(handlerClass.getClassLoader(), new Class<?>[] {handlerClass}, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "handle":
+					action.run();
+					return null;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					return String.format("SIG%s %s handler", signal, description);
+				}
+			});
+			signalClass.getMethod("handle", signalClass, handlerClass).invoke(null, signalClass.getConstructor(String.class).newInstance(signal), handler);
+		} catch (ReflectiveOperationException | IllegalArgumentException e) {
+			this._out.format("Can't %s on SIG%s (%s); %s\n", description, signal, e.getCause() != null ? e.getCause() : e, instead);
+		}
+	}
+	
+	/**
+	 * Loads the M-Tree, attribute indexes and name indexes from a file
 	 * @param file The file
-	 * @return this
+	 * @return The indexed portals
 	 */
-	private IMTree<Geo2D, Portal> loadMTreeFrom(String file) {
-		// Warm up the M-Tree
-		final IMTree<Geo2D, Portal> ret = new MTree<Geo2D, Portal>(MT_INTERNAL_SIZE, MT_LEAF_SIZE);
-		JSONParser jsonParser = new JSONParser();
-		JSONObject obj = null;
+	private PortalIndex loadMTreeFrom(String file) {
+		// Portals live in a columnar store, and every index holds the same flyweight for each
+		final PortalStore store;
 		try {
-			obj = (JSONObject)jsonParser.parse(new FileReader(file));
-		} catch (IOException | ParseException e) {
+			store = PortalStore.open(file);
+		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 		
-		// Insert the portals
-		for (Object key : obj.keySet()) {
-			Portal p = Portal.fromJSON((JSONArray)obj.get(key));
-			ret.insert(p.getPoint(), p);
+		// Warm up the M-Trees
+		final PortalIndex ret = new PortalIndex(new MTree<GeoE6, Portal>(MT_INTERNAL_SIZE, MT_LEAF_SIZE),
+				new MTree<NameKey, Portal>(NAME_MT_INTERNAL_SIZE, NAME_MT_LEAF_SIZE), store.size());
+		for (int i = 0; i < store.size(); i++) {
+			ret.insert(store.get(i));
 		}
 		
-		return ret;
+		// The name index is immutable, so build it once everything is loaded
+		return ret.buildNameIndex();
 	}
 	
-	private List<DataWrapper<Geo2D, Portal>> loneWolf(List<DataWrapper<Geo2D, Portal>> portals, int loneWolfThreshold, double distanceThreshold) {
+	/**
+	 * Publishes index and top-K statistics over JMX
+	 */
+	private void registerMBeans() {
+		this.registerIndexMBeans(this._portals);
+		MBeans.register("TopK", "avl", new TopKMonitor());
+		MBeans.register("Prefetch", "spatial", new PrefetchMonitor(this._prefetchStatistics));
+	}
+	
+	/**
+	 * Publishes an index's tree statistics over JMX, replacing those of any index before it
+	 * @param index The index
+	 */
+	private void registerIndexMBeans(PortalIndex index) {
+		if (index.getSpatialIndex() instanceof MTree) {
+			MBeans.register("MTree", "spatial", new MTreeMonitor((MTree<?, ?>)index.getSpatialIndex(), index.getReadLock()));
+		}
+		if (index.getNameTree() instanceof MTree) {
+			MBeans.register("MTree", "names", new MTreeMonitor((MTree<?, ?>)index.getNameTree(), index.getReadLock()));
+		}
+	}
+	
+	private static List<DataWrapper<GeoE6, Portal>> loneWolf(PortalIndex index, List<DataWrapper<GeoE6, Portal>> portals, int loneWolfThreshold, double distanceThreshold) {
 		return portals.stream().filter((wrapper) -> {
-			Portal portal = wrapper.getData();
-			return this._m.find(portal.getPoint(), distanceThreshold).size() - 1 <= loneWolfThreshold;
+			// Portals are on the grid already, so search from their keys directly
+			return index.getSpatialIndex().find(wrapper.getKey(), Geo2D.toChordDistance(distanceThreshold)).size() - 1 <= loneWolfThreshold;
 		}).collect(Collectors.toList());
 	}
 	
@@ -186,12 +616,14 @@ public class RoadTripRunner {
 	 * @param portals The portals
 	 * @return A list of string descriptions
 	 */
-	private static List<String> describe(final Geo2D currentLocation, List<DataWrapper<Geo2D, Portal>> portals) {
+	private static List<String> describe(final Geo2D currentLocation, List<? extends DataWrapper<?, Portal>> portals) {
 		final AtomicInteger a = new AtomicInteger(1);
-		return portals.stream().map((portal) -> {
-			double distance = currentLocation.getDistance(portal.getKey()), bearing = currentLocation.getBearing(portal.getKey());
+		return portals.stream().map((wrapper) -> {
+			Portal portal = wrapper.getData();
+			Geo2D point = portal.getPoint();
+			double distance = currentLocation.getSurfaceDistance(point), bearing = currentLocation.getBearing(point);
 			Cardinal direction = new Cardinal(bearing);
-			return String.format("[%d] %s: %.2fkm, %s %.0fº %s: %s", a.getAndIncrement(), portal.getData().toConsole(), distance / 1000.0d, direction.getEmoji(), bearing, direction.getDirectionString(), String.format("http://www.ingress.com/intel?ll=%1$f,%2$f&pll=%1$f,%2$f", portal.getKey().getLat(), portal.getKey().getLng()));
+			return String.format("[%d] %s: %.2fkm, %s %.0fº %s: %s", a.getAndIncrement(), portal.toConsole(), distance / 1000.0d, direction.getEmoji(), bearing, direction.getDirectionString(), String.format("http://www.ingress.com/intel?ll=%1$f,%2$f&pll=%1$f,%2$f", point.getLat(), point.getLng()));
 		}).collect(Collectors.toList());
 	}
 }
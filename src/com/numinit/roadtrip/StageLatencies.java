@@ -0,0 +1,115 @@
+package com.numinit.roadtrip;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.numinit.utils.LatencyHistogram;
+
+/**
+ * Latency histograms for each stage of a RoadTripRunner tick. Safe to share between threads; each tick times itself with its own Stopwatch.
+ * @author Morgan Jones
+ *
+ */
+public class StageLatencies {
+	/**
+	 * The stages of a tick, in the order they run. DELTA is from noticing a delta file to its changes being visible,
+	 * and DELTA_LOCK is how long queries were held off for it.
+	 * @author Morgan Jones
+	 *
+	 */
+	public enum Stage {
+		WAIT, FIND, FIND_K_CLOSEST, SORT, DESCRIBE, OUTPUT, LONE_WOLF, SEARCH, TICK, DELTA, DELTA_LOCK
+	}
+	
+	/**
+	 * Times the stages of one tick
+	 * @author Morgan Jones
+	 *
+	 */
+	public class Stopwatch {
+		/**
+		 * When the current stage started
+		 */
+		private long _start;
+		
+		/**
+		 * Initializes this Stopwatch, starting the first stage
+		 */
+		private Stopwatch() {
+			this._start = System.nanoTime();
+		}
+		
+		/**
+		 * Records the time since the last lap (or since this Stopwatch started) against a stage, and starts timing the next one
+		 * @param stage The stage that just finished
+		 * @return This Stopwatch
+		 */
+		public Stopwatch lap(Stage stage) {
+			long now = System.nanoTime();
+			StageLatencies.this.record(stage, now - this._start);
+			this._start = now;
+			return this;
+		}
+	}
+	
+	/**
+	 * A histogram per stage
+	 */
+	private EnumMap<Stage, LatencyHistogram> _histograms;
+	
+	/**
+	 * Initializes this StageLatencies
+	 */
+	public StageLatencies() {
+		this._histograms = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+		for (Stage stage : Stage.values()) {
+			this._histograms.put(stage, new LatencyHistogram());
+		}
+	}
+	
+	/**
+	 * Starts timing a tick
+	 * @return A Stopwatch timing its first stage
+	 */
+	public Stopwatch start() {
+		return new Stopwatch();
+	}
+	
+	/**
+	 * Records a latency against a stage
+	 * @param stage The stage
+	 * @param nanos The latency, in nanoseconds
+	 * @return This StageLatencies
+	 */
+	public StageLatencies record(Stage stage, long nanos) {
+		this._histograms.get(stage).record(nanos);
+		return this;
+	}
+	
+	/**
+	 * Returns the histogram for a stage
+	 * @param stage The stage
+	 * @return The histogram
+	 */
+	public LatencyHistogram get(Stage stage) {
+		return this._histograms.get(stage);
+	}
+	
+	/**
+	 * Prints a table of every stage's percentiles, in milliseconds
+	 * @param out The stream to print to
+	 * @return This StageLatencies
+	 */
+	public StageLatencies print(PrintStream out) {
+		out.format("%-16s %10s %10s %10s %10s %10s %10s\n", "stage", "count", "mean", "p50", "p99", "p999", "max");
+		for (Map.Entry<Stage, LatencyHistogram> entry : this._histograms.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			out.format("%-16s %10d %10.3f %10.3f %10.3f %10.3f %10.3f\n", entry.getKey().toString().toLowerCase(), histogram.getCount(),
+					histogram.getMean() / 1.0e6d, histogram.getPercentile(50) / 1.0e6d, histogram.getPercentile(99) / 1.0e6d,
+					histogram.getPercentile(99.9) / 1.0e6d, histogram.getMax() / 1.0e6d);
+		}
+		out.flush();
+		return this;
+	}
+}
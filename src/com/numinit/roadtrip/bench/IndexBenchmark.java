@@ -0,0 +1,177 @@
+package com.numinit.roadtrip.bench;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import com.numinit.avl.AVLTopKMachine;
+import com.numinit.avl.HeapTopKMachine;
+import com.numinit.bench.Benchmark;
+import com.numinit.interactive.CommandLine;
+import com.numinit.mtree.IMTree;
+import com.numinit.mtree.MTree;
+import com.numinit.mtree.point.IPointInMetricSpace;
+import com.numinit.mtree.utils.DataWrapper;
+import com.numinit.roadtrip.index.Geo2D;
+import com.numinit.roadtrip.index.GeoE6;
+import com.numinit.roadtrip.index.GeoQuadTree;
+import com.numinit.roadtrip.index.PortalReader;
+
+/**
+ * Compares spatial index implementations on insert, find and findKClosest.
+ * The default workload mimics portal data: a few dense cities scattered over sparse plains.
+ * @author Morgan Jones
+ *
+ */
+public class IndexBenchmark {
+	/**
+	 * M-Tree constants, matching RoadTripRunner
+	 */
+	private static final int MT_INTERNAL_SIZE = 4, MT_LEAF_SIZE = 8;
+	
+	public static void main(String[] args) {
+		CommandLine cmdline = new CommandLine("IndexBenchmark", args)
+		.add(new CommandLine.Option<String>(String.class, "file", "f", null, "A location file to use instead of generated points", "file"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "count", "n", 200000, "How many points to generate", "number"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "queries", "q", 2000, "How many queries to run per iteration", "number"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "query-size", "k", 10, "How many neighbors to retrieve", "number"))
+		.add(new CommandLine.Option<Double>(Double.class, "query-distance", "d", 2.0d, "The range query distance, in kilometers", "number"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "iterations", "i", 5, "Measured iterations per benchmark", "number"))
+		.add(new CommandLine.Option<Long>(Long.class, "seed", "s", 215L, "The random seed", "number")).parse();
+		
+		Random random = new Random(cmdline.get(Long.class, "seed"));
+		final List<Geo2D> points = cmdline.get(String.class, "file") != null ? loadPoints(cmdline.get(String.class, "file")) : generatePoints(random, cmdline.get(Integer.class, "count"));
+		final List<Geo2D> queries = new ArrayList<Geo2D>();
+		for (int i = 0, n = cmdline.get(Integer.class, "queries"); i < n; i++) {
+			// Query near real points, as a car on a road would
+			Geo2D p = points.get(random.nextInt(points.size()));
+			queries.add(new Geo2D(p.getLat() + random.nextGaussian() * 0.01, p.getLng() + random.nextGaussian() * 0.01));
+		}
+		
+		final int k = cmdline.get(Integer.class, "query-size");
+		final double distance = Geo2D.toChordDistance(cmdline.get(Double.class, "query-distance") * 1000);
+		Benchmark bench = new Benchmark(System.out, 2, cmdline.get(Integer.class, "iterations"));
+		System.out.format("=== %d points, %d queries, k=%d\n", points.size(), queries.size(), k);
+		
+		run(bench, "MTree", points, queries, distance, k, () -> new MTree<Geo2D, Integer>(MT_INTERNAL_SIZE, MT_LEAF_SIZE));
+		run(bench, "GeoQuadTree", points, queries, distance, k, () -> new GeoQuadTree<Integer>());
+		
+		// The same M-Tree keyed on the E6 grid, as RoadTripRunner keys it
+		final List<GeoE6> e6Points = new ArrayList<GeoE6>(points.size()), e6Queries = new ArrayList<GeoE6>(queries.size());
+		for (Geo2D point : points) {
+			e6Points.add(GeoE6.fromGeo2D(point));
+		}
+		for (Geo2D query : queries) {
+			e6Queries.add(GeoE6.fromGeo2D(query));
+		}
+		run(bench, "MTree[E6]", e6Points, e6Queries, distance, k, () -> new MTree<GeoE6, Integer>(MT_INTERNAL_SIZE, MT_LEAF_SIZE));
+		
+		// Compare top K machines on the same M-Tree
+		final MTree<Geo2D, Integer> mtree = new MTree<Geo2D, Integer>(MT_INTERNAL_SIZE, MT_LEAF_SIZE);
+		for (int i = 0; i < points.size(); i++) {
+			mtree.insert(points.get(i), i);
+		}
+		bench.run("MTree.findKClosest[AVLTopKMachine]", queries.size(), () -> {
+			for (Geo2D query : queries) {
+				Benchmark.consume(mtree.findKClosest(query, new AVLTopKMachine<DataWrapper<Geo2D, Integer>>(k)));
+			}
+		});
+		bench.run("MTree.findKClosest[HeapTopKMachine]", queries.size(), () -> {
+			for (Geo2D query : queries) {
+				Benchmark.consume(mtree.findKClosest(query, new HeapTopKMachine<DataWrapper<Geo2D, Integer>>(k)));
+			}
+		});
+		bench.run("MTree.findKClosest[parallel]", queries.size(), () -> {
+			for (Geo2D query : queries) {
+				Benchmark.consume(mtree.findKClosest(query, k, ForkJoinPool.commonPool()));
+			}
+		});
+	}
+	
+	/**
+	 * Benchmarks one index implementation
+	 * @param bench    The benchmark
+	 * @param name     The implementation's name
+	 * @param points   The points to insert
+	 * @param queries  The query points
+	 * @param distance The range query distance
+	 * @param k        The number of neighbors
+	 * @param factory  Builds an empty index
+	 */
+	private static <K extends IPointInMetricSpace<K>> void run(Benchmark bench, String name, final List<K> points, final List<K> queries, final double distance, final int k, final Supplier<IMTree<K, Integer>> factory) {
+		bench.run(name + ".insert", points.size(), () -> {
+			Benchmark.consume(build(factory, points));
+		});
+		
+		final IMTree<K, Integer> index = build(factory, points);
+		bench.run(name + ".find", queries.size(), () -> {
+			for (K query : queries) {
+				Benchmark.consume(index.find(query, distance));
+			}
+		});
+		bench.run(name + ".findKClosest", queries.size(), () -> {
+			for (K query : queries) {
+				Benchmark.consume(index.findKClosest(query, k));
+			}
+		});
+	}
+	
+	/**
+	 * Builds an index over points
+	 * @param factory Builds an empty index
+	 * @param points  The points
+	 * @return The index
+	 */
+	private static <K extends IPointInMetricSpace<K>> IMTree<K, Integer> build(Supplier<IMTree<K, Integer>> factory, List<K> points) {
+		IMTree<K, Integer> ret = factory.get();
+		for (int i = 0; i < points.size(); i++) {
+			ret.insert(points.get(i), i);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Generates points: a third in uniformly scattered plains, the rest in gaussian cities
+	 * @param random The random number generator
+	 * @param count  The number of points
+	 * @return The points
+	 */
+	private static List<Geo2D> generatePoints(Random random, int count) {
+		final int cities = 50;
+		double[] cityLat = new double[cities], cityLng = new double[cities];
+		for (int i = 0; i < cities; i++) {
+			cityLat[i] = 25.0d + random.nextDouble() * 24.0d;
+			cityLng[i] = -124.0d + random.nextDouble() * 57.0d;
+		}
+		
+		List<Geo2D> ret = new ArrayList<Geo2D>(count);
+		for (int i = 0; i < count; i++) {
+			if (i % 3 == 0) {
+				ret.add(new Geo2D(25.0d + random.nextDouble() * 24.0d, -124.0d + random.nextDouble() * 57.0d));
+			} else {
+				int city = random.nextInt(cities);
+				ret.add(new Geo2D(cityLat[city] + random.nextGaussian() * 0.05d, cityLng[city] + random.nextGaussian() * 0.05d));
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Loads the points out of a location file
+	 * @param file The file
+	 * @return The points
+	 */
+	private static List<Geo2D> loadPoints(String file) {
+		final List<Geo2D> ret = new ArrayList<Geo2D>();
+		try {
+			PortalReader.read(file, (p) -> {
+				ret.add(p.getPoint());
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+}
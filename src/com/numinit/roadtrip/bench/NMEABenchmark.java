@@ -0,0 +1,185 @@
+package com.numinit.roadtrip.bench;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import com.numinit.bench.Benchmark;
+import com.numinit.interactive.CommandLine;
+import com.numinit.roadtrip.index.Geo2D;
+import com.numinit.roadtrip.nmea.NMEAChannelParser;
+import com.numinit.roadtrip.nmea.NMEAParser;
+
+/**
+ * Compares NMEA parser throughput on a generated stream of fixes mixed with other sentences.
+ * Fixes are generated so NMEAParser accepts them too, so both parsers should return the same points.
+ * @author Morgan Jones
+ *
+ */
+public class NMEABenchmark {
+	public static void main(String[] args) {
+		CommandLine cmdline = new CommandLine("NMEABenchmark", args)
+		.add(new CommandLine.Option<Integer>(Integer.class, "count", "n", 100000, "How many fixes to generate", "number"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "iterations", "i", 5, "Measured iterations per benchmark", "number"))
+		.add(new CommandLine.Option<Long>(Long.class, "seed", "s", 215L, "The random seed", "number")).parse();
+		
+		final int count = cmdline.get(Integer.class, "count");
+		final byte[] stream = generate(new Random(cmdline.get(Long.class, "seed")), count);
+		Benchmark bench = new Benchmark(System.out, 2, cmdline.get(Integer.class, "iterations"));
+		System.out.format("=== %d fixes, %d bytes\n", count, stream.length);
+		
+		// Check that they agree before timing them
+		try {
+			NMEAParser regex = new NMEAParser(new ByteArrayInputStream(stream));
+			NMEAChannelParser channel = new NMEAChannelParser(new ArrayChannel(stream));
+			for (int i = 0; i < count; i++) {
+				Geo2D a = regex.getNextPoint(), b = channel.getNextPoint();
+				if (Math.abs(a.getLat() - b.getLat()) > 1e-9 || Math.abs(a.getLng() - b.getLng()) > 1e-9) {
+					throw new IllegalStateException(String.format("parsers disagree on fix %d: %s != %s", i, a, b));
+				}
+			}
+			System.out.println(channel);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		
+		double regex = bench.run("NMEAParser", count, () -> {
+			drain(new NMEAParser(new ByteArrayInputStream(stream)), count);
+		});
+		double channel = bench.run("NMEAChannelParser", count, () -> {
+			drain(new NMEAChannelParser(new ArrayChannel(stream)), count);
+		});
+		System.out.format("=== %.1fx, %.1f MB/s\n", regex / channel, stream.length / (channel * count) * 1.0e3);
+	}
+	
+	/**
+	 * A channel over a byte array, so the benchmark doesn't measure a socket
+	 * @author Morgan Jones
+	 *
+	 */
+	private static class ArrayChannel implements ReadableByteChannel {
+		/**
+		 * The bytes left to read
+		 */
+		private ByteBuffer _src;
+		
+		/**
+		 * Initializes this ArrayChannel
+		 * @param bytes The bytes
+		 */
+		public ArrayChannel(byte[] bytes) {
+			this._src = ByteBuffer.wrap(bytes);
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+		
+		@Override
+		public void close() {
+		}
+		
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!this._src.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(dst.remaining(), this._src.remaining());
+			ByteBuffer slice = this._src.duplicate();
+			slice.limit(slice.position() + n);
+			dst.put(slice);
+			this._src.position(this._src.position() + n);
+			return n;
+		}
+	}
+	
+	/**
+	 * Reads count fixes from the regex parser
+	 * @param parser The parser
+	 * @param count  The number of fixes
+	 */
+	private static void drain(NMEAParser parser, int count) {
+		try {
+			for (int i = 0; i < count; i++) {
+				Benchmark.consume(parser.getNextPoint());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Reads count fixes from the channel parser
+	 * @param parser The parser
+	 * @param count  The number of fixes
+	 */
+	private static void drain(NMEAChannelParser parser, int count) {
+		try {
+			for (int i = 0; i < count; i++) {
+				Benchmark.consume(parser.getNextPoint());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Generates a stream of fixes along a random walk, each followed by a satellite sentence, as a receiver sends them
+	 * @param random The random number generator
+	 * @param count  The number of fixes
+	 * @return The stream
+	 */
+	private static byte[] generate(Random random, int count) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		double lat = 40.0d, lng = -83.0d;
+		for (int i = 0; i < count; i++) {
+			lat += random.nextGaussian() * 1e-4;
+			lng += random.nextGaussian() * 1e-4;
+			
+			// Truncate the minutes so they can't round up to 60
+			double latMinutes = Math.floor((Math.abs(lat) % 1) * 60 * 1e4) / 1e4, lngMinutes = Math.floor((Math.abs(lng) % 1) * 60 * 1e4) / 1e4;
+			
+			// NMEAParser only takes decimal checksums, so nudge the time until we get one
+			String gga;
+			int seconds = i;
+			do {
+				gga = String.format(Locale.ROOT, "GPGGA,%02d%02d%02d,%02d%07.4f,%s,%03d%07.4f,%s,1,08,0.9,%.1f,M,46.9,M",
+						(seconds / 3600) % 24, (seconds / 60) % 60, seconds % 60,
+						(int)Math.abs(lat), latMinutes, lat >= 0 ? "N" : "S",
+						(int)Math.abs(lng), lngMinutes, lng >= 0 ? "E" : "W", 200 + random.nextDouble() * 100);
+				seconds += 86400;
+			} while (checksum(gga) > 0x99 || (checksum(gga) & 0x0f) > 9);
+			sentence(out, gga);
+			sentence(out, String.format("GPGSV,3,1,11,%02d,03,111,00,04,15,270,00,06,01,010,00,13,06,292,00", random.nextInt(32)));
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Writes a sentence with its checksum
+	 * @param out  The stream
+	 * @param body The sentence between the '$' and the '*'
+	 */
+	private static void sentence(ByteArrayOutputStream out, String body) {
+		byte[] bytes = String.format("$%s*%02X\r\n", body, checksum(body)).getBytes(StandardCharsets.US_ASCII);
+		out.write(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Computes an NMEA checksum
+	 * @param body The sentence between the '$' and the '*'
+	 * @return The checksum
+	 */
+	private static int checksum(String body) {
+		int ret = 0;
+		for (int i = 0; i < body.length(); i++) {
+			ret ^= body.charAt(i);
+		}
+		return ret;
+	}
+}
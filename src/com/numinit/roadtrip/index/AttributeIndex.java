@@ -0,0 +1,162 @@
+package com.numinit.roadtrip.index;
+
+import java.util.Iterator;
+
+import com.numinit.avl.tree.OrderStatisticAVL;
+
+/**
+ * A sorted secondary index over one PortalAttribute.
+ * Range counts come from ranks in the tree, so estimating a predicate's selectivity costs O(log n).
+ * @author Morgan Jones
+ *
+ */
+public class AttributeIndex {
+	/**
+	 * An index entry, ordered by value and then by insertion order
+	 * @author Morgan Jones
+	 *
+	 */
+	private static final class Entry implements Comparable<Entry> {
+		/**
+		 * The attribute value and insertion sequence number
+		 */
+		private final long _value, _seq;
+		
+		/**
+		 * The portal, or null for bounds
+		 */
+		private final Portal _portal;
+		
+		/**
+		 * Initializes this Entry
+		 * @param value  The attribute value
+		 * @param seq    The sequence number
+		 * @param portal The portal
+		 */
+		public Entry(long value, long seq, Portal portal) {
+			this._value = value;
+			this._seq = seq;
+			this._portal = portal;
+		}
+		
+		@Override
+		public int compareTo(Entry other) {
+			int ret = Long.compare(this._value, other._value);
+			return ret != 0 ? ret : Long.compare(this._seq, other._seq);
+		}
+	}
+	
+	/**
+	 * The attribute
+	 */
+	private PortalAttribute _attribute;
+	
+	/**
+	 * The entries
+	 */
+	private OrderStatisticAVL<Entry> _tree;
+	
+	/**
+	 * Initializes this AttributeIndex
+	 * @param attribute The attribute to index
+	 */
+	public AttributeIndex(PortalAttribute attribute) {
+		this._attribute = attribute;
+		this._tree = new OrderStatisticAVL<Entry>();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[attribute=%s,size=%d,height=%d]@%#08x>", this.getClass().getSimpleName(), this.getAttribute(), this.size(), this._tree.getHeight(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Returns the indexed attribute
+	 * @return The attribute
+	 */
+	public PortalAttribute getAttribute() {
+		return this._attribute;
+	}
+	
+	/**
+	 * Returns the number of indexed portals
+	 * @return The size
+	 */
+	public int size() {
+		return this._tree.size();
+	}
+	
+	/**
+	 * Indexes a portal
+	 * @param portal The portal
+	 * @param seq    A sequence number unique to this portal
+	 */
+	public void insert(Portal portal, long seq) {
+		this._tree.insert(new Entry(this.getAttribute().get(portal), seq, portal));
+	}
+	
+	/**
+	 * Unindexes a portal
+	 * @param portal The portal
+	 * @param seq    The sequence number it was indexed with
+	 * @return True if it was indexed
+	 */
+	public boolean remove(Portal portal, long seq) {
+		return this._tree.remove(new Entry(this.getAttribute().get(portal), seq, portal));
+	}
+	
+	/**
+	 * Returns the number of portals whose value is in [lo, hi]
+	 * @param lo The inclusive lower bound
+	 * @param hi The inclusive upper bound
+	 * @return The count
+	 */
+	public int count(long lo, long hi) {
+		if (lo > hi) {
+			return 0;
+		}
+		return this._tree.rank(upper(hi)) - this._tree.rank(lower(lo));
+	}
+	
+	/**
+	 * Returns the portals whose value is in [lo, hi], in ascending order
+	 * @param lo The inclusive lower bound
+	 * @param hi The inclusive upper bound
+	 * @return An iterable over the portals
+	 */
+	public Iterable<Portal> range(long lo, long hi) {
+		final Iterable<Entry> entries = this._tree.range(lower(lo), lo > hi ? lower(lo) : upper(hi));
+		return () -> {
+			final Iterator<Entry> iterator = entries.iterator();
+			return new Iterator<Portal>() {
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+				
+				@Override
+				public Portal next() {
+					return iterator.next()._portal;
+				}
+			};
+		};
+	}
+	
+	/**
+	 * Returns an entry sorting before every entry with value
+	 * @param value The value
+	 * @return The bound
+	 */
+	private static Entry lower(long value) {
+		return new Entry(value, Long.MIN_VALUE, null);
+	}
+	
+	/**
+	 * Returns an entry sorting after every entry with value
+	 * @param value The value
+	 * @return The bound
+	 */
+	private static Entry upper(long value) {
+		return value == Long.MAX_VALUE ? new Entry(value, Long.MAX_VALUE, null) : new Entry(value + 1, Long.MIN_VALUE, null);
+	}
+}
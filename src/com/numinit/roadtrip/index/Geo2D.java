@@ -3,14 +3,31 @@ package com.numinit.roadtrip.index;
 import com.numinit.mtree.point.IPointInMetricSpace;
 import com.numinit.utils.DoubleUtils;
 
+/**
+ * A point on the surface of the earth. Distances between Geo2Ds are chord lengths (in meters) through the earth,
+ * which are cheap to compute from cached unit vectors and rank points identically to great-circle distance.
+ * Use getSurfaceDistance for the great-circle distance.
+ * @author Morgan Jones
+ *
+ */
 public class Geo2D implements IPointInMetricSpace<Geo2D>, Comparable<Geo2D> {
 	private static double EARTH_RADIUS = 6371000.0d;
 	
 	/**
 	 * Lat/lng coords of this portal
 	 */
-	private double _lat, _lng;
-
+	private final double _lat, _lng;
+	
+	/**
+	 * Lat/lng coords of this portal in radians, and the cosine of the latitude
+	 */
+	private final double _latRad, _lngRad, _cosLat;
+	
+	/**
+	 * The unit vector pointing at this portal from the center of the earth
+	 */
+	private final double _x, _y, _z;
+	
 	/**
 	 * Initializes this Geo2D
 	 * @param lat the latitude
@@ -19,6 +36,14 @@ public class Geo2D implements IPointInMetricSpace<Geo2D>, Comparable<Geo2D> {
 	public Geo2D(double lat, double lng) {
 		this._lat = lat;
 		this._lng = lng;
+		
+		// Geo2Ds are immutable and compared constantly, so do all the trig up front
+		this._latRad = toRadians(lat);
+		this._lngRad = toRadians(lng);
+		this._cosLat = Math.cos(this._latRad);
+		this._x = this._cosLat * Math.cos(this._lngRad);
+		this._y = this._cosLat * Math.sin(this._lngRad);
+		this._z = Math.sin(this._latRad);
 	}
 	
 	@Override
@@ -42,11 +67,35 @@ public class Geo2D implements IPointInMetricSpace<Geo2D>, Comparable<Geo2D> {
 		return this._lng;
 	}
 	
+	/**
+	 * Returns the chord distance, in meters, between this point and another.
+	 * This is the metric used for indexing; convert surface distances with toChordDistance before comparing.
+	 */
 	@Override
 	public double getDistance(Geo2D other) {
-		double lat = toRadians(this.getLat()), lng = toRadians(this.getLng());
-		double dLat = toRadians(other.getLat() - this.getLat()), dLng = toRadians(other.getLng() - this.getLng());
-		double a = Math.pow(Math.sin(dLat / 2.0d), 2.0d) + Math.cos(lat) * Math.cos(lng) * Math.pow(Math.sin(dLng / 2.0d), 2.0d);
+		double dx = this._x - other._x, dy = this._y - other._y, dz = this._z - other._z;
+		return EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+	
+	@Override
+	public void getDistances(Geo2D[] others, int n, double[] out) {
+		// Read our own vector once for the whole batch
+		double x = this._x, y = this._y, z = this._z;
+		for (int i = 0; i < n; i++) {
+			Geo2D other = others[i];
+			double dx = x - other._x, dy = y - other._y, dz = z - other._z;
+			out[i] = EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy + dz * dz);
+		}
+	}
+	
+	/**
+	 * Returns the great-circle distance, in meters, between this point and another
+	 * @param other The other point
+	 * @return The distance
+	 */
+	public double getSurfaceDistance(Geo2D other) {
+		double sinDLat = Math.sin((other._latRad - this._latRad) / 2.0d), sinDLng = Math.sin((other._lngRad - this._lngRad) / 2.0d);
+		double a = sinDLat * sinDLat + this._cosLat * other._cosLat * sinDLng * sinDLng;
 		return EARTH_RADIUS * 2.0d * Math.atan2(Math.sqrt(a), Math.sqrt(1.0d - a));
 	}
 	
@@ -56,12 +105,11 @@ public class Geo2D implements IPointInMetricSpace<Geo2D>, Comparable<Geo2D> {
 	 * @return The bearing
 	 */
 	public double getBearing(Geo2D other) {
-		double curLat = toRadians(this.getLat()), otherLat = toRadians(other.getLat()), k = Math.cos(otherLat);
-		double dLng = toRadians(other.getLng() - this.getLng());
-		double theta = Math.atan2(Math.sin(dLng) * k, Math.cos(curLat) * Math.sin(otherLat) - Math.sin(curLat) * k * Math.cos(dLng));
+		double k = other._cosLat, dLng = other._lngRad - this._lngRad;
+		double theta = Math.atan2(Math.sin(dLng) * k, this._cosLat * other._z - this._z * k * Math.cos(dLng));
 		return ((360 - (toDegrees(theta) + 360.0d) % 360.0d) + 90) % 360;
 	}
-
+	
 	@Override
 	public int compareTo(Geo2D other) {
 		if (DoubleUtils.compare(this.getLat(), other.getLat()) == 0 || DoubleUtils.compare(this.getLng(), other.getLng()) == 0) {
@@ -71,6 +119,24 @@ public class Geo2D implements IPointInMetricSpace<Geo2D>, Comparable<Geo2D> {
 		}
 	}
 	
+	/**
+	 * Converts a great-circle distance to the equivalent chord distance, for use as a query bound
+	 * @param surfaceDistance The great-circle distance, in meters
+	 * @return The chord distance, in meters
+	 */
+	public static double toChordDistance(double surfaceDistance) {
+		return 2.0d * EARTH_RADIUS * Math.sin(Math.min(surfaceDistance, Math.PI * EARTH_RADIUS) / (2.0d * EARTH_RADIUS));
+	}
+	
+	/**
+	 * Converts a chord distance to the equivalent great-circle distance
+	 * @param chordDistance The chord distance, in meters
+	 * @return The great-circle distance, in meters
+	 */
+	public static double toSurfaceDistance(double chordDistance) {
+		return 2.0d * EARTH_RADIUS * Math.asin(Math.min(chordDistance / (2.0d * EARTH_RADIUS), 1.0d));
+	}
+	
 	/**
 	 * Converts degrees to radians
 	 * @param degrees The degrees
@@ -93,7 +159,7 @@ public class Geo2D implements IPointInMetricSpace<Geo2D>, Comparable<Geo2D> {
 	 * Returns a new Geo2D from E6 coords
 	 * @param latE6 the latitude
 	 * @param lngE6 the longitude
-	 * @return The Geo2D	
+	 * @return The Geo2D
 	 */
 	public static Geo2D fromE6(long latE6, long lngE6) {
 		return new Geo2D(latE6 / 1.0e6, lngE6 / 1.0e6);
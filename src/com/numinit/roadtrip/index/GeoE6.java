@@ -0,0 +1,228 @@
+package com.numinit.roadtrip.index;
+
+import com.numinit.mtree.point.IPointInMetricSpace;
+
+/**
+ * A point on the surface of the earth on the grid location files use: latitude and longitude in millionths of a degree,
+ * packed into one long. That's a third of a Geo2D's size, which matters for the millions of keys a spatial index holds.
+ *
+ * Distances are the same chord lengths Geo2D uses, computed from the exact integer differences between coordinates
+ * with table-driven sines, so nothing is lost to cancellation and no trig functions are called.
+ * Points that aren't on the grid (like fixes) are rounded onto it, moving them at most QUANTIZATION_ERROR; queries from
+ * such points must widen their bounds by that much, as PortalIndex does.
+ * @author Morgan Jones
+ *
+ */
+public class GeoE6 implements IPointInMetricSpace<GeoE6> {
+	private static final double EARTH_RADIUS = 6371000.0d;
+	
+	/**
+	 * The farthest, in chord distance (meters), any point is from its nearest grid point: half a millionth of a degree
+	 * of latitude and of longitude, with a little room for rounding
+	 */
+	public static final double QUANTIZATION_ERROR = 0.08d;
+	
+	/**
+	 * Sines are looked up in units of half a millionth of a degree, over [-180, 180] degrees, as the sum of a coarse angle
+	 * and a fine one: sin(a + b) = sin(a)cos(b) + cos(a)sin(b)
+	 */
+	private static final int FINE_BITS = 15, FINE_MASK = (1 << FINE_BITS) - 1;
+	private static final long HALF_UNITS = 360000000L;
+	private static final double[] COARSE_SIN, COARSE_COS, FINE_SIN, FINE_COS;
+	
+	static {
+		int coarse = (int)((2 * HALF_UNITS) >> FINE_BITS) + 1, fine = 1 << FINE_BITS;
+		COARSE_SIN = new double[coarse];
+		COARSE_COS = new double[coarse];
+		FINE_SIN = new double[fine];
+		FINE_COS = new double[fine];
+		for (int i = 0; i < coarse; i++) {
+			double radians = Geo2D.toRadians((((long)i << FINE_BITS) - HALF_UNITS) * 0.5e-6d);
+			COARSE_SIN[i] = Math.sin(radians);
+			COARSE_COS[i] = Math.cos(radians);
+		}
+		for (int i = 0; i < fine; i++) {
+			double radians = Geo2D.toRadians(i * 0.5e-6d);
+			FINE_SIN[i] = Math.sin(radians);
+			FINE_COS[i] = Math.cos(radians);
+		}
+	}
+	
+	/**
+	 * The latitude in the high 32 bits, and the longitude in the low
+	 */
+	private final long _packed;
+	
+	/**
+	 * Initializes this GeoE6
+	 * @param latE6 The latitude, in millionths of a degree
+	 * @param lngE6 The longitude, in millionths of a degree
+	 */
+	public GeoE6(int latE6, int lngE6) {
+		this._packed = pack(latE6, lngE6);
+	}
+	
+	/**
+	 * Initializes this GeoE6
+	 * @param packed The coordinates, as from getPacked
+	 */
+	public GeoE6(long packed) {
+		this._packed = packed;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s@%#08x:%.6f,%.6f>", this.getClass().getSimpleName(), System.identityHashCode(this), this.getLat(), this.getLng());
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof GeoE6 && ((GeoE6)other)._packed == this._packed;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(this._packed);
+	}
+	
+	/**
+	 * @return the coordinates, packed into a long
+	 */
+	public long getPacked() {
+		return this._packed;
+	}
+	
+	/**
+	 * @return the latitude, in millionths of a degree
+	 */
+	public int getLatE6() {
+		return (int)(this._packed >> 32);
+	}
+	
+	/**
+	 * @return the longitude, in millionths of a degree
+	 */
+	public int getLngE6() {
+		return (int)this._packed;
+	}
+	
+	/**
+	 * @return the latitude
+	 */
+	public double getLat() {
+		return this.getLatE6() / 1.0e6;
+	}
+	
+	/**
+	 * @return the longitude
+	 */
+	public double getLng() {
+		return this.getLngE6() / 1.0e6;
+	}
+	
+	/**
+	 * Returns the chord distance, in meters, between this point and another
+	 */
+	@Override
+	public double getDistance(GeoE6 other) {
+		int lat = this.getLatE6(), otherLat = other.getLatE6();
+		return chord(lat, cos(lat), otherLat, cos(otherLat), (long)this.getLngE6() - other.getLngE6());
+	}
+	
+	@Override
+	public double getDistance(GeoE6 other, double bound) {
+		// The latitude term alone is a lower bound, and doesn't need the cosines
+		double s = sinHalf((long)this.getLatE6() - other.getLatE6()), lower = 2.0d * EARTH_RADIUS * Math.abs(s);
+		return lower > bound ? lower : this.getDistance(other);
+	}
+	
+	@Override
+	public void getDistances(GeoE6[] others, int n, double[] out) {
+		// Look our own cosine up once for the whole batch
+		int lat = this.getLatE6(), lng = this.getLngE6();
+		double cos = cos(lat);
+		for (int i = 0; i < n; i++) {
+			int otherLat = others[i].getLatE6();
+			out[i] = chord(lat, cos, otherLat, cos(otherLat), (long)lng - others[i].getLngE6());
+		}
+	}
+	
+	/**
+	 * Returns whether this point is within a chord distance of a point that may not be on the grid.
+	 * Only points within QUANTIZATION_ERROR of the boundary need the exact, slower check.
+	 * @param center        The point
+	 * @param centerKey     The point, rounded onto the grid
+	 * @param chordDistance The chord distance
+	 * @return True if it is
+	 */
+	public boolean isWithin(Geo2D center, GeoE6 centerKey, double chordDistance) {
+		double distance = this.getDistance(centerKey);
+		if (distance <= chordDistance - QUANTIZATION_ERROR) {
+			return true;
+		} else if (distance > chordDistance + QUANTIZATION_ERROR) {
+			return false;
+		}
+		return this.toGeo2D().getDistance(center) <= chordDistance;
+	}
+	
+	/**
+	 * @return this point as a Geo2D
+	 */
+	public Geo2D toGeo2D() {
+		return Geo2D.fromE6(this.getLatE6(), this.getLngE6());
+	}
+	
+	/**
+	 * Returns the grid point nearest a Geo2D
+	 * @param point The Geo2D
+	 * @return The GeoE6
+	 */
+	public static GeoE6 fromGeo2D(Geo2D point) {
+		return new GeoE6((int)Math.round(point.getLat() * 1.0e6), (int)Math.round(point.getLng() * 1.0e6));
+	}
+	
+	/**
+	 * Packs coordinates into a long
+	 * @param latE6 The latitude, in millionths of a degree
+	 * @param lngE6 The longitude, in millionths of a degree
+	 * @return The packed coordinates
+	 */
+	public static long pack(int latE6, int lngE6) {
+		return ((long)latE6 << 32) | (lngE6 & 0xffffffffL);
+	}
+	
+	/**
+	 * Returns the chord distance between two points, by the haversine formula:
+	 * (chord / 2R)^2 = sin^2(dLat / 2) + cos(lat1)cos(lat2)sin^2(dLng / 2)
+	 * @param lat1 The first latitude, in millionths of a degree
+	 * @param cos1 Its cosine
+	 * @param lat2 The second latitude
+	 * @param cos2 Its cosine
+	 * @param dLng The difference in longitude, in millionths of a degree
+	 * @return The chord distance, in meters
+	 */
+	private static double chord(int lat1, double cos1, int lat2, double cos2, long dLng) {
+		double s = sinHalf((long)lat1 - lat2), t = sinHalf(dLng);
+		return 2.0d * EARTH_RADIUS * Math.sqrt(Math.min(s * s + cos1 * cos2 * t * t, 1.0d));
+	}
+	
+	/**
+	 * Returns the cosine of a latitude
+	 * @param latE6 The latitude, in millionths of a degree
+	 * @return The cosine
+	 */
+	private static double cos(int latE6) {
+		// cos(x) = sin(x + 90), in half units
+		return sinHalf(2L * latE6 + HALF_UNITS / 2);
+	}
+	
+	/**
+	 * Returns the sine of half an angle
+	 * @param e6 The angle, in millionths of a degree, in [-360, 360] degrees
+	 * @return The sine of half of it
+	 */
+	private static double sinHalf(long e6) {
+		int index = (int)(e6 + HALF_UNITS), coarse = index >>> FINE_BITS, fine = index & FINE_MASK;
+		return COARSE_SIN[coarse] * FINE_COS[fine] + COARSE_COS[coarse] * FINE_SIN[fine];
+	}
+}
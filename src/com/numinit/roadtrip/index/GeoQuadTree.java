@@ -0,0 +1,518 @@
+package com.numinit.roadtrip.index;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.numinit.avl.AVLTopKMachine;
+import com.numinit.avl.ITopKMachine;
+import com.numinit.avl.TopKStatistics;
+import com.numinit.mtree.IMTree;
+import com.numinit.mtree.utils.DataWrapper;
+import com.numinit.utils.DoubleUtils;
+
+/**
+ * An IMTree over Geo2D keys backed by a hierarchy of quadkey cells. Level l splits the world into a
+ * 2^l by 2^l grid of lat/lng cells, and each cell's quadkey is the Morton interleaving of its column and row,
+ * so a cell's parent is its quadkey shifted right by two. Only non-empty cells are stored, which keeps
+ * empty plains cheap while dense cities get fine cells.
+ *
+ * Like MTree, distances are Geo2D chord distances, so range bounds should go through Geo2D.toChordDistance.
+ * @author Morgan Jones
+ *
+ * @param <V> The value type
+ */
+public class GeoQuadTree<V> implements IMTree<Geo2D, V> {
+	/**
+	 * The default and maximum levels
+	 */
+	public static final int DEFAULT_MAX_LEVEL = 16, MAX_LEVEL = 30;
+	
+	/**
+	 * The radius of the earth, matching Geo2D
+	 */
+	private static final double EARTH_RADIUS = 6371000.0d;
+	
+	/**
+	 * Each thread's top K machine, reset for every search
+	 */
+	private static final ThreadLocal<AVLTopKMachine<Object>> TOP_K = ThreadLocal.withInitial(() -> new AVLTopKMachine<Object>(0));
+	
+	/**
+	 * A single cell. Cells at every level count the points below them; only cells at the finest level hold entries.
+	 * @author Morgan Jones
+	 *
+	 */
+	private class Cell {
+		/**
+		 * The number of points in this cell
+		 */
+		private int _count;
+		
+		/**
+		 * Our entries, if we're at the finest level
+		 */
+		private ArrayList<DataWrapper<Geo2D, V>> _entries;
+		
+		/**
+		 * Our keys, in the same order as _entries, for batch distance computation
+		 */
+		private Geo2D[] _keys;
+		
+		/**
+		 * Initializes this Cell
+		 * @param leaf Whether this cell is at the finest level
+		 */
+		public Cell(boolean leaf) {
+			this._count = 0;
+			if (leaf) {
+				this._entries = new ArrayList<DataWrapper<Geo2D, V>>(1);
+				this._keys = new Geo2D[1];
+			}
+		}
+		
+		/**
+		 * Adds an entry to this leaf cell
+		 * @param key   The key
+		 * @param value The value
+		 */
+		public void push(Geo2D key, V value) {
+			if (this._entries.size() == this._keys.length) {
+				Geo2D[] keys = new Geo2D[this._keys.length * 2];
+				System.arraycopy(this._keys, 0, keys, 0, this._keys.length);
+				this._keys = keys;
+			}
+			this._keys[this._entries.size()] = key;
+			this._entries.add(new DataWrapper<Geo2D, V>(key, value));
+		}
+		
+		/**
+		 * Returns the distances from query to every key in this leaf cell
+		 * @param query The query
+		 * @return The distances, indexed the same as our entries
+		 */
+		public double[] distancesFrom(Geo2D query) {
+			double[] ret = new double[this._entries.size()];
+			query.getDistances(this._keys, ret.length, ret);
+			return ret;
+		}
+	}
+	
+	/**
+	 * The finest level
+	 */
+	private int _maxLevel;
+	
+	/**
+	 * Non-empty cells by quadkey, one map per level
+	 */
+	private ArrayList<HashMap<Long, Cell>> _levels;
+	
+	/**
+	 * Initializes this GeoQuadTree
+	 * @param maxLevel The finest level; cells at this level are 180/2^maxLevel degrees tall
+	 */
+	public GeoQuadTree(int maxLevel) {
+		if (maxLevel < 0 || maxLevel > MAX_LEVEL) {
+			throw new IllegalArgumentException(String.format("invalid max level %d, choose 0 to %d", maxLevel, MAX_LEVEL));
+		}
+		this._maxLevel = maxLevel;
+		this._levels = new ArrayList<HashMap<Long, Cell>>(maxLevel + 1);
+		for (int l = 0; l <= maxLevel; l++) {
+			this._levels.add(new HashMap<Long, Cell>());
+		}
+	}
+	
+	/**
+	 * Initializes this GeoQuadTree with the default max level
+	 */
+	public GeoQuadTree() {
+		this(DEFAULT_MAX_LEVEL);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[levels=%d,cells=%d,count=%d]@%#08x>", this.getClass().getSimpleName(),
+				this._maxLevel + 1, this._levels.get(this._maxLevel).size(), this.getCount(), System.identityHashCode(this));
+	}
+	
+	@Override
+	public void insert(Geo2D key, V value) {
+		long quadkey = this.getQuadkey(key, this._maxLevel);
+		for (int l = this._maxLevel; l >= 0; l--, quadkey >>>= 2) {
+			HashMap<Long, Cell> level = this._levels.get(l);
+			Cell cell = level.get(quadkey);
+			if (cell == null) {
+				cell = new Cell(l == this._maxLevel);
+				level.put(quadkey, cell);
+			}
+			if (l == this._maxLevel) {
+				cell.push(key, value);
+			}
+			cell._count++;
+		}
+	}
+	
+	@Override
+	public ArrayList<DataWrapper<Geo2D, V>> find(Geo2D query, double distance) {
+		if (distance < 0.0d) {
+			throw new IllegalArgumentException("distance must be >= 0");
+		}
+		
+		ArrayList<DataWrapper<Geo2D, V>> ret = new ArrayList<DataWrapper<Geo2D, V>>();
+		
+		// Pick the finest level whose cells are at least as tall as the query circle is wide, so the cover stays small
+		double radius = toDegrees(Geo2D.toSurfaceDistance(distance) / EARTH_RADIUS);
+		int level = 0;
+		while (level < this._maxLevel && cellHeight(level + 1) >= 2.0d * radius) {
+			level++;
+		}
+		
+		// Cover the circle's bounding box with cells at that level, then descend into the ones that intersect it
+		int n = 1 << level;
+		double minLat = query.getLat() - radius, maxLat = query.getLat() + radius;
+		int minRow = row(Math.max(minLat, -90.0d), level), maxRow = row(Math.min(maxLat, 90.0d), level);
+		int cx = column(query.getLng(), level), span;
+		double cosLat = Math.cos(Geo2D.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat))));
+		if (maxLat >= 90.0d || minLat <= -90.0d || DoubleUtils.compare(cosLat, 0.0d) <= 0 || radius >= 90.0d) {
+			span = n;
+		} else {
+			double lngRadius = toDegrees(Math.asin(Math.min(Math.sin(Geo2D.toRadians(radius)) / cosLat, 1.0d)));
+			span = Math.min((int)Math.ceil(lngRadius / cellWidth(level)) * 2 + 1, n);
+		}
+		for (int y = minRow; y <= maxRow; y++) {
+			for (int i = 0; i < span; i++) {
+				int x = Math.floorMod(cx - span / 2 + i, n);
+				this.find(query, distance, interleave(x, y), level, ret);
+			}
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public ArrayList<DataWrapper<Geo2D, V>> findKClosest(Geo2D query, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be >= 0");
+		}
+		
+		if (k == 0 || this.getCount() == 0) {
+			return new ArrayList<DataWrapper<Geo2D, V>>();
+		}
+		@SuppressWarnings("unchecked")
+		ITopKMachine<DataWrapper<Geo2D, V>> topK = (ITopKMachine<DataWrapper<Geo2D, V>>)(ITopKMachine<?>)TOP_K.get().reset(k);
+		
+		// Start at the finest level where our own cell already holds k points, so the first ring sets a tight cutoff
+		int level = this._maxLevel;
+		long quadkey = this.getQuadkey(query, level);
+		while (level > 0 && this.getCountFor(quadkey, level) < k) {
+			level--;
+			quadkey >>>= 2;
+		}
+		
+		// Expand ring by ring around our cell
+		int n = 1 << level, cx = column(query.getLng(), level), cy = row(query.getLat(), level);
+		int maxRing = Math.max(n / 2, Math.max(cy, n - 1 - cy));
+		for (int r = 0; r <= maxRing; r++) {
+			// Everything in this ring and beyond lies outside the block of rings we've already seen
+			if (r > 0 && isFull(topK) && DoubleUtils.compare(this.getBlockBound(query, cx, cy, r - 1, level), topK.getCurrentCutoff()) > 0) {
+				break;
+			}
+			
+			for (int y = Math.max(cy - r, 0); y <= Math.min(cy + r, n - 1); y++) {
+				if (Math.abs(y - cy) == r) {
+					// Top and bottom rows: every column within r, wrapping around the antimeridian
+					int span = Math.min(2 * r + 1, n);
+					for (int i = 0; i < span; i++) {
+						this.find(query, topK, interleave(Math.floorMod(cx - r + i, n), y), level);
+					}
+				} else if (2 * r < n) {
+					// Middle rows: just the left and right columns
+					this.find(query, topK, interleave(Math.floorMod(cx - r, n), y), level);
+					this.find(query, topK, interleave(Math.floorMod(cx + r, n), y), level);
+				} else if (2 * r == n) {
+					// The left and right columns wrapped onto each other
+					this.find(query, topK, interleave(Math.floorMod(cx + r, n), y), level);
+				}
+			}
+		}
+		
+		ArrayList<DataWrapper<Geo2D, V>> ret = topK.getTopK();
+		TopKStatistics.getInstance().recordResult(topK);
+		return ret;
+	}
+	
+	@Override
+	public int depth() {
+		return this._maxLevel + 1;
+	}
+	
+	/**
+	 * Returns the number of points in this tree
+	 * @return The number of points
+	 */
+	public int getCount() {
+		Cell root = this._levels.get(0).get(0L);
+		return root == null ? 0 : root._count;
+	}
+	
+	/**
+	 * Returns the number of non-empty cells at a level
+	 * @param level The level
+	 * @return The number of cells
+	 */
+	public int getCellCount(int level) {
+		return this._levels.get(level).size();
+	}
+	
+	/**
+	 * Returns the finest level
+	 * @return The finest level
+	 */
+	public int getMaxLevel() {
+		return this._maxLevel;
+	}
+	
+	/**
+	 * Finds all points within distance of query in a cell and its children
+	 * @param query    The query
+	 * @param distance The chord distance
+	 * @param quadkey  The cell's quadkey
+	 * @param level    The cell's level
+	 * @param output   The output list
+	 */
+	private void find(Geo2D query, double distance, long quadkey, int level, ArrayList<DataWrapper<Geo2D, V>> output) {
+		Cell cell = this._levels.get(level).get(quadkey);
+		if (cell == null || DoubleUtils.compare(this.getCellBound(query, quadkey, level), distance) > 0) {
+			return;
+		}
+		
+		if (level == this._maxLevel) {
+			double[] distances = cell.distancesFrom(query);
+			for (int i = 0; i < distances.length; i++) {
+				if (DoubleUtils.compare(distances[i], distance) <= 0) {
+					output.add(cell._entries.get(i));
+				}
+			}
+		} else {
+			for (long child = 0; child < 4; child++) {
+				this.find(query, distance, (quadkey << 2) | child, level + 1, output);
+			}
+		}
+	}
+	
+	/**
+	 * Offers every point in a cell and its children to topK, skipping cells that can't beat the cutoff
+	 * @param query   The query
+	 * @param topK    The top K machine
+	 * @param quadkey The cell's quadkey
+	 * @param level   The cell's level
+	 */
+	private void find(Geo2D query, ITopKMachine<DataWrapper<Geo2D, V>> topK, long quadkey, int level) {
+		Cell cell = this._levels.get(level).get(quadkey);
+		if (cell == null || DoubleUtils.compare(this.getCellBound(query, quadkey, level), topK.getCurrentCutoff()) > 0) {
+			return;
+		}
+		
+		if (level == this._maxLevel) {
+			double[] distances = cell.distancesFrom(query);
+			for (int i = 0; i < distances.length; i++) {
+				topK.insert(distances[i], cell._entries.get(i));
+			}
+		} else {
+			for (long child = 0; child < 4; child++) {
+				this.find(query, topK, (quadkey << 2) | child, level + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether topK has filled up, so its cutoff bounds everything it will return
+	 * @param topK The top K machine
+	 * @return True if full
+	 */
+	private static boolean isFull(ITopKMachine<?> topK) {
+		return topK.getCurrentCutoff() != Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Returns the number of points in a cell
+	 * @param quadkey The quadkey
+	 * @param level   The level
+	 * @return The count
+	 */
+	private int getCountFor(long quadkey, int level) {
+		Cell cell = this._levels.get(level).get(quadkey);
+		return cell == null ? 0 : cell._count;
+	}
+	
+	/**
+	 * Returns the quadkey of the cell containing a point
+	 * @param point The point
+	 * @param level The level
+	 * @return The quadkey
+	 */
+	private long getQuadkey(Geo2D point, int level) {
+		return interleave(column(point.getLng(), level), row(point.getLat(), level));
+	}
+	
+	/**
+	 * Returns a lower bound on the chord distance from query to anything in a cell
+	 * @param query   The query
+	 * @param quadkey The quadkey
+	 * @param level   The level
+	 * @return The bound
+	 */
+	private double getCellBound(Geo2D query, long quadkey, int level) {
+		int x = deinterleave(quadkey), y = deinterleave(quadkey >>> 1);
+		return getBoxBound(query, y * cellHeight(level) - 90.0d, (y + 1) * cellHeight(level) - 90.0d,
+				x * cellWidth(level) - 180.0d, cellWidth(level), false);
+	}
+	
+	/**
+	 * Returns a lower bound on the chord distance from query to anything outside the block of cells within r rings of (cx, cy)
+	 * @param query The query
+	 * @param cx    The query's column
+	 * @param cy    The query's row
+	 * @param r     The ring
+	 * @param level The level
+	 * @return The bound
+	 */
+	private double getBlockBound(Geo2D query, int cx, int cy, int r, int level) {
+		int n = 1 << level;
+		double minLat = Math.max(cy - r, 0) * cellHeight(level) - 90.0d, maxLat = (Math.min(cy + r, n - 1) + 1) * cellHeight(level) - 90.0d;
+		double width = 2 * r + 1 >= n ? 360.0d : (2 * r + 1) * cellWidth(level);
+		return getBoxBound(query, minLat, maxLat, (cx - r) * cellWidth(level) - 180.0d, width, true);
+	}
+	
+	/**
+	 * Returns a lower bound on the chord distance from query to a lat/lng box, or to everything outside it.
+	 * Distances along a meridian bound distances in latitude, and distances to a meridian's great circle bound
+	 * distances in longitude.
+	 * @param query   The query
+	 * @param minLat  The southern edge
+	 * @param maxLat  The northern edge
+	 * @param minLng  The western edge
+	 * @param width   The width in degrees, which may wrap around the antimeridian
+	 * @param outside Whether to bound the distance to the outside of the box instead of the inside
+	 * @return The bound
+	 */
+	private static double getBoxBound(Geo2D query, double minLat, double maxLat, double minLng, double width, boolean outside) {
+		double lat = query.getLat(), cosLat = Math.cos(Geo2D.toRadians(lat));
+		double west = ((query.getLng() - minLng) % 360.0d + 360.0d) % 360.0d, east = width - west;
+		boolean inLng = width >= 360.0d || east >= 0.0d;
+		double latGap, lngGap;
+		if (outside) {
+			// The nearest escape is across whichever edge is closest; edges at the poles or all the way around don't count
+			latGap = Math.min(maxLat >= 90.0d ? Double.POSITIVE_INFINITY : maxLat - lat, minLat <= -90.0d ? Double.POSITIVE_INFINITY : lat - minLat);
+			lngGap = width >= 360.0d ? Double.POSITIVE_INFINITY : Math.min(west, east);
+			double bound = Math.min(latGap * Math.PI / 180.0d, meridianAngle(cosLat, lngGap));
+			return Geo2D.toChordDistance(EARTH_RADIUS * Math.max(bound, 0.0d));
+		} else {
+			latGap = lat < minLat ? minLat - lat : (lat > maxLat ? lat - maxLat : 0.0d);
+			lngGap = inLng ? 0.0d : Math.min(-east, 360.0d - west);
+			double bound = Math.max(latGap * Math.PI / 180.0d, meridianAngle(cosLat, lngGap));
+			return Geo2D.toChordDistance(EARTH_RADIUS * bound);
+		}
+	}
+	
+	/**
+	 * Returns the angle between a point and the great circle through a meridian some degrees of longitude away
+	 * @param cosLat The cosine of the point's latitude
+	 * @param dLng   The difference in longitude, in degrees
+	 * @return The angle, in radians
+	 */
+	private static double meridianAngle(double cosLat, double dLng) {
+		if (dLng == Double.POSITIVE_INFINITY) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return Math.asin(Math.min(Math.abs(cosLat * Math.sin(Geo2D.toRadians(Math.min(dLng, 90.0d)))), 1.0d));
+	}
+	
+	/**
+	 * Returns the column of a longitude at a level
+	 * @param lng   The longitude
+	 * @param level The level
+	 * @return The column
+	 */
+	private static int column(double lng, int level) {
+		int n = 1 << level;
+		return Math.floorMod((int)Math.floor((lng + 180.0d) / cellWidth(level)), n);
+	}
+	
+	/**
+	 * Returns the row of a latitude at a level
+	 * @param lat   The latitude
+	 * @param level The level
+	 * @return The row
+	 */
+	private static int row(double lat, int level) {
+		int n = 1 << level;
+		return Math.min(Math.max((int)Math.floor((lat + 90.0d) / cellHeight(level)), 0), n - 1);
+	}
+	
+	/**
+	 * Returns the width of a cell at a level, in degrees
+	 * @param level The level
+	 * @return The width
+	 */
+	private static double cellWidth(int level) {
+		return 360.0d / (1 << level);
+	}
+	
+	/**
+	 * Returns the height of a cell at a level, in degrees
+	 * @param level The level
+	 * @return The height
+	 */
+	private static double cellHeight(int level) {
+		return 180.0d / (1 << level);
+	}
+	
+	/**
+	 * Converts radians to degrees
+	 * @param radians The radians
+	 * @return The degrees
+	 */
+	private static double toDegrees(double radians) {
+		return Geo2D.toDegrees(radians);
+	}
+	
+	/**
+	 * Interleaves a column and row into a quadkey, column bits first
+	 * @param x The column
+	 * @param y The row
+	 * @return The quadkey
+	 */
+	private static long interleave(int x, int y) {
+		return spread(x) | (spread(y) << 1);
+	}
+	
+	/**
+	 * Spreads the bits of v out to every other bit
+	 * @param v The value
+	 * @return The spread value
+	 */
+	private static long spread(int v) {
+		long ret = v & 0xffffffffL;
+		ret = (ret | (ret << 16)) & 0x0000ffff0000ffffL;
+		ret = (ret | (ret << 8))  & 0x00ff00ff00ff00ffL;
+		ret = (ret | (ret << 4))  & 0x0f0f0f0f0f0f0f0fL;
+		ret = (ret | (ret << 2))  & 0x3333333333333333L;
+		ret = (ret | (ret << 1))  & 0x5555555555555555L;
+		return ret;
+	}
+	
+	/**
+	 * Collects every other bit of v, undoing spread
+	 * @param v The value
+	 * @return The collected value
+	 */
+	private static int deinterleave(long v) {
+		long ret = v & 0x5555555555555555L;
+		ret = (ret | (ret >>> 1))  & 0x3333333333333333L;
+		ret = (ret | (ret >>> 2))  & 0x0f0f0f0f0f0f0f0fL;
+		ret = (ret | (ret >>> 4))  & 0x00ff00ff00ff00ffL;
+		ret = (ret | (ret >>> 8))  & 0x0000ffff0000ffffL;
+		ret = (ret | (ret >>> 16)) & 0x00000000ffffffffL;
+		return (int)ret;
+	}
+}
@@ -0,0 +1,100 @@
+package com.numinit.roadtrip.index;
+
+/**
+ * A portal whose fields are on the heap
+ * @author Morgan Jones
+ *
+ */
+public class HeapPortal extends Portal {
+	/**
+	 * The portal's UUID
+	 */
+	private String _uuid;
+	
+	/**
+	 * The timestamp
+	 */
+	private long _timestamp;
+	
+	/**
+	 * The name
+	 */
+	private String _name;
+	
+	/**
+	 * The team
+	 */
+	private Team _faction;
+	
+	/**
+	 * The point
+	 */
+	private Geo2D _point;
+	
+	/**
+	 * Portal metrics
+	 */
+	private int _level, _health, _resonators;
+	
+	/**
+	 * Initializes this portal
+	 * @param uuid The UUID
+	 * @param timestamp The timestamp
+	 * @param name The name
+	 * @param faction The faction
+	 * @param point The location
+	 * @param level The level
+	 * @param health The health
+	 * @param resonators The resonator count
+	 */
+	public HeapPortal(String uuid, long timestamp, String name, Team faction, Geo2D point, int level, int health, int resonators) {
+		this._uuid = uuid;
+		this._timestamp = timestamp;
+		this._name = name;
+		this._faction = faction;
+		this._point = point;
+		this._level = level;
+		this._health = health;
+		this._resonators = resonators;
+	}
+	
+	@Override
+	public String getUUID() {
+		return this._uuid;
+	}
+	
+	@Override
+	public long getTimestamp() {
+		return this._timestamp;
+	}
+	
+	@Override
+	public String getName() {
+		return this._name;
+	}
+	
+	@Override
+	public Team getFaction() {
+		return this._faction;
+	}
+	
+	@Override
+	public Geo2D getPoint() {
+		return this._point;
+	}
+	
+	@Override
+	public int getLevel() {
+		return this._level;
+	}
+	
+	@Override
+	public int getHealth() {
+		return this._health;
+	}
+	
+	@Override
+	public int getResonators() {
+		return this._resonators;
+	}
+}
@@ -0,0 +1,415 @@
+package com.numinit.roadtrip.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import com.numinit.avl.HeapTopKMachine;
+import com.numinit.mtree.utils.DataWrapper;
+
+/**
+ * An immutable token index over portal names, answering prefix queries ranked by distance.
+ * Names are folded (compatibility-decomposed, stripped of accents and lowercased) and split into tokens of letters and digits,
+ * so "Церковь" and "церковь" or "Café" and "cafe" match each other. A query matches a portal when every query token is a prefix of some name token.
+ * <p>
+ * Tokens are kept in a sorted dictionary with posting lists laid out end to end in dictionary order,
+ * so the postings for every token sharing a prefix form one contiguous slice whose length is known without reading it.
+ * Queries read the slice for their rarest token and check the rest against each candidate's token ids.
+ * <p>
+ * Changes don't rebuild all that: update shares it, hides the changed portals' ids, and passes the changes on to a side index,
+ * itself a NameIndex, and queries search the chain. Each index is rebuilt with its side index folded in once its changes pass
+ * a fraction of its size, so the chain stays short and each side index small next to the one before it.
+ * @author Morgan Jones
+ *
+ */
+public class NameIndex {
+	/**
+	 * The fraction of an index's portals that may change before it's rebuilt
+	 */
+	private static final double COMPACT_FRACTION = 0.125;
+	
+	/**
+	 * The portals, by id
+	 */
+	private Portal[] _portals;
+	
+	/**
+	 * Unit vectors of the portals' locations, three per portal, so ranking candidates doesn't chase pointers
+	 */
+	private double[] _vectors;
+	
+	/**
+	 * The distinct tokens, sorted
+	 */
+	private String[] _dictionary;
+	
+	/**
+	 * Portal ids for token t are _postings[_postingStart[t] .. _postingStart[t + 1]]
+	 */
+	private int[] _postingStart, _postings;
+	
+	/**
+	 * Token ids for portal p are _tokens[_tokenStart[p] .. _tokenStart[p + 1]]
+	 */
+	private int[] _tokenStart, _tokens;
+	
+	/**
+	 * Portal ids, by UUID
+	 */
+	private UUIDIndex _ids;
+	
+	/**
+	 * Ids of portals that have since changed, sorted, which queries skip
+	 */
+	private int[] _hidden;
+	
+	/**
+	 * The changed portals, or null if there aren't any
+	 */
+	private NameIndex _changed;
+	
+	/**
+	 * Initializes this NameIndex
+	 * @param portals The portals to index
+	 */
+	public NameIndex(List<Portal> portals) {
+		this._portals = portals.toArray(new Portal[portals.size()]);
+		this._vectors = new double[3 * this._portals.length];
+		this._ids = new UUIDIndex(1, this._portals.length);
+		for (int p = 0; p < this._portals.length; p++) {
+			toVector(this._portals[p].getPoint(), this._vectors, 3 * p);
+			this._ids.put(this._portals[p], 0, p);
+		}
+		this._hidden = new int[0];
+		this._changed = null;
+		
+		// Tokenize every name, assigning provisional ids in order of first appearance
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<String> tokens = new ArrayList<String>();
+		this._tokenStart = new int[this._portals.length + 1];
+		int[] portalTokens = new int[Math.max(this._portals.length, 16)];
+		int count = 0;
+		for (int p = 0; p < this._portals.length; p++) {
+			for (String token : tokenize(this._portals[p].getName())) {
+				Integer id = ids.get(token);
+				if (id == null) {
+					id = tokens.size();
+					ids.put(token, id);
+					tokens.add(token);
+				}
+				
+				// Names repeat words; keep one posting per portal and token
+				boolean seen = false;
+				for (int i = this._tokenStart[p]; i < count && !seen; i++) {
+					seen = portalTokens[i] == id;
+				}
+				if (seen) {
+					continue;
+				} else if (count == portalTokens.length) {
+					portalTokens = Arrays.copyOf(portalTokens, count * 2);
+				}
+				portalTokens[count++] = id;
+			}
+			this._tokenStart[p + 1] = count;
+		}
+		
+		// Sort the dictionary and renumber tokens to match
+		this._dictionary = tokens.toArray(new String[tokens.size()]);
+		Arrays.sort(this._dictionary);
+		int[] remap = new int[this._dictionary.length];
+		for (int t = 0; t < this._dictionary.length; t++) {
+			remap[ids.get(this._dictionary[t])] = t;
+		}
+		this._tokens = new int[count];
+		for (int i = 0; i < count; i++) {
+			this._tokens[i] = remap[portalTokens[i]];
+		}
+		
+		// Lay out the posting lists by counting
+		this._postingStart = new int[this._dictionary.length + 1];
+		for (int i = 0; i < count; i++) {
+			this._postingStart[this._tokens[i] + 1]++;
+		}
+		for (int t = 0; t < this._dictionary.length; t++) {
+			this._postingStart[t + 1] += this._postingStart[t];
+		}
+		int[] next = Arrays.copyOf(this._postingStart, this._dictionary.length);
+		this._postings = new int[count];
+		for (int p = 0; p < this._portals.length; p++) {
+			for (int i = this._tokenStart[p]; i < this._tokenStart[p + 1]; i++) {
+				this._postings[next[this._tokens[i]]++] = p;
+			}
+		}
+	}
+	
+	/**
+	 * Initializes this NameIndex to share another's tokens, with different changes
+	 * @param base    The NameIndex
+	 * @param hidden  Ids of its portals that have changed, sorted
+	 * @param changed The changed portals, or null
+	 */
+	private NameIndex(NameIndex base, int[] hidden, NameIndex changed) {
+		this._portals = base._portals;
+		this._vectors = base._vectors;
+		this._dictionary = base._dictionary;
+		this._postingStart = base._postingStart;
+		this._postings = base._postings;
+		this._tokenStart = base._tokenStart;
+		this._tokens = base._tokens;
+		this._ids = base._ids;
+		this._hidden = hidden;
+		this._changed = changed;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[portals=%d,tokens=%d,postings=%d,changed=%d]@%#08x>", this.getClass().getSimpleName(),
+				this.size(), this._dictionary.length, this._postings.length, this._changed != null ? this._changed.size() : 0, System.identityHashCode(this));
+	}
+	
+	/**
+	 * Returns the number of indexed portals
+	 * @return The size
+	 */
+	public int size() {
+		return this._portals.length - this._hidden.length + (this._changed != null ? this._changed.size() : 0);
+	}
+	
+	/**
+	 * Returns a NameIndex with some portals removed or replaced, leaving this one as it is.
+	 * The changes go to the side index, which is updated the same way, so this costs about as much as indexing the changed portals.
+	 * Once the portals changed since this index was built pass a fraction of it, this index is rebuilt from its live portals instead.
+	 * @param removed The UUIDs of the portals removed or replaced
+	 * @param added   The portals added or replacing them
+	 * @return The new NameIndex
+	 */
+	public NameIndex update(Collection<String> removed, List<Portal> added) {
+		int[] hidden = Arrays.copyOf(this._hidden, this._hidden.length + removed.size());
+		int count = this._hidden.length;
+		for (String uuid : removed) {
+			long id = this._ids.get(uuid, 0);
+			if (id != UUIDIndex.MISSING && !this.isHidden((int)id)) {
+				hidden[count++] = (int)id;
+			}
+		}
+		hidden = Arrays.copyOf(hidden, count);
+		Arrays.sort(hidden);
+		
+		NameIndex changed;
+		if (this._changed != null) {
+			changed = this._changed.update(removed, added);
+		} else {
+			changed = added.isEmpty() ? null : new NameIndex(added);
+		}
+		NameIndex ret = new NameIndex(this, hidden, changed != null && changed.size() > 0 ? changed : null);
+		if (hidden.length + (ret._changed != null ? ret._changed.size() : 0) > this._portals.length * COMPACT_FRACTION) {
+			ArrayList<Portal> portals = new ArrayList<Portal>(ret.size());
+			ret.collect(portals);
+			ret = new NameIndex(portals);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Adds the portals this index holds, including those on the side, to a list
+	 * @param out The list
+	 */
+	private void collect(List<Portal> out) {
+		for (int p = 0; p < this._portals.length; p++) {
+			if (!this.isHidden(p)) {
+				out.add(this._portals[p]);
+			}
+		}
+		if (this._changed != null) {
+			this._changed.collect(out);
+		}
+	}
+	
+	/**
+	 * Finds the k portals closest to a point whose names match a query
+	 * @param query The query, matched token by token as prefixes
+	 * @param from  The point to rank by
+	 * @param k     The number of portals to return
+	 * @return The matches, closest first
+	 */
+	public ArrayList<DataWrapper<Geo2D, Portal>> search(String query, Geo2D from, int k) {
+		ArrayList<String> tokens = tokenize(query);
+		HeapTopKMachine<DataWrapper<Geo2D, Portal>> topK = new HeapTopKMachine<DataWrapper<Geo2D, Portal>>(k);
+		if (tokens.isEmpty() || k == 0) {
+			return topK.getTopK();
+		}
+		
+		double[] vector = toVector(from, new double[3], 0);
+		for (NameIndex index = this; index != null; index = index._changed) {
+			index.search(tokens, vector, topK);
+		}
+		return topK.getTopK();
+	}
+	
+	/**
+	 * Adds the portals whose names match query tokens to a TopKMachine, skipping hidden ones and those on the side
+	 * @param tokens The query tokens
+	 * @param vector The unit vector of the point to rank by
+	 * @param topK   The TopKMachine
+	 */
+	private void search(ArrayList<String> tokens, double[] vector, HeapTopKMachine<DataWrapper<Geo2D, Portal>> topK) {
+		// Find each query token's dictionary range, and drive from the one with the fewest postings
+		int[] lo = new int[tokens.size()], hi = new int[tokens.size()];
+		int driver = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			lo[i] = this.lowerBound(tokens.get(i));
+			hi[i] = this.prefixEnd(tokens.get(i), lo[i]);
+			if (lo[i] == hi[i]) {
+				return;
+			} else if (this.postingCount(lo[i], hi[i]) < this.postingCount(lo[driver], hi[driver])) {
+				driver = i;
+			}
+		}
+		
+		for (int t = lo[driver]; t < hi[driver]; t++) {
+			for (int i = this._postingStart[t]; i < this._postingStart[t + 1]; i++) {
+				int p = this._postings[i];
+				
+				// A portal appears once per matching token; only take it from the first
+				if (hi[driver] - lo[driver] > 1 && this.firstTokenIn(p, lo[driver], hi[driver]) != t) {
+					continue;
+				}
+				
+				boolean matches = true;
+				for (int j = 0; j < tokens.size() && matches; j++) {
+					matches = j == driver || this.firstTokenIn(p, lo[j], hi[j]) >= 0;
+				}
+				if (matches && !this.isHidden(p)) {
+					// Rank by squared chord length, and only wrap portals that will make the cut
+					double dx = this._vectors[3 * p] - vector[0], dy = this._vectors[3 * p + 1] - vector[1], dz = this._vectors[3 * p + 2] - vector[2];
+					double score = dx * dx + dy * dy + dz * dz;
+					if (score <= topK.getCurrentCutoff()) {
+						Portal portal = this._portals[p];
+						topK.insert(score, new DataWrapper<Geo2D, Portal>(portal.getPoint(), portal));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether a portal has changed since this index was built
+	 * @param p The portal id
+	 * @return True if it has
+	 */
+	private boolean isHidden(int p) {
+		return this._hidden.length > 0 && Arrays.binarySearch(this._hidden, p) >= 0;
+	}
+	
+	/**
+	 * Returns the number of postings for tokens in [lo, hi)
+	 * @param lo The first token id
+	 * @param hi The token id after the last
+	 * @return The count
+	 */
+	private int postingCount(int lo, int hi) {
+		return this._postingStart[hi] - this._postingStart[lo];
+	}
+	
+	/**
+	 * Returns the first of a portal's token ids in [lo, hi)
+	 * @param p  The portal id
+	 * @param lo The first token id
+	 * @param hi The token id after the last
+	 * @return The token id, or -1 if none
+	 */
+	private int firstTokenIn(int p, int lo, int hi) {
+		for (int i = this._tokenStart[p]; i < this._tokenStart[p + 1]; i++) {
+			if (this._tokens[i] >= lo && this._tokens[i] < hi) {
+				return this._tokens[i];
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the first dictionary index whose token is not less than token
+	 * @param token The token
+	 * @return The index
+	 */
+	private int lowerBound(String token) {
+		int lo = 0, hi = this._dictionary.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this._dictionary[mid].compareTo(token) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	/**
+	 * Returns the first dictionary index from start whose token doesn't begin with prefix.
+	 * Tokens sharing a prefix are contiguous in sorted order, so this is a binary search.
+	 * @param prefix The prefix
+	 * @param start  The first index that might begin with prefix
+	 * @return The index
+	 */
+	private int prefixEnd(String prefix, int start) {
+		int lo = start, hi = this._dictionary.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this._dictionary[mid].startsWith(prefix)) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	/**
+	 * Writes the unit vector pointing at a point from the center of the earth
+	 * @param point  The point
+	 * @param out    The output array
+	 * @param offset The offset to write at
+	 * @return The output array
+	 */
+	private static double[] toVector(Geo2D point, double[] out, int offset) {
+		double lat = Geo2D.toRadians(point.getLat()), lng = Geo2D.toRadians(point.getLng()), cosLat = Math.cos(lat);
+		out[offset] = cosLat * Math.cos(lng);
+		out[offset + 1] = cosLat * Math.sin(lng);
+		out[offset + 2] = Math.sin(lat);
+		return out;
+	}
+	
+	/**
+	 * Folds a string for matching and splits it into tokens of letters and digits
+	 * @param str The string
+	 * @return The tokens
+	 */
+	public static ArrayList<String> tokenize(String str) {
+		// Decompose so accents become separate combining marks, then drop the marks
+		String folded = Normalizer.normalize(str, Normalizer.Form.NFKD).toLowerCase(Locale.ROOT);
+		ArrayList<String> ret = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i < folded.length(); ) {
+			int codePoint = folded.codePointAt(i);
+			i += Character.charCount(codePoint);
+			int type = Character.getType(codePoint);
+			if (type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK) {
+				continue;
+			} else if (Character.isLetterOrDigit(codePoint)) {
+				token.appendCodePoint(codePoint);
+			} else if (token.length() > 0) {
+				ret.add(token.toString());
+				token.setLength(0);
+			}
+		}
+		if (token.length() > 0) {
+			ret.add(token.toString());
+		}
+		return ret;
+	}
+}
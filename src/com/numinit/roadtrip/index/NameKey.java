@@ -0,0 +1,124 @@
+package com.numinit.roadtrip.index;
+
+import com.numinit.mtree.point.IPointInMetricSpace;
+
+/**
+ * A portal name as a point in a metric space, where the distance between names is their Levenshtein distance.
+ * Names are folded the way NameIndex folds them, so case and accents don't count as edits.
+ * <p>
+ * Bounded distances are computed only within a diagonal band as wide as the bound, and stop as soon as
+ * a whole row exceeds it, so pruning against a small threshold costs O(bound * length) rather than O(length^2).
+ * @author Morgan Jones
+ *
+ */
+public class NameKey implements IPointInMetricSpace<NameKey> {
+	/**
+	 * Slack for bounds that are integers in all but floating point error
+	 */
+	private static final double BOUND_TOLERANCE = 1.0e-9;
+	
+	/**
+	 * Two reusable dynamic programming rows per thread
+	 */
+	private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][0]);
+	
+	/**
+	 * The name
+	 */
+	private final String _name;
+	
+	/**
+	 * The folded name's code points
+	 */
+	private final int[] _codePoints;
+	
+	/**
+	 * Initializes this NameKey
+	 * @param name The name
+	 */
+	public NameKey(String name) {
+		this._name = name;
+		this._codePoints = String.join(" ", NameIndex.tokenize(name)).codePoints().toArray();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s@%#08x:%s>", this.getClass().getSimpleName(), System.identityHashCode(this), this.getName());
+	}
+	
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return this._name;
+	}
+	
+	@Override
+	public double getDistance(NameKey other) {
+		return this.levenshtein(other, Math.max(this._codePoints.length, other._codePoints.length));
+	}
+	
+	@Override
+	public double getDistance(NameKey other, double bound) {
+		if (bound < 0) {
+			return 0;
+		} else if (bound >= Math.max(this._codePoints.length, other._codePoints.length)) {
+			return this.getDistance(other);
+		}
+		return this.levenshtein(other, (int)Math.floor(bound + BOUND_TOLERANCE));
+	}
+	
+	@Override
+	public void getDistances(NameKey[] others, int n, double[] out, double bound) {
+		for (int i = 0; i < n; i++) {
+			out[i] = this.getDistance(others[i], bound);
+		}
+	}
+	
+	/**
+	 * Computes the Levenshtein distance to another name, giving up once it must exceed limit
+	 * @param other The other name
+	 * @param limit The limit
+	 * @return The distance, or limit + 1 if it exceeds limit
+	 */
+	private int levenshtein(NameKey other, int limit) {
+		int[] a = this._codePoints, b = other._codePoints;
+		int n = a.length, m = b.length, over = limit + 1;
+		if (Math.abs(n - m) > limit) {
+			return over;
+		}
+		
+		// Cells outside the band hold over, which is as good as infinity here
+		int[][] rows = ROWS.get();
+		if (rows[0].length < m + 2) {
+			rows[0] = new int[m + 2];
+			rows[1] = new int[m + 2];
+		}
+		int[] prev = rows[0], cur = rows[1];
+		for (int j = 0; j <= m; j++) {
+			prev[j] = j <= limit ? j : over;
+		}
+		prev[m + 1] = over;
+		
+		for (int i = 1; i <= n; i++) {
+			int lo = Math.max(1, i - limit), hi = Math.min(m, i + limit), rowMin = over;
+			cur[lo - 1] = lo == 1 && i <= limit ? i : over;
+			rowMin = Math.min(rowMin, cur[lo - 1]);
+			for (int j = lo; j <= hi; j++) {
+				int value = Math.min(prev[j - 1] + (a[i - 1] == b[j - 1] ? 0 : 1), Math.min(prev[j], cur[j - 1]) + 1);
+				cur[j] = Math.min(value, over);
+				rowMin = Math.min(rowMin, cur[j]);
+			}
+			cur[hi + 1] = over;
+			
+			// Every path to the end passes through this row
+			if (rowMin > limit) {
+				return over;
+			}
+			int[] swap = prev;
+			prev = cur;
+			cur = swap;
+		}
+		return Math.min(prev[m], over);
+	}
+}
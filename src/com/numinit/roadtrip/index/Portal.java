@@ -3,60 +3,12 @@ package com.numinit.roadtrip.index;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
-public class Portal {
-	/**
-	 * The portal's UUID
-	 */
-	private String _uuid;
-	
-	/**
-	 * The timestamp
-	 */
-	private long _timestamp;
-	
-	/**
-	 * The name
-	 */
-	private String _name;
-	
-	/**
-	 * The team
-	 */
-	private Team _faction;
-	
-	/**
-	 * The point
-	 */
-	private Geo2D _point;
-	
-	/**
-	 * Portal metrics
-	 */
-	private int _level, _health, _resonators;
-	
-
-	/**
-	 * Initializes this portal
-	 * @param uuid The UUID
-	 * @param timestamp The timestamp
-	 * @param name The name
-	 * @param faction The faction
-	 * @param point The location
-	 * @param level The level
-	 * @param health The health
-	 * @param resonators The resonator count
-	 */
-	public Portal(String uuid, long timestamp, String name, Team faction, Geo2D point, int level, int health, int resonators) {
-		this._uuid = uuid;
-		this._timestamp = timestamp;
-		this._name = name;
-		this._faction = faction;
-		this._point = point;
-		this._level = level;
-		this._health = health;
-		this._resonators = resonators;
-	}
-	
+/**
+ * A portal. Portals read from JSON keep their fields on the heap, as HeapPortals; a PortalStore's portals read theirs out of its columns.
+ * @author Morgan Jones
+ *
+ */
+public abstract class Portal {
 	@Override
 	public String toString() {
 		if (this.getLevel() > 0) {
@@ -81,58 +33,70 @@ public class Portal {
 	/**
 	 * @return the uuid
 	 */
-	public String getUUID() {
-		return this._uuid;
+	public abstract String getUUID();
+	
+	/**
+	 * @return whether the uuid starts with 32 lowercase hex digits, which getUUIDHi and getUUIDLo hold
+	 */
+	public boolean hasHexUUID() {
+		return UUIDIndex.isHex(this.getUUID());
+	}
+	
+	/**
+	 * @return the first 16 hex digits of the uuid
+	 */
+	public long getUUIDHi() {
+		return UUIDIndex.parseHi(this.getUUID());
+	}
+	
+	/**
+	 * @return the second 16 hex digits of the uuid
+	 */
+	public long getUUIDLo() {
+		return UUIDIndex.parseLo(this.getUUID());
 	}
 
 	/**
 	 * @return the timestamp
 	 */
-	public long getTimestamp() {
-		return this._timestamp;
-	}
+	public abstract long getTimestamp();
 
 	/**
 	 * @return the name
 	 */
-	public String getName() {
-		return this._name;
-	}
+	public abstract String getName();
 	
 	/**
 	 * @return the faction
 	 */
-	public Team getFaction() {
-		return this._faction;
-	}
+	public abstract Team getFaction();
 
 	/**
 	 * @return the point
 	 */
-	public Geo2D getPoint() {
-		return this._point;
+	public abstract Geo2D getPoint();
+	
+	/**
+	 * @return the point, on the E6 grid, as the spatial index keys it
+	 */
+	public GeoE6 getPointE6() {
+		return GeoE6.fromGeo2D(this.getPoint());
 	}
 
 	/**
 	 * @return the level
 	 */
-	public int getLevel() {
-		return this._level;
-	}
+	public abstract int getLevel();
 
 	/**
 	 * @return the health
 	 */
-	public int getHealth() {
-		return this._health;
-	}
+	public abstract int getHealth();
 
 	/**
 	 * @return the resonators
 	 */
-	public int getResonators() {
-		return this._resonators;
-	}
+	public abstract int getResonators();
 	
 	/**
 	 * Creates a portal from JSON
@@ -155,6 +119,6 @@ public class Portal {
 		Team team = Team.getTeamFor((String)fields.get("team"));
 		long latE6 = (Long)fields.get("latE6"), lngE6 = (Long)fields.get("lngE6");
 		long level = (Long)fields.get("level"), health = (Long)fields.get("health"), resCount = (Long)fields.get("resCount");
-		return new Portal(uuid, timestamp, name, team, Geo2D.fromE6(latE6, lngE6), (int)level, (int)health, (int)resCount);
+		return new HeapPortal(uuid, timestamp, name, team, Geo2D.fromE6(latE6, lngE6), (int)level, (int)health, (int)resCount);
 	}
 }
@@ -0,0 +1,40 @@
+package com.numinit.roadtrip.index;
+
+/**
+ * A Portal field that can be indexed and queried as a long
+ * @author Morgan Jones
+ *
+ */
+public enum PortalAttribute {
+	TEAM {
+		@Override
+		public long get(Portal portal) {
+			return portal.getFaction().integer();
+		}
+	},
+	LEVEL {
+		@Override
+		public long get(Portal portal) {
+			return portal.getLevel();
+		}
+	},
+	HEALTH {
+		@Override
+		public long get(Portal portal) {
+			return portal.getHealth();
+		}
+	},
+	TIMESTAMP {
+		@Override
+		public long get(Portal portal) {
+			return portal.getTimestamp();
+		}
+	};
+	
+	/**
+	 * Returns this attribute's value for a portal
+	 * @param portal The portal
+	 * @return The value
+	 */
+	public abstract long get(Portal portal);
+}
@@ -0,0 +1,167 @@
+package com.numinit.roadtrip.index;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.numinit.interactive.CommandLine;
+import com.numinit.json.JSONTokenizer;
+import com.numinit.json.JSONTokenizer.Token;
+
+/**
+ * Converts a location file from one object keyed by UUID to NDJSON, one [uuid, timestamp, {fields}] per line,
+ * so PortalReader can load it on every core. Entities are copied token for token, so nothing in them is lost.
+ *
+ * Given an output file ending in .pstore, it writes a PortalStore instead, which keeps only what a Portal has.
+ * @author Morgan Jones
+ *
+ */
+public class PortalConverter {
+	public static void main(String[] args) {
+		CommandLine cmdline = new CommandLine("PortalConverter", args)
+		.add(new CommandLine.Option<String>(String.class, "in", "i", null, "The location file to convert", "file"))
+		.add(new CommandLine.Option<String>(String.class, "out", "o", null, "The NDJSON location file or portal store (.pstore) to write", "file")).parse();
+		
+		String in = cmdline.get(String.class, "in"), out = cmdline.get(String.class, "out");
+		if (in == null || out == null) {
+			System.err.println("Need an input and an output file");
+			System.exit(1);
+		}
+		
+		if (PortalStore.isStore(out)) {
+			try {
+				PortalStore store = PortalStore.open(in);
+				store.write(out);
+				System.out.format("=== %d portals, %d bytes\n", store.size(), store.getSizeInBytes());
+			} catch (IOException e) {
+				System.err.println(e);
+				System.exit(1);
+			}
+			return;
+		}
+		
+		try (Reader reader = new InputStreamReader(new FileInputStream(in), StandardCharsets.UTF_8);
+		     Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8))) {
+			long count = convert(reader, writer);
+			System.out.format("=== %d portals\n", count);
+		} catch (IOException e) {
+			System.err.println(e);
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Converts a location file to NDJSON
+	 * @param in  The location file
+	 * @param out Where to write NDJSON
+	 * @return The number of entities
+	 * @throws IOException if either fails, or the input isn't a location file
+	 */
+	public static long convert(Reader in, Writer out) throws IOException {
+		JSONTokenizer json = new JSONTokenizer(in);
+		json.expect(Token.BEGIN_OBJECT);
+		long ret = 0;
+		while (json.next() == Token.NAME) {
+			json.expect(Token.BEGIN_ARRAY);
+			copy(json, out);
+			out.write('\n');
+			ret++;
+		}
+		json.expect(Token.END);
+		return ret;
+	}
+	
+	/**
+	 * Copies the value whose first token was just read
+	 * @param json The tokenizer
+	 * @param out  Where to write it
+	 * @throws IOException if either fails
+	 */
+	private static void copy(JSONTokenizer json, Writer out) throws IOException {
+		switch (json.getToken()) {
+		case BEGIN_OBJECT:
+			out.write('{');
+			for (boolean first = true; json.next() == Token.NAME; first = false) {
+				if (!first) {
+					out.write(',');
+				}
+				writeString(json.getString(), out);
+				out.write(':');
+				json.next();
+				copy(json, out);
+			}
+			out.write('}');
+			break;
+		case BEGIN_ARRAY:
+			out.write('[');
+			for (boolean first = true; json.next() != Token.END_ARRAY; first = false) {
+				if (!first) {
+					out.write(',');
+				}
+				copy(json, out);
+			}
+			out.write(']');
+			break;
+		case STRING:
+			writeString(json.getString(), out);
+			break;
+		case NUMBER:
+			out.write(json.getNumberText());
+			break;
+		case TRUE:
+			out.write("true");
+			break;
+		case FALSE:
+			out.write("false");
+			break;
+		case NULL:
+			out.write("null");
+			break;
+		default:
+			throw json.error(String.format("unexpected %s", json.getToken()));
+		}
+	}
+	
+	/**
+	 * Writes a JSON string, escaping what has to be, so it stays on one line
+	 * @param s   The string
+	 * @param out Where to write it
+	 * @throws IOException if writing fails
+	 */
+	private static void writeString(String s, Writer out) throws IOException {
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", (int)c));
+				} else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+}
@@ -0,0 +1,203 @@
+package com.numinit.roadtrip.index;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import com.numinit.json.JSONTokenizer;
+import com.numinit.json.JSONTokenizer.Token;
+
+/**
+ * A batch of changes to apply to a PortalIndex while it's being queried. Delta files are NDJSON, like location files:
+ * each line is a portal's [uuid, timestamp, {fields}] to add or replace it, or [uuid, timestamp, null] to remove it.
+ * Only the newest change to each UUID is kept, and PortalIndex skips changes older than the portal it has.
+ * @author Morgan Jones
+ *
+ */
+public class PortalDelta {
+	/**
+	 * What delta files end in
+	 */
+	public static final String EXTENSION = ".delta";
+	
+	/**
+	 * Each change's UUID and timestamp
+	 */
+	private ArrayList<String> _uuids;
+	private ArrayList<Long> _timestamps;
+	
+	/**
+	 * Each change's portal, or null to remove it
+	 */
+	private ArrayList<Portal> _portals;
+	
+	/**
+	 * Which change is each UUID's
+	 */
+	private UUIDIndex _changes;
+	
+	/**
+	 * The outcome of applying this delta
+	 */
+	private int _applied, _skipped;
+	private long _lockNanos;
+	
+	/**
+	 * Initializes an empty PortalDelta
+	 */
+	public PortalDelta() {
+		this._uuids = new ArrayList<String>();
+		this._timestamps = new ArrayList<Long>();
+		this._portals = new ArrayList<Portal>();
+		this._changes = new UUIDIndex(1, 16);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[size=%d,applied=%d,skipped=%d]@%#08x>", this.getClass().getSimpleName(), this.size(), this._applied, this._skipped, System.identityHashCode(this));
+	}
+	
+	/**
+	 * Reads a delta file
+	 * @param file The file
+	 * @return The delta
+	 * @throws IOException if the file couldn't be read, or a line isn't a change
+	 */
+	public static PortalDelta read(String file) throws IOException {
+		try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			return read(in);
+		}
+	}
+	
+	/**
+	 * Reads a delta
+	 * @param in The reader, which is read to the end but not closed
+	 * @return The delta
+	 * @throws IOException if the reader fails, or a line isn't a change
+	 */
+	public static PortalDelta read(Reader in) throws IOException {
+		PortalDelta ret = new PortalDelta();
+		JSONTokenizer json = new JSONTokenizer(in).setSequence(true);
+		Token token;
+		while ((token = json.next()) != Token.END) {
+			if (token != Token.BEGIN_ARRAY) {
+				throw json.error(String.format("expected %s, got %s", Token.BEGIN_ARRAY, token));
+			}
+			json.expect(Token.STRING);
+			String uuid = json.getString();
+			json.expect(Token.NUMBER);
+			if (!json.isIntegral()) {
+				throw json.error("timestamp is not an integer");
+			}
+			long timestamp = json.getLong();
+			
+			Portal portal = null;
+			token = json.next();
+			if (token == Token.BEGIN_OBJECT) {
+				portal = PortalReader.readPortal(json, uuid, timestamp);
+			} else if (token == Token.NULL) {
+				json.expect(Token.END_ARRAY);
+			} else {
+				throw json.error(String.format("expected %s or %s, got %s", Token.BEGIN_OBJECT, Token.NULL, token));
+			}
+			ret.add(uuid, timestamp, portal);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Adds a change. Only the newest change to each portal is kept; of two at once, the later one.
+	 * @param uuid      The portal's UUID
+	 * @param timestamp When it changed
+	 * @param portal    The portal, or null to remove it
+	 * @return This PortalDelta
+	 */
+	public PortalDelta add(String uuid, long timestamp, Portal portal) {
+		long previous = this._changes.get(uuid, 0);
+		if (previous == UUIDIndex.MISSING) {
+			this._changes.put(uuid, 0, this.size());
+			this._uuids.add(uuid);
+			this._timestamps.add(timestamp);
+			this._portals.add(portal);
+		} else if (this.getTimestamp((int)previous) <= timestamp) {
+			this._timestamps.set((int)previous, timestamp);
+			this._portals.set((int)previous, portal);
+		}
+		return this;
+	}
+	
+	/**
+	 * @return the number of changes
+	 */
+	public int size() {
+		return this._uuids.size();
+	}
+	
+	/**
+	 * @param idx The change
+	 * @return the UUID it changes
+	 */
+	public String getUUID(int idx) {
+		return this._uuids.get(idx);
+	}
+	
+	/**
+	 * @param idx The change
+	 * @return when it changed
+	 */
+	public long getTimestamp(int idx) {
+		return this._timestamps.get(idx);
+	}
+	
+	/**
+	 * @param idx The change
+	 * @return the new portal, or null if it's removed
+	 */
+	public Portal getPortal(int idx) {
+		return this._portals.get(idx);
+	}
+	
+	/**
+	 * @param idx The change
+	 * @return whether it removes the portal
+	 */
+	public boolean isRemove(int idx) {
+		return this._portals.get(idx) == null;
+	}
+	
+	/**
+	 * Records the outcome of applying this delta
+	 * @param applied   The number of changes applied
+	 * @param skipped   The number skipped as stale, or removing portals we don't have
+	 * @param lockNanos How long queries were held off, in nanoseconds
+	 */
+	void recordApplied(int applied, int skipped, long lockNanos) {
+		this._applied = applied;
+		this._skipped = skipped;
+		this._lockNanos = lockNanos;
+	}
+	
+	/**
+	 * @return the number of changes applied
+	 */
+	public int getApplied() {
+		return this._applied;
+	}
+	
+	/**
+	 * @return the number of changes skipped as older than the portals we had, or removing portals we didn't have
+	 */
+	public int getSkipped() {
+		return this._skipped;
+	}
+	
+	/**
+	 * @return how long queries were held off while this delta was applied, in nanoseconds
+	 */
+	public long getLockNanos() {
+		return this._lockNanos;
+	}
+}
@@ -0,0 +1,477 @@
+package com.numinit.roadtrip.index;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.numinit.mtree.IMTree;
+import com.numinit.mtree.MTree;
+import com.numinit.mtree.node.IMTreeTraversalCallback;
+import com.numinit.mtree.node.MTreeINode;
+import com.numinit.mtree.node.MTreeLNode;
+import com.numinit.mtree.utils.DataWrapper;
+
+/**
+ * Portals indexed spatially and by each PortalAttribute, with a planner for PortalQuery.
+ * Attribute selectivity is counted exactly from the attribute indexes. Spatial selectivity is estimated
+ * from a uniform sample of portal locations, since a spatial index can't count a ball without searching it.
+ *
+ * The spatial index is keyed on the E6 grid. Points off the grid, like fixes, are rounded onto it to search, and
+ * range searches are widened by the rounding error and then checked exactly.
+ *
+ * Portals are also indexed by name, and by UUID, which maps to where each portal sits in the trees so deltas can update
+ * it in place. Queries hold the read lock; apply holds the write lock only while it changes the trees, so a query sees
+ * every change in a delta or none of them.
+ * @author Morgan Jones
+ *
+ */
+public class PortalIndex {
+	/**
+	 * The number of locations to sample for spatial estimates
+	 */
+	public static final int SAMPLE_SIZE = 1024;
+	
+	/**
+	 * Searching the spatial index touches more than the portals it returns; this is roughly how much more
+	 */
+	public static final double SPATIAL_COST_FACTOR = 4.0d;
+	
+	/**
+	 * What _uuids holds for each portal: its positions in the spatial and name trees, and its sequence number
+	 */
+	private static final int SPATIAL = 0, FUZZY = 1, SEQ = 2;
+	
+	/**
+	 * The spatial index
+	 */
+	private MTree<GeoE6, Portal> _spatial;
+	
+	/**
+	 * Names by edit distance, for typo-tolerant lookups
+	 */
+	private MTree<NameKey, Portal> _fuzzy;
+	
+	/**
+	 * Names by word, or null until buildNameIndex
+	 */
+	private NameIndex _names;
+	
+	/**
+	 * Where each portal is, by UUID
+	 */
+	private UUIDIndex _uuids;
+	
+	/**
+	 * When each portal deltas removed was removed, so older changes can't bring it back
+	 */
+	private UUIDIndex _removed;
+	
+	/**
+	 * Attribute indexes
+	 */
+	private EnumMap<PortalAttribute, AttributeIndex> _attributes;
+	
+	/**
+	 * A reservoir sample of portal locations
+	 */
+	private GeoE6[] _sample;
+	
+	/**
+	 * The random source for the sample
+	 */
+	private Random _random;
+	
+	/**
+	 * The number of portals
+	 */
+	private int _count;
+	
+	/**
+	 * The newest timestamp inserted, and the newest before buildNameIndex: what we loaded is complete up to then,
+	 * so older changes to portals we don't have are skipped, as if each had been removed then
+	 */
+	private long _newest, _baseline;
+	
+	/**
+	 * The number of portals ever inserted, which numbers them for the attribute indexes and the sample
+	 */
+	private long _seq;
+	
+	/**
+	 * Held to query, and to change the indexes
+	 */
+	private final ReentrantReadWriteLock _lock;
+	
+	/**
+	 * The number of deltas applied
+	 */
+	private volatile long _version;
+	
+	/**
+	 * Initializes this PortalIndex
+	 * @param spatial  An empty spatial index to fill
+	 * @param fuzzy    An empty name index to fill
+	 * @param expected How many portals to make room for
+	 */
+	public PortalIndex(MTree<GeoE6, Portal> spatial, MTree<NameKey, Portal> fuzzy, int expected) {
+		this._uuids = new UUIDIndex(3, expected);
+		this._removed = new UUIDIndex(1, 16);
+		this._spatial = spatial.setLeafObserver((portal, position) -> this._uuids.put(portal, SPATIAL, position));
+		this._fuzzy = fuzzy.setLeafObserver((portal, position) -> this._uuids.put(portal, FUZZY, position));
+		this._attributes = new EnumMap<PortalAttribute, AttributeIndex>(PortalAttribute.class);
+		for (PortalAttribute attribute : PortalAttribute.values()) {
+			this._attributes.put(attribute, new AttributeIndex(attribute));
+		}
+		this._sample = new GeoE6[SAMPLE_SIZE];
+		this._random = new Random(0);
+		this._count = 0;
+		this._seq = 0;
+		this._newest = this._baseline = Long.MIN_VALUE;
+		this._lock = new ReentrantReadWriteLock();
+		this._version = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[count=%d,attributes=%s]@%#08x>", this.getClass().getSimpleName(), this.size(), this._attributes.keySet(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Inserts a portal into every index but the name index, replacing any portal with its UUID.
+	 * Call buildNameIndex once everything is loaded. Only safe while nothing is querying; use apply after that.
+	 * @param portal The portal
+	 */
+	public void insert(Portal portal) {
+		this._newest = Math.max(this._newest, portal.getTimestamp());
+		long position = this._uuids.get(portal, SPATIAL);
+		if (position != UUIDIndex.MISSING) {
+			this.replace(position, portal);
+			return;
+		}
+		
+		long seq = this._seq++;
+		this._uuids.put(portal, SEQ, seq);
+		this._spatial.insert(portal.getPointE6(), portal);
+		this._fuzzy.insert(new NameKey(portal.getName()), portal);
+		for (AttributeIndex index : this._attributes.values()) {
+			index.insert(portal, seq);
+		}
+		
+		// Reservoir sampling keeps every portal inserted equally likely to be in the sample.
+		// Removed portals can linger in it, which only skews estimates as far as deltas have changed things.
+		if (seq < SAMPLE_SIZE) {
+			this._sample[(int)seq] = portal.getPointE6();
+		} else {
+			int slot = this._random.nextInt((int)seq + 1);
+			if (slot < SAMPLE_SIZE) {
+				this._sample[slot] = portal.getPointE6();
+			}
+		}
+		this._count++;
+	}
+	
+	/**
+	 * Replaces a portal we have. Trees whose key for it hasn't changed are updated in place, which costs no distance computations;
+	 * that's most updates, and name tree inserts are the most expensive.
+	 * @param position Where the portal we have is in the spatial tree
+	 * @param portal   The new portal
+	 */
+	private void replace(long position, Portal portal) {
+		long seq = this._uuids.get(portal, SEQ);
+		Portal current = this._spatial.get(position).getData();
+		for (AttributeIndex index : this._attributes.values()) {
+			index.remove(current, seq);
+			index.insert(portal, seq);
+		}
+		
+		GeoE6 key = portal.getPointE6();
+		if (current.getPointE6().equals(key)) {
+			this._spatial.replace(position, portal);
+		} else {
+			this._spatial.remove(position);
+			this._spatial.insert(key, portal);
+		}
+		
+		// Moving things in the spatial tree doesn't move them in the name tree
+		position = this._uuids.get(portal, FUZZY);
+		if (current.getName().equals(portal.getName())) {
+			this._fuzzy.replace(position, portal);
+		} else {
+			this._fuzzy.remove(position);
+			this._fuzzy.insert(new NameKey(portal.getName()), portal);
+		}
+	}
+	
+	/**
+	 * Removes a portal from every index but the name index. Only safe while nothing is querying; use apply after that.
+	 * @param uuid The portal's UUID
+	 * @return The portal, or null if we don't have it
+	 */
+	public Portal remove(String uuid) {
+		long position = this._uuids.get(uuid, SPATIAL);
+		if (position == UUIDIndex.MISSING) {
+			return null;
+		}
+		long seq = this._uuids.get(uuid, SEQ), fuzzy = this._uuids.get(uuid, FUZZY);
+		Portal ret = this._spatial.remove(position).getData();
+		this._fuzzy.remove(fuzzy);
+		for (AttributeIndex index : this._attributes.values()) {
+			index.remove(ret, seq);
+		}
+		this._uuids.remove(uuid);
+		this._count--;
+		return ret;
+	}
+	
+	/**
+	 * Returns a portal
+	 * @param uuid The portal's UUID
+	 * @return The portal, or null if we don't have it
+	 */
+	public Portal get(String uuid) {
+		long position = this._uuids.get(uuid, SPATIAL);
+		return position != UUIDIndex.MISSING ? this._spatial.get(position).getData() : null;
+	}
+	
+	/**
+	 * Returns every portal, in no particular order
+	 * @return The portals
+	 */
+	public ArrayList<Portal> getPortals() {
+		final ArrayList<Portal> ret = new ArrayList<Portal>(this._count);
+		this._spatial.traverse(new IMTreeTraversalCallback<GeoE6, Portal>() {
+			@Override
+			public void operation(MTreeINode<GeoE6, Portal> internal) {
+			}
+			
+			@Override
+			public void operation(MTreeLNode<GeoE6, Portal> leaf) {
+				for (int i = 0; i < leaf.getCurrentSize(); i++) {
+					ret.add(leaf.getMapping(i).getData());
+				}
+			}
+		});
+		return ret;
+	}
+	
+	/**
+	 * Builds the name index from every portal, once everything is loaded. Deltas update it after that.
+	 * @return This PortalIndex
+	 */
+	public PortalIndex buildNameIndex() {
+		this._baseline = this._newest;
+		this._names = new NameIndex(this.getPortals());
+		return this;
+	}
+	
+	/**
+	 * Applies a delta while queries carry on. Changes older than the portal we have, or than its removal, are skipped,
+	 * as are changes to portals we don't have that are older than everything we loaded.
+	 * The name index is updated first, which costs about as much as the changes, or as a rebuild once enough have piled up;
+	 * queries are held off only while the trees change and the updated name index is swapped in. The outcome is recorded on the delta.
+	 * @param delta The delta
+	 * @return The number of changes applied
+	 */
+	public synchronized int apply(PortalDelta delta) {
+		// We're the only writer, so we can read without the lock
+		boolean[] effective = new boolean[delta.size()];
+		ArrayList<String> replaced = new ArrayList<String>();
+		ArrayList<Portal> added = new ArrayList<Portal>();
+		int applied = 0;
+		for (int i = 0; i < delta.size(); i++) {
+			String uuid = delta.getUUID(i);
+			Portal current = this.get(uuid);
+			long removed = Math.max(this._removed.get(uuid, 0), this._baseline);
+			if (current != null ? current.getTimestamp() > delta.getTimestamp(i) : removed > delta.getTimestamp(i)) {
+				continue;
+			} else if (current == null && delta.isRemove(i)) {
+				// Nothing to remove, but remember when it was
+				this._removed.put(uuid, 0, delta.getTimestamp(i));
+				continue;
+			}
+			effective[i] = true;
+			if (current != null) {
+				replaced.add(uuid);
+			}
+			if (!delta.isRemove(i)) {
+				added.add(delta.getPortal(i));
+			}
+			applied++;
+		}
+		if (applied == 0) {
+			delta.recordApplied(0, delta.size(), 0);
+			return 0;
+		}
+		NameIndex names = this._names != null ? this._names.update(replaced, added) : null;
+		
+		long start = System.nanoTime();
+		this._lock.writeLock().lock();
+		try {
+			for (int i = 0; i < delta.size(); i++) {
+				if (!effective[i]) {
+					continue;
+				} else if (delta.isRemove(i)) {
+					this.remove(delta.getUUID(i));
+					this._removed.put(delta.getUUID(i), 0, delta.getTimestamp(i));
+				} else {
+					this.insert(delta.getPortal(i));
+					this._removed.remove(delta.getUUID(i));
+				}
+			}
+			this._names = names;
+			this._version++;
+		} finally {
+			this._lock.writeLock().unlock();
+		}
+		delta.recordApplied(applied, delta.size() - applied, System.nanoTime() - start);
+		return applied;
+	}
+	
+	/**
+	 * Returns the lock to hold while querying, so a delta isn't applied partway through
+	 * @return The read lock
+	 */
+	public Lock getReadLock() {
+		return this._lock.readLock();
+	}
+	
+	/**
+	 * Returns the number of deltas applied, which changes whenever query results might
+	 * @return The version
+	 */
+	public long getVersion() {
+		return this._version;
+	}
+	
+	/**
+	 * Returns the number of portals
+	 * @return The count
+	 */
+	public int size() {
+		return this._count;
+	}
+	
+	/**
+	 * Returns the spatial index
+	 * @return The spatial index
+	 */
+	public IMTree<GeoE6, Portal> getSpatialIndex() {
+		return this._spatial;
+	}
+	
+	/**
+	 * Returns the name index
+	 * @return The name index
+	 */
+	public NameIndex getNameIndex() {
+		return this._names;
+	}
+	
+	/**
+	 * Returns the edit distance index over names
+	 * @return The name tree
+	 */
+	public IMTree<NameKey, Portal> getNameTree() {
+		return this._fuzzy;
+	}
+	
+	/**
+	 * Finds every portal within a chord distance of a point, which needn't be on the grid
+	 * @param center        The point
+	 * @param chordDistance The chord distance
+	 * @return The portals
+	 */
+	public ArrayList<DataWrapper<GeoE6, Portal>> find(Geo2D center, double chordDistance) {
+		GeoE6 key = GeoE6.fromGeo2D(center);
+		ArrayList<DataWrapper<GeoE6, Portal>> ret = this._spatial.find(key, chordDistance + GeoE6.QUANTIZATION_ERROR);
+		ret.removeIf((wrapper) -> !wrapper.getKey().isWithin(center, key, chordDistance));
+		return ret;
+	}
+	
+	/**
+	 * Finds the k portals closest to a point, which needn't be on the grid. Closeness is measured from the nearest grid point,
+	 * so portals whose distances differ by less than twice GeoE6.QUANTIZATION_ERROR may be ranked either way.
+	 * @param center The point
+	 * @param k      The number of portals
+	 * @return The portals, closest first
+	 */
+	public ArrayList<DataWrapper<GeoE6, Portal>> findKClosest(Geo2D center, int k) {
+		return this._spatial.findKClosest(GeoE6.fromGeo2D(center), k);
+	}
+	
+	/**
+	 * Returns the index for an attribute
+	 * @param attribute The attribute
+	 * @return The index
+	 */
+	public AttributeIndex getAttributeIndex(PortalAttribute attribute) {
+		return this._attributes.get(attribute);
+	}
+	
+	/**
+	 * Estimates how many portals lie within a chord distance of a point
+	 * @param center        The point
+	 * @param chordDistance The chord distance
+	 * @return The estimate
+	 */
+	public double estimateSpatial(Geo2D center, double chordDistance) {
+		int n = (int)Math.min(this._seq, SAMPLE_SIZE), hits = 0;
+		if (n == 0) {
+			return 0;
+		}
+		GeoE6 key = GeoE6.fromGeo2D(center);
+		for (int i = 0; i < n; i++) {
+			if (this._sample[i].getDistance(key) <= chordDistance) {
+				hits++;
+			}
+		}
+		return (double)this._count * hits / n;
+	}
+	
+	/**
+	 * Plans a query, choosing the access path expected to produce the fewest candidates
+	 * @param query The query
+	 * @return The plan
+	 */
+	public PortalQueryPlan plan(PortalQuery query) {
+		EnumMap<PortalAttribute, Integer> estimates = new EnumMap<PortalAttribute, Integer>(PortalAttribute.class);
+		PortalAttribute driver = null;
+		double cost = Double.POSITIVE_INFINITY, spatialEstimate = this._count;
+		
+		// Spatial-first costs extra per candidate for the tree search
+		if (query.hasCenter()) {
+			spatialEstimate = this.estimateSpatial(query.getCenter(), query.getChordDistance());
+			cost = SPATIAL_COST_FACTOR * (spatialEstimate + 1);
+		}
+		
+		// Attribute-first costs one visit per portal in the range
+		for (Map.Entry<PortalAttribute, long[]> entry : query.getRanges().entrySet()) {
+			int count = this.getAttributeIndex(entry.getKey()).count(entry.getValue()[0], entry.getValue()[1]);
+			estimates.put(entry.getKey(), count);
+			if (count < cost) {
+				cost = count;
+				driver = entry.getKey();
+			}
+		}
+		
+		// With no predicates at all, scan any attribute index
+		if (driver == null && !query.hasCenter()) {
+			driver = PortalAttribute.TEAM;
+			cost = this._count;
+		}
+		return new PortalQueryPlan(this, query, driver, spatialEstimate, estimates, cost);
+	}
+	
+	/**
+	 * Plans and runs a query
+	 * @param query The query
+	 * @return The matching portals
+	 */
+	public ArrayList<DataWrapper<GeoE6, Portal>> query(PortalQuery query) {
+		return this.plan(query).execute();
+	}
+}
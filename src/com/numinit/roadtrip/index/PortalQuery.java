@@ -0,0 +1,177 @@
+package com.numinit.roadtrip.index;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A query over portals: an optional ball around a point, and inclusive ranges over PortalAttributes.
+ * A portal matches when it satisfies every predicate.
+ * @author Morgan Jones
+ *
+ */
+public class PortalQuery {
+	/**
+	 * The center of the ball, or null if there is no spatial predicate
+	 */
+	private Geo2D _center;
+	
+	/**
+	 * The center, rounded onto the grid the spatial index is keyed on
+	 */
+	private GeoE6 _centerKey;
+	
+	/**
+	 * The radius of the ball, as a great-circle distance and as a chord distance
+	 */
+	private double _distance, _chordDistance;
+	
+	/**
+	 * Inclusive [lo, hi] ranges, by attribute
+	 */
+	private EnumMap<PortalAttribute, long[]> _ranges;
+	
+	/**
+	 * Initializes this PortalQuery, matching every portal
+	 */
+	public PortalQuery() {
+		this._center = null;
+		this._ranges = new EnumMap<PortalAttribute, long[]>(PortalAttribute.class);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("#<%s@%#08x:", this.getClass().getSimpleName(), System.identityHashCode(this)));
+		if (this.hasCenter()) {
+			builder.append(String.format(" within %.0fm of %.6f,%.6f", this.getDistance(), this.getCenter().getLat(), this.getCenter().getLng()));
+		}
+		for (Map.Entry<PortalAttribute, long[]> entry : this._ranges.entrySet()) {
+			builder.append(String.format(" %s in [%d, %d]", entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+		}
+		return builder.append(">").toString();
+	}
+	
+	/**
+	 * Restricts this query to portals within distance of center
+	 * @param center   The center
+	 * @param distance The great-circle distance, in meters
+	 * @return This PortalQuery
+	 */
+	public PortalQuery within(Geo2D center, double distance) {
+		this._center = center;
+		this._centerKey = GeoE6.fromGeo2D(center);
+		this._distance = distance;
+		this._chordDistance = Geo2D.toChordDistance(distance);
+		return this;
+	}
+	
+	/**
+	 * Restricts this query to portals whose attribute is in [lo, hi], narrowing any existing range
+	 * @param attribute The attribute
+	 * @param lo        The inclusive lower bound
+	 * @param hi        The inclusive upper bound
+	 * @return This PortalQuery
+	 */
+	public PortalQuery where(PortalAttribute attribute, long lo, long hi) {
+		long[] range = this._ranges.get(attribute);
+		if (range == null) {
+			this._ranges.put(attribute, new long[] {lo, hi});
+		} else {
+			range[0] = Math.max(range[0], lo);
+			range[1] = Math.min(range[1], hi);
+		}
+		return this;
+	}
+	
+	/**
+	 * Restricts this query to portals whose attribute equals value
+	 * @param attribute The attribute
+	 * @param value     The value
+	 * @return This PortalQuery
+	 */
+	public PortalQuery where(PortalAttribute attribute, long value) {
+		return this.where(attribute, value, value);
+	}
+	
+	/**
+	 * Restricts this query to portals of a team
+	 * @param team The team
+	 * @return This PortalQuery
+	 */
+	public PortalQuery where(Team team) {
+		return this.where(PortalAttribute.TEAM, team.integer());
+	}
+	
+	/**
+	 * Returns whether this query has a spatial predicate
+	 * @return True if it does
+	 */
+	public boolean hasCenter() {
+		return this._center != null;
+	}
+	
+	/**
+	 * @return the center
+	 */
+	public Geo2D getCenter() {
+		return this._center;
+	}
+	
+	/**
+	 * @return the great-circle distance
+	 */
+	public double getDistance() {
+		return this._distance;
+	}
+	
+	/**
+	 * @return the chord distance, for use with spatial indexes
+	 */
+	public double getChordDistance() {
+		return this._chordDistance;
+	}
+	
+	/**
+	 * Returns the attribute ranges, by attribute
+	 * @return The ranges
+	 */
+	public Map<PortalAttribute, long[]> getRanges() {
+		return this._ranges;
+	}
+	
+	/**
+	 * Returns whether a portal matches the spatial predicate
+	 * @param portal The portal
+	 * @return True if it matches
+	 */
+	public boolean matchesSpatial(Portal portal) {
+		return !this.hasCenter() || portal.getPointE6().isWithin(this._center, this._centerKey, this._chordDistance);
+	}
+	
+	/**
+	 * Returns whether a portal matches every attribute predicate, skipping one
+	 * @param portal The portal
+	 * @param skip   An attribute already known to match, or null
+	 * @return True if it matches
+	 */
+	public boolean matchesAttributes(Portal portal, PortalAttribute skip) {
+		for (Map.Entry<PortalAttribute, long[]> entry : this._ranges.entrySet()) {
+			if (entry.getKey() != skip) {
+				long value = entry.getKey().get(portal);
+				if (value < entry.getValue()[0] || value > entry.getValue()[1]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns whether a portal matches this query
+	 * @param portal The portal
+	 * @return True if it matches
+	 */
+	public boolean matches(Portal portal) {
+		return this.matchesAttributes(portal, null) && this.matchesSpatial(portal);
+	}
+}
@@ -0,0 +1,129 @@
+package com.numinit.roadtrip.index;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.numinit.mtree.utils.DataWrapper;
+
+/**
+ * A plan for running a PortalQuery against a PortalIndex.
+ * The driving access path produces candidates, which are intersected with the remaining predicates.
+ * @author Morgan Jones
+ *
+ */
+public class PortalQueryPlan {
+	/**
+	 * The index
+	 */
+	private PortalIndex _index;
+	
+	/**
+	 * The query
+	 */
+	private PortalQuery _query;
+	
+	/**
+	 * The driving attribute, or null to drive from the spatial index
+	 */
+	private PortalAttribute _driver;
+	
+	/**
+	 * The estimated number of portals matching the spatial predicate
+	 */
+	private double _spatialEstimate;
+	
+	/**
+	 * The number of portals matching each attribute predicate
+	 */
+	private EnumMap<PortalAttribute, Integer> _estimates;
+	
+	/**
+	 * The estimated cost of the driving access path
+	 */
+	private double _cost;
+	
+	/**
+	 * Initializes this PortalQueryPlan
+	 * @param index           The index
+	 * @param query           The query
+	 * @param driver          The driving attribute, or null for the spatial index
+	 * @param spatialEstimate The spatial estimate
+	 * @param estimates       The attribute estimates
+	 * @param cost            The estimated cost
+	 */
+	public PortalQueryPlan(PortalIndex index, PortalQuery query, PortalAttribute driver, double spatialEstimate, EnumMap<PortalAttribute, Integer> estimates, double cost) {
+		this._index = index;
+		this._query = query;
+		this._driver = driver;
+		this._spatialEstimate = spatialEstimate;
+		this._estimates = estimates;
+		this._cost = cost;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("#<%s[driver=%s,cost=%.0f", this.getClass().getSimpleName(), this.isSpatialFirst() ? "SPATIAL" : this.getDriver(), this.getCost()));
+		if (this._query.hasCenter()) {
+			builder.append(String.format(",SPATIAL~%.0f", this.getSpatialEstimate()));
+		}
+		for (Map.Entry<PortalAttribute, Integer> entry : this._estimates.entrySet()) {
+			builder.append(String.format(",%s=%d", entry.getKey(), entry.getValue()));
+		}
+		return builder.append(String.format("]@%#08x>", System.identityHashCode(this))).toString();
+	}
+	
+	/**
+	 * Returns whether this plan drives from the spatial index
+	 * @return True if spatial-first
+	 */
+	public boolean isSpatialFirst() {
+		return this._driver == null;
+	}
+	
+	/**
+	 * @return the driving attribute, or null if spatial-first
+	 */
+	public PortalAttribute getDriver() {
+		return this._driver;
+	}
+	
+	/**
+	 * @return the estimated number of portals matching the spatial predicate
+	 */
+	public double getSpatialEstimate() {
+		return this._spatialEstimate;
+	}
+	
+	/**
+	 * @return the estimated cost of the driving access path
+	 */
+	public double getCost() {
+		return this._cost;
+	}
+	
+	/**
+	 * Runs this plan
+	 * @return The matching portals
+	 */
+	public ArrayList<DataWrapper<GeoE6, Portal>> execute() {
+		ArrayList<DataWrapper<GeoE6, Portal>> ret = new ArrayList<DataWrapper<GeoE6, Portal>>();
+		if (this.isSpatialFirst()) {
+			for (DataWrapper<GeoE6, Portal> candidate : this._index.find(this._query.getCenter(), this._query.getChordDistance())) {
+				if (this._query.matchesAttributes(candidate.getData(), null)) {
+					ret.add(candidate);
+				}
+			}
+		} else {
+			long[] range = this._query.getRanges().get(this._driver);
+			long lo = range == null ? Long.MIN_VALUE : range[0], hi = range == null ? Long.MAX_VALUE : range[1];
+			for (Portal candidate : this._index.getAttributeIndex(this._driver).range(lo, hi)) {
+				if (this._query.matchesAttributes(candidate, this._driver) && this._query.matchesSpatial(candidate)) {
+					ret.add(new DataWrapper<GeoE6, Portal>(candidate.getPointE6(), candidate));
+				}
+			}
+		}
+		return ret;
+	}
+}
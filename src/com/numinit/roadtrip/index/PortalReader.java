@@ -0,0 +1,301 @@
+package com.numinit.roadtrip.index;
+
+import java.io.CharArrayReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import com.numinit.json.JSONTokenizer;
+import com.numinit.json.JSONTokenizer.Token;
+
+/**
+ * Streams portals out of a location file: an object mapping each portal's UUID to [uuid, timestamp, {fields}].
+ * Portals are handed over as they're read, so nothing but the current one is held, however large the file.
+ *
+ * Location files ending in .ndjson or .jsonl instead have one [uuid, timestamp, {fields}] per line. Those are split
+ * into ranges of whole lines and parsed on every core; PortalConverter writes them.
+ * @author Morgan Jones
+ *
+ */
+public class PortalReader {
+	/**
+	 * Bits for the fields a portal needs
+	 */
+	private static final int TITLE = 1, TEAM = 2, LAT = 4, LNG = 8, LEVEL = 16, HEALTH = 32, RESONATORS = 64, TYPE = 128, ALL = 255;
+	
+	/**
+	 * How many bytes of an NDJSON file to parse in one task, before rounding up to a whole line
+	 */
+	public static final int NDJSON_RANGE_SIZE = 4 * 1024 * 1024;
+	
+	/**
+	 * How much to read at once while looking for the end of a line
+	 */
+	private static final int ALIGN_SIZE = 4096;
+	
+	/**
+	 * Returns whether a location file is NDJSON, going by its name
+	 * @param file The file
+	 * @return True if it is
+	 */
+	public static boolean isNDJSON(String file) {
+		return file.endsWith(".ndjson") || file.endsWith(".jsonl");
+	}
+	
+	/**
+	 * Reads every portal in a location file, in the order they're in the file. NDJSON files are parsed on the common pool.
+	 * @param file     The file
+	 * @param consumer What to do with each portal
+	 * @return The number of portals
+	 * @throws IOException if the file couldn't be read, or isn't a location file
+	 */
+	public static long read(String file, Consumer<Portal> consumer) throws IOException {
+		if (isNDJSON(file)) {
+			return readNDJSON(file, ForkJoinPool.commonPool(), (batch) -> {
+				for (Portal portal : batch) {
+					consumer.accept(portal);
+				}
+			});
+		}
+		try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			return read(in, consumer);
+		}
+	}
+	
+	/**
+	 * Reads every portal in a location file
+	 * @param in       The reader, which is read to the end but not closed
+	 * @param consumer What to do with each portal
+	 * @return The number of portals
+	 * @throws IOException if the reader fails, or its contents aren't a location file
+	 */
+	public static long read(Reader in, Consumer<Portal> consumer) throws IOException {
+		JSONTokenizer json = new JSONTokenizer(in);
+		json.expect(Token.BEGIN_OBJECT);
+		long ret = 0;
+		while (json.next() == Token.NAME) {
+			json.expect(Token.BEGIN_ARRAY);
+			consumer.accept(readPortal(json));
+			ret++;
+		}
+		json.expect(Token.END);
+		return ret;
+	}
+	
+	/**
+	 * Reads every portal in an NDJSON location file. The file is split into ranges of whole lines, which are parsed in parallel
+	 * into batches; batches are handed over on the calling thread, in file order, while later ranges are still being parsed.
+	 * Only a couple of ranges per thread are in memory at once.
+	 * @param file     The file
+	 * @param pool     Where to parse
+	 * @param consumer What to do with each batch
+	 * @return The number of portals
+	 * @throws IOException if the file couldn't be read, or a line isn't a portal
+	 */
+	public static long readNDJSON(String file, ForkJoinPool pool, Consumer<List<Portal>> consumer) throws IOException {
+		try (final FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			// Split after the first newline past every NDJSON_RANGE_SIZE bytes. UTF-8 never has a newline byte inside a char.
+			List<long[]> ranges = new ArrayList<long[]>();
+			long size = channel.size();
+			for (long start = 0, end; start < size; start = end) {
+				end = start + NDJSON_RANGE_SIZE < size ? alignToLine(channel, start + NDJSON_RANGE_SIZE) : size;
+				ranges.add(new long[] {start, end});
+			}
+			
+			ArrayDeque<ForkJoinTask<List<Portal>>> pending = new ArrayDeque<ForkJoinTask<List<Portal>>>();
+			int window = 2 * pool.getParallelism(), next = 0;
+			long ret = 0;
+			try {
+				while (next < ranges.size() || !pending.isEmpty()) {
+					while (next < ranges.size() && pending.size() < window) {
+						final long start = ranges.get(next)[0], end = ranges.get(next)[1];
+						pending.addLast(pool.submit(() -> readRange(channel, start, end)));
+						next++;
+					}
+					List<Portal> batch = pending.removeFirst().get();
+					consumer.accept(batch);
+					ret += batch.size();
+				}
+			} catch (ExecutionException e) {
+				// The pool wraps what a Callable throws in a RuntimeException, and may wrap that again to rethrow it on this thread
+				Throwable cause = e.getCause();
+				while (cause instanceof RuntimeException && cause.getCause() != null) {
+					cause = cause.getCause();
+				}
+				if (cause instanceof IOException) {
+					throw (IOException)cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				}
+				throw new IOException(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while loading portals");
+			} finally {
+				for (ForkJoinTask<List<Portal>> task : pending) {
+					task.cancel(false);
+				}
+			}
+			return ret;
+		}
+	}
+	
+	/**
+	 * Returns where the line containing a byte ends
+	 * @param channel  The file
+	 * @param position The byte
+	 * @return The position just past its newline, or the size of the file if it has none
+	 * @throws IOException if the file couldn't be read
+	 */
+	private static long alignToLine(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(ALIGN_SIZE);
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+	
+	/**
+	 * Parses the portals in a range of whole lines
+	 * @param channel The file
+	 * @param start   Where the range starts
+	 * @param end     Where it ends
+	 * @return The portals
+	 * @throws IOException if the file couldn't be read, or a line isn't a portal
+	 */
+	private static List<Portal> readRange(FileChannel channel, long start, long end) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate((int)(end - start));
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, start + bytes.position()) < 0) {
+				throw new IOException(String.format("file shrank while reading bytes %d-%d", start, end));
+			}
+		}
+		bytes.flip();
+		CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+		
+		List<Portal> ret = new ArrayList<Portal>();
+		JSONTokenizer json = new JSONTokenizer(new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining())).setSequence(true);
+		try {
+			Token token;
+			while ((token = json.next()) != Token.END) {
+				if (token != Token.BEGIN_ARRAY) {
+					throw json.error(String.format("expected %s, got %s", Token.BEGIN_ARRAY, token));
+				}
+				ret.add(readPortal(json));
+			}
+		} catch (IOException e) {
+			throw new IOException(String.format("%s in the lines starting at byte %d", e.getMessage(), start), e);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Reads one portal's [uuid, timestamp, {fields}], after its opening bracket
+	 * @param json The tokenizer
+	 * @return The portal
+	 * @throws IOException if the entity isn't a portal
+	 */
+	public static Portal readPortal(JSONTokenizer json) throws IOException {
+		json.expect(Token.STRING);
+		String uuid = json.getString();
+		json.expect(Token.NUMBER);
+		if (!json.isIntegral()) {
+			throw json.error("timestamp is not an integer");
+		}
+		long timestamp = json.getLong();
+		json.expect(Token.BEGIN_OBJECT);
+		return readPortal(json, uuid, timestamp);
+	}
+	
+	/**
+	 * Reads the rest of one portal's [uuid, timestamp, {fields}], after the opening brace of its fields
+	 * @param json      The tokenizer
+	 * @param uuid      The portal's UUID
+	 * @param timestamp Its timestamp
+	 * @return The portal
+	 * @throws IOException if the entity isn't a portal
+	 */
+	public static Portal readPortal(JSONTokenizer json, String uuid, long timestamp) throws IOException {
+		String name = null;
+		Team team = null;
+		long latE6 = 0, lngE6 = 0, level = 0, health = 0, resCount = 0;
+		int seen = 0;
+		while (json.next() == Token.NAME) {
+			if (json.isString("title")) {
+				json.expect(Token.STRING);
+				name = json.getString().trim();
+				seen |= TITLE;
+			} else if (json.isString("team")) {
+				json.expect(Token.STRING);
+				team = Team.getTeamFor(json.getString());
+				seen |= TEAM;
+			} else if (json.isString("latE6")) {
+				latE6 = readLong(json);
+				seen |= LAT;
+			} else if (json.isString("lngE6")) {
+				lngE6 = readLong(json);
+				seen |= LNG;
+			} else if (json.isString("level")) {
+				level = readLong(json);
+				seen |= LEVEL;
+			} else if (json.isString("health")) {
+				health = readLong(json);
+				seen |= HEALTH;
+			} else if (json.isString("resCount")) {
+				resCount = readLong(json);
+				seen |= RESONATORS;
+			} else if (json.isString("type")) {
+				json.expect(Token.STRING);
+				if (!json.isString("portal")) {
+					throw json.error(String.format("%s is not a portal", uuid));
+				}
+				seen |= TYPE;
+			} else {
+				json.next();
+				json.skipValue();
+			}
+		}
+		if (seen != ALL) {
+			throw json.error(String.format("portal %s is missing fields", uuid));
+		}
+		json.expect(Token.END_ARRAY);
+		return new HeapPortal(uuid, timestamp, name, team, Geo2D.fromE6(latE6, lngE6), (int)level, (int)health, (int)resCount);
+	}
+	
+	/**
+	 * Reads an integer field's value
+	 * @param json The tokenizer, just past the field's name
+	 * @return The value
+	 * @throws IOException if it isn't an integer
+	 */
+	private static long readLong(JSONTokenizer json) throws IOException {
+		if (json.next() != Token.NUMBER || !json.isIntegral()) {
+			throw json.error("expected an integer");
+		}
+		return json.getLong();
+	}
+}
@@ -0,0 +1,586 @@
+package com.numinit.roadtrip.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Portals stored by column rather than as objects: E6 coordinates as ints, UUIDs as two longs, metrics as bytes,
+ * and names in one dictionary of UTF-8 strings, each stored once however many portals share it.
+ * That's around 50 bytes a portal, plus its name's share of the dictionary, where a Portal and its strings take several times that.
+ *
+ * get() returns a flyweight Portal that reads its fields out of the columns, and holds nothing but the store and its index;
+ * an index that keeps one per portal adds 24 bytes a portal. Stores are written to a file, and loaded
+ * by mapping it and copying each column straight into its array, so loading takes no more heap than the store does.
+ * @author Morgan Jones
+ *
+ */
+public class PortalStore {
+	/**
+	 * "PSTR", then the format version
+	 */
+	public static final int MAGIC = 0x50535452, VERSION = 1;
+	
+	/**
+	 * The file extension for stores
+	 */
+	public static final String EXTENSION = ".pstore";
+	
+	/**
+	 * Teams by their integer
+	 */
+	private static final Team[] TEAMS = {Team.NEU_TEAM, Team.RES_TEAM, Team.ENL_TEAM};
+	
+	/**
+	 * Hex digits, for formatting UUIDs
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	/**
+	 * The number of portals
+	 */
+	private final int _size;
+	
+	/**
+	 * The high and low 64 bits of each UUID's 32 hex digits, and timestamps
+	 */
+	private final long[] _uuidHi, _uuidLo, _timestamps;
+	
+	/**
+	 * Coordinates, in millionths of a degree
+	 */
+	private final int[] _latE6, _lngE6;
+	
+	/**
+	 * Each name's string, and each UUID's string after its 32 hex digits (like ".16").
+	 * A UUID that isn't 32 lowercase hex digits is stored whole, as -1 - its string.
+	 */
+	private final int[] _names, _uuidRest;
+	
+	/**
+	 * Levels, health, resonator counts and teams
+	 */
+	private final byte[] _levels, _health, _resonators, _teams;
+	
+	/**
+	 * Where each string starts in the arena, with one more entry for the end of the last, and the arena of UTF-8
+	 */
+	private final int[] _offsets;
+	private final byte[] _arena;
+	
+	/**
+	 * Initializes this PortalStore
+	 */
+	private PortalStore(int size, long[] uuidHi, long[] uuidLo, long[] timestamps, int[] latE6, int[] lngE6, int[] names, int[] uuidRest,
+			byte[] levels, byte[] health, byte[] resonators, byte[] teams, int[] offsets, byte[] arena) {
+		this._size = size;
+		this._uuidHi = uuidHi;
+		this._uuidLo = uuidLo;
+		this._timestamps = timestamps;
+		this._latE6 = latE6;
+		this._lngE6 = lngE6;
+		this._names = names;
+		this._uuidRest = uuidRest;
+		this._levels = levels;
+		this._health = health;
+		this._resonators = resonators;
+		this._teams = teams;
+		this._offsets = offsets;
+		this._arena = arena;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[size=%d,strings=%d,arena=%d,bytes=%d]@%#08x>", this.getClass().getSimpleName(),
+				this._size, this._offsets.length - 1, this._arena.length, this.getSizeInBytes(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Returns whether a file is a store, going by its name
+	 * @param file The file
+	 * @return True if it is
+	 */
+	public static boolean isStore(String file) {
+		return file.endsWith(EXTENSION);
+	}
+	
+	/**
+	 * Builds a store from a location file, or loads it if it's already one
+	 * @param file The file
+	 * @return The store
+	 * @throws IOException if the file couldn't be read
+	 */
+	public static PortalStore open(String file) throws IOException {
+		if (isStore(file)) {
+			return load(file);
+		}
+		Builder builder = new Builder();
+		PortalReader.read(file, builder::add);
+		return builder.build();
+	}
+	
+	/**
+	 * @return the number of portals
+	 */
+	public int size() {
+		return this._size;
+	}
+	
+	/**
+	 * Returns a flyweight for a portal. Flyweights for the same portal are equal, but not the same object.
+	 * @param i The portal
+	 * @return The portal
+	 */
+	public Portal get(int i) {
+		if (i < 0 || i >= this._size) {
+			throw new IndexOutOfBoundsException(String.format("portal %d of %d", i, this._size));
+		}
+		return new View(this, i);
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's UUID
+	 */
+	public String getUUID(int i) {
+		int rest = this._uuidRest[i];
+		if (rest < 0) {
+			return this.getString(-1 - rest);
+		}
+		char[] hex = new char[32];
+		for (int j = 0; j < 16; j++) {
+			hex[j] = HEX[(int)(this._uuidHi[i] >>> (60 - 4 * j)) & 0xf];
+			hex[16 + j] = HEX[(int)(this._uuidLo[i] >>> (60 - 4 * j)) & 0xf];
+		}
+		return new String(hex).concat(this.getString(rest));
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's name
+	 */
+	public String getName(int i) {
+		return this.getString(this._names[i]);
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's timestamp
+	 */
+	public long getTimestamp(int i) {
+		return this._timestamps[i];
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's latitude, in millionths of a degree
+	 */
+	public int getLatE6(int i) {
+		return this._latE6[i];
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's longitude, in millionths of a degree
+	 */
+	public int getLngE6(int i) {
+		return this._lngE6[i];
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's team
+	 */
+	public Team getFaction(int i) {
+		return TEAMS[this._teams[i]];
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's level
+	 */
+	public int getLevel(int i) {
+		return this._levels[i];
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's health
+	 */
+	public int getHealth(int i) {
+		return this._health[i];
+	}
+	
+	/**
+	 * @param i The portal
+	 * @return the portal's resonator count
+	 */
+	public int getResonators(int i) {
+		return this._resonators[i];
+	}
+	
+	/**
+	 * @param id The string
+	 * @return the string
+	 */
+	private String getString(int id) {
+		return new String(this._arena, this._offsets[id], this._offsets[id + 1] - this._offsets[id], StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * @return roughly how much heap the columns take, in bytes
+	 */
+	public long getSizeInBytes() {
+		return 8L * this._uuidHi.length * 3 + 4L * this._latE6.length * 4 + this._levels.length * 4L + 4L * this._offsets.length + this._arena.length;
+	}
+	
+	/**
+	 * Writes this store to a file
+	 * @param file The file
+	 * @throws IOException if it couldn't be written
+	 */
+	public void write(String file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			int n = this._size, strings = this._offsets.length - 1;
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(strings);
+			out.writeInt(this._arena.length);
+			for (long[] column : new long[][] {this._uuidHi, this._uuidLo, this._timestamps}) {
+				for (int i = 0; i < n; i++) {
+					out.writeLong(column[i]);
+				}
+			}
+			for (int[] column : new int[][] {this._latE6, this._lngE6, this._names, this._uuidRest}) {
+				for (int i = 0; i < n; i++) {
+					out.writeInt(column[i]);
+				}
+			}
+			for (int i = 0; i <= strings; i++) {
+				out.writeInt(this._offsets[i]);
+			}
+			for (byte[] column : new byte[][] {this._levels, this._health, this._resonators, this._teams}) {
+				out.write(column, 0, n);
+			}
+			out.write(this._arena);
+		}
+	}
+	
+	/**
+	 * Loads a store from a file, mapping it and copying each column out in bulk
+	 * @param file The file
+	 * @return The store
+	 * @throws IOException if it couldn't be read, isn't a store, or doesn't match its own header
+	 */
+	public static PortalStore load(String file) throws IOException {
+		ByteBuffer buffer;
+		long size;
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(String.format("%s is too large", file));
+			}
+			// The mapping outlives the channel, and is off the heap
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(String.format("%s is not a portal store", file));
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(String.format("unsupported portal store version %d", version));
+			}
+			int n = buffer.getInt(), strings = buffer.getInt(), arenaLength = buffer.getInt();
+			
+			// Check the counts against the file before allocating anything for them: three longs, four ints and four bytes per portal,
+			// an offset per string and one more, and the arena
+			long expected = buffer.position() + (long)n * (3 * 8 + 4 * 4 + 4) + 4L * ((long)strings + 1) + arenaLength;
+			if (n < 0 || strings < 0 || arenaLength < 0 || expected != size) {
+				throw new IOException(String.format("%s is %d bytes, but its header describes %d", file, size, expected));
+			}
+			long[] uuidHi = new long[n], uuidLo = new long[n], timestamps = new long[n];
+			for (long[] column : new long[][] {uuidHi, uuidLo, timestamps}) {
+				buffer.asLongBuffer().get(column);
+				buffer.position(buffer.position() + 8 * n);
+			}
+			int[] latE6 = new int[n], lngE6 = new int[n], names = new int[n], uuidRest = new int[n], offsets = new int[strings + 1];
+			for (int[] column : new int[][] {latE6, lngE6, names, uuidRest, offsets}) {
+				buffer.asIntBuffer().get(column);
+				buffer.position(buffer.position() + 4 * column.length);
+			}
+			byte[] levels = new byte[n], health = new byte[n], resonators = new byte[n], teams = new byte[n], arena = new byte[arenaLength];
+			for (byte[] column : new byte[][] {levels, health, resonators, teams, arena}) {
+				buffer.get(column);
+			}
+			
+			// Everything that indexes something else has to land inside it
+			if (offsets[0] != 0 || offsets[strings] != arenaLength) {
+				throw new IOException(String.format("%s has string offsets outside its arena", file));
+			}
+			for (int i = 0; i < strings; i++) {
+				if (offsets[i] > offsets[i + 1]) {
+					throw new IOException(String.format("%s has string %d ending before it starts", file, i));
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				int rest = uuidRest[i] >= 0 ? uuidRest[i] : -1 - uuidRest[i];
+				if (teams[i] < 0 || teams[i] >= TEAMS.length) {
+					throw new IOException(String.format("%s has portal %d on team %d", file, i, teams[i]));
+				} else if (names[i] < 0 || names[i] >= strings || rest >= strings) {
+					throw new IOException(String.format("%s has portal %d naming a string it doesn't have", file, i));
+				}
+			}
+			return new PortalStore(n, uuidHi, uuidLo, timestamps, latE6, lngE6, names, uuidRest, levels, health, resonators, teams, offsets, arena);
+		} catch (RuntimeException e) {
+			// Underflows and bad sizes
+			throw new IOException(String.format("%s is truncated or corrupt", file), e);
+		}
+	}
+	
+	/**
+	 * A portal whose fields live in a PortalStore
+	 * @author Morgan Jones
+	 *
+	 */
+	private static class View extends Portal {
+		/**
+		 * The store
+		 */
+		private final PortalStore _store;
+		
+		/**
+		 * The portal
+		 */
+		private final int _index;
+		
+		/**
+		 * Initializes this View
+		 * @param store The store
+		 * @param index The portal
+		 */
+		private View(PortalStore store, int index) {
+			this._store = store;
+			this._index = index;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof View && ((View)other)._store == this._store && ((View)other)._index == this._index;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this._store) * 31 + this._index;
+		}
+		
+		@Override
+		public String getUUID() {
+			return this._store.getUUID(this._index);
+		}
+		
+		@Override
+		public boolean hasHexUUID() {
+			return this._store._uuidRest[this._index] >= 0;
+		}
+		
+		@Override
+		public long getUUIDHi() {
+			return this._store._uuidHi[this._index];
+		}
+		
+		@Override
+		public long getUUIDLo() {
+			return this._store._uuidLo[this._index];
+		}
+		
+		@Override
+		public long getTimestamp() {
+			return this._store.getTimestamp(this._index);
+		}
+		
+		@Override
+		public String getName() {
+			return this._store.getName(this._index);
+		}
+		
+		@Override
+		public Team getFaction() {
+			return this._store.getFaction(this._index);
+		}
+		
+		@Override
+		public Geo2D getPoint() {
+			return Geo2D.fromE6(this._store.getLatE6(this._index), this._store.getLngE6(this._index));
+		}
+		
+		@Override
+		public GeoE6 getPointE6() {
+			return new GeoE6(this._store.getLatE6(this._index), this._store.getLngE6(this._index));
+		}
+		
+		@Override
+		public int getLevel() {
+			return this._store.getLevel(this._index);
+		}
+		
+		@Override
+		public int getHealth() {
+			return this._store.getHealth(this._index);
+		}
+		
+		@Override
+		public int getResonators() {
+			return this._store.getResonators(this._index);
+		}
+	}
+	
+	/**
+	 * Builds a PortalStore a portal at a time
+	 * @author Morgan Jones
+	 *
+	 */
+	public static class Builder {
+		/**
+		 * The number of portals so far
+		 */
+		private int _size;
+		
+		/**
+		 * Columns, as in PortalStore, with room to grow
+		 */
+		private long[] _uuidHi, _uuidLo, _timestamps;
+		private int[] _latE6, _lngE6, _names, _uuidRest;
+		private byte[] _levels, _health, _resonators, _teams;
+		
+		/**
+		 * String ids, where each string starts in the arena, how many strings there are, the arena, and how much of it is used
+		 */
+		private final HashMap<String, Integer> _strings;
+		private int[] _offsets;
+		private int _stringCount;
+		private byte[] _arena;
+		private int _arenaLength;
+		
+		/**
+		 * Initializes this Builder
+		 */
+		public Builder() {
+			this._uuidHi = new long[1024];
+			this._uuidLo = new long[1024];
+			this._timestamps = new long[1024];
+			this._latE6 = new int[1024];
+			this._lngE6 = new int[1024];
+			this._names = new int[1024];
+			this._uuidRest = new int[1024];
+			this._levels = new byte[1024];
+			this._health = new byte[1024];
+			this._resonators = new byte[1024];
+			this._teams = new byte[1024];
+			this._strings = new HashMap<String, Integer>();
+			this._offsets = new int[1024];
+			this._arena = new byte[16384];
+		}
+		
+		/**
+		 * Adds a portal
+		 * @param portal The portal
+		 * @return This Builder
+		 */
+		public Builder add(Portal portal) {
+			if (this._size == this._uuidHi.length) {
+				int capacity = this._size * 2;
+				this._uuidHi = Arrays.copyOf(this._uuidHi, capacity);
+				this._uuidLo = Arrays.copyOf(this._uuidLo, capacity);
+				this._timestamps = Arrays.copyOf(this._timestamps, capacity);
+				this._latE6 = Arrays.copyOf(this._latE6, capacity);
+				this._lngE6 = Arrays.copyOf(this._lngE6, capacity);
+				this._names = Arrays.copyOf(this._names, capacity);
+				this._uuidRest = Arrays.copyOf(this._uuidRest, capacity);
+				this._levels = Arrays.copyOf(this._levels, capacity);
+				this._health = Arrays.copyOf(this._health, capacity);
+				this._resonators = Arrays.copyOf(this._resonators, capacity);
+				this._teams = Arrays.copyOf(this._teams, capacity);
+			}
+			
+			int i = this._size++;
+			String uuid = portal.getUUID();
+			if (portal.hasHexUUID()) {
+				this._uuidHi[i] = portal.getUUIDHi();
+				this._uuidLo[i] = portal.getUUIDLo();
+				this._uuidRest[i] = this.intern(uuid.substring(32));
+			} else {
+				this._uuidRest[i] = -1 - this.intern(uuid);
+			}
+			this._timestamps[i] = portal.getTimestamp();
+			GeoE6 point = portal.getPointE6();
+			this._latE6[i] = point.getLatE6();
+			this._lngE6[i] = point.getLngE6();
+			this._names[i] = this.intern(portal.getName());
+			this._levels[i] = toByte(portal.getLevel(), "level");
+			this._health[i] = toByte(portal.getHealth(), "health");
+			this._resonators[i] = toByte(portal.getResonators(), "resonators");
+			this._teams[i] = (byte)portal.getFaction().integer();
+			return this;
+		}
+		
+		/**
+		 * @return the store
+		 */
+		public PortalStore build() {
+			int n = this._size;
+			return new PortalStore(n, Arrays.copyOf(this._uuidHi, n), Arrays.copyOf(this._uuidLo, n), Arrays.copyOf(this._timestamps, n),
+					Arrays.copyOf(this._latE6, n), Arrays.copyOf(this._lngE6, n), Arrays.copyOf(this._names, n), Arrays.copyOf(this._uuidRest, n),
+					Arrays.copyOf(this._levels, n), Arrays.copyOf(this._health, n), Arrays.copyOf(this._resonators, n), Arrays.copyOf(this._teams, n),
+					Arrays.copyOf(this._offsets, this._stringCount + 1), Arrays.copyOf(this._arena, this._arenaLength));
+		}
+		
+		/**
+		 * Returns a string's id, adding it to the arena if it's new
+		 * @param s The string
+		 * @return The id
+		 */
+		private int intern(String s) {
+			Integer ret = this._strings.get(s);
+			if (ret != null) {
+				return ret;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			if (this._arenaLength + bytes.length > this._arena.length) {
+				this._arena = Arrays.copyOf(this._arena, Math.max(this._arena.length * 2, this._arenaLength + bytes.length));
+			}
+			if (this._stringCount + 2 > this._offsets.length) {
+				this._offsets = Arrays.copyOf(this._offsets, this._offsets.length * 2);
+			}
+			System.arraycopy(bytes, 0, this._arena, this._arenaLength, bytes.length);
+			this._offsets[this._stringCount] = this._arenaLength;
+			this._arenaLength += bytes.length;
+			this._offsets[this._stringCount + 1] = this._arenaLength;
+			this._strings.put(s, this._stringCount);
+			return this._stringCount++;
+		}
+		
+		/**
+		 * Narrows a metric to a byte
+		 * @param value The metric
+		 * @param name  What it is
+		 * @return The byte
+		 */
+		private static byte toByte(int value, String name) {
+			if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+				throw new IllegalArgumentException(String.format("%s %d doesn't fit in a byte", name, value));
+			}
+			return (byte)value;
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.numinit.roadtrip.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A hash table from portal UUIDs to a few longs each, kept in primitive arrays.
+ * A UUID's 32 hex digits are its key, as two longs; whatever follows them (like ".16") is ignored, so a portal is the same
+ * portal whatever its suffix. Open addressing with linear probing, and removals shift later entries back, so there are no tombstones.
+ * UUIDs that aren't 32 hex digits fall back to a HashMap, which location files never need.
+ * @author Morgan Jones
+ *
+ */
+public class UUIDIndex {
+	/**
+	 * Returned for UUIDs we don't have
+	 */
+	public static final long MISSING = Long.MIN_VALUE;
+	
+	/**
+	 * The most of the table we fill before doubling it
+	 */
+	private static final double LOAD_FACTOR = 0.75d;
+	
+	/**
+	 * The number of longs per UUID
+	 */
+	private final int _width;
+	
+	/**
+	 * Each slot's UUID, and whether it's in use
+	 */
+	private long[] _hi, _lo;
+	private boolean[] _used;
+	
+	/**
+	 * Each slot's longs, _width to a slot
+	 */
+	private long[] _values;
+	
+	/**
+	 * The number of UUIDs in the table
+	 */
+	private int _size;
+	
+	/**
+	 * UUIDs that aren't hex
+	 */
+	private final HashMap<String, long[]> _other;
+	
+	/**
+	 * Initializes this UUIDIndex
+	 * @param width    The number of longs per UUID
+	 * @param expected How many UUIDs to make room for
+	 */
+	public UUIDIndex(int width, int expected) {
+		if (width < 1) {
+			throw new IllegalArgumentException("width must be positive");
+		}
+		this._width = width;
+		this._other = new HashMap<String, long[]>();
+		this.allocate(Math.max(16, Integer.highestOneBit((int)Math.ceil(expected / LOAD_FACTOR)) * 2));
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[width=%d,size=%d,capacity=%d]@%#08x>", this.getClass().getSimpleName(),
+				this._width, this.size(), this._used.length, System.identityHashCode(this));
+	}
+	
+	/**
+	 * @return the number of UUIDs
+	 */
+	public int size() {
+		return this._size + this._other.size();
+	}
+	
+	/**
+	 * Returns whether we have a UUID
+	 * @param uuid The UUID
+	 * @return True if we do
+	 */
+	public boolean contains(String uuid) {
+		if (!isHex(uuid)) {
+			return this._other.containsKey(uuid);
+		}
+		return this.find(parseHi(uuid), parseLo(uuid)) >= 0;
+	}
+	
+	/**
+	 * Returns whether we have a portal's UUID, without formatting it if we can help it
+	 * @param portal The portal
+	 * @return True if we do
+	 */
+	public boolean contains(Portal portal) {
+		if (!portal.hasHexUUID()) {
+			return this._other.containsKey(portal.getUUID());
+		}
+		return this.find(portal.getUUIDHi(), portal.getUUIDLo()) >= 0;
+	}
+	
+	/**
+	 * Returns one of a UUID's longs
+	 * @param uuid   The UUID
+	 * @param column Which long
+	 * @return The long, or MISSING if we don't have the UUID
+	 */
+	public long get(String uuid, int column) {
+		if (!isHex(uuid)) {
+			return this.getOther(uuid, column);
+		}
+		return this.get(parseHi(uuid), parseLo(uuid), column);
+	}
+	
+	/**
+	 * Returns one of a portal's UUID's longs, without formatting the UUID if we can help it
+	 * @param portal The portal
+	 * @param column Which long
+	 * @return The long, or MISSING if we don't have the UUID
+	 */
+	public long get(Portal portal, int column) {
+		if (!portal.hasHexUUID()) {
+			return this.getOther(portal.getUUID(), column);
+		}
+		return this.get(portal.getUUIDHi(), portal.getUUIDLo(), column);
+	}
+	
+	/**
+	 * Sets one of a UUID's longs, adding the UUID if it's new. A new UUID's other longs start out MISSING.
+	 * @param uuid   The UUID
+	 * @param column Which long
+	 * @param value  The long
+	 */
+	public void put(String uuid, int column, long value) {
+		if (!isHex(uuid)) {
+			this.putOther(uuid, column, value);
+		} else {
+			this.put(parseHi(uuid), parseLo(uuid), column, value);
+		}
+	}
+	
+	/**
+	 * Sets one of a portal's UUID's longs, without formatting the UUID if we can help it
+	 * @param portal The portal
+	 * @param column Which long
+	 * @param value  The long
+	 */
+	public void put(Portal portal, int column, long value) {
+		if (!portal.hasHexUUID()) {
+			this.putOther(portal.getUUID(), column, value);
+		} else {
+			this.put(portal.getUUIDHi(), portal.getUUIDLo(), column, value);
+		}
+	}
+	
+	/**
+	 * Removes a UUID
+	 * @param uuid The UUID
+	 * @return True if we had it
+	 */
+	public boolean remove(String uuid) {
+		if (!isHex(uuid)) {
+			return this._other.remove(uuid) != null;
+		}
+		return this.remove(parseHi(uuid), parseLo(uuid));
+	}
+	
+	/**
+	 * Returns one of a hex UUID's longs
+	 * @param hi     The UUID's high bits
+	 * @param lo     Its low bits
+	 * @param column Which long
+	 * @return The long, or MISSING
+	 */
+	private long get(long hi, long lo, int column) {
+		int slot = this.find(hi, lo);
+		return slot >= 0 ? this._values[slot * this._width + column] : MISSING;
+	}
+	
+	/**
+	 * Sets one of a hex UUID's longs, adding it if it's new
+	 * @param hi     The UUID's high bits
+	 * @param lo     Its low bits
+	 * @param column Which long
+	 * @param value  The long
+	 */
+	private void put(long hi, long lo, int column, long value) {
+		int slot = this.find(hi, lo);
+		if (slot < 0) {
+			if (this._size + 1 > this._used.length * LOAD_FACTOR) {
+				this.allocate(this._used.length * 2);
+			}
+			slot = this.insert(hi, lo);
+			Arrays.fill(this._values, slot * this._width, (slot + 1) * this._width, MISSING);
+		}
+		this._values[slot * this._width + column] = value;
+	}
+	
+	/**
+	 * Removes a hex UUID
+	 * @param hi The UUID's high bits
+	 * @param lo Its low bits
+	 * @return True if we had it
+	 */
+	private boolean remove(long hi, long lo) {
+		int slot = this.find(hi, lo);
+		if (slot < 0) {
+			return false;
+		}
+		
+		// Shift back any later entry in the run that could have been placed here, so lookups never stop early
+		int mask = this._used.length - 1;
+		for (int next = (slot + 1) & mask; this._used[next]; next = (next + 1) & mask) {
+			int home = hash(this._hi[next], this._lo[next]) & mask;
+			if (((next - home) & mask) >= ((next - slot) & mask)) {
+				this._hi[slot] = this._hi[next];
+				this._lo[slot] = this._lo[next];
+				System.arraycopy(this._values, next * this._width, this._values, slot * this._width, this._width);
+				slot = next;
+			}
+		}
+		this._used[slot] = false;
+		this._size--;
+		return true;
+	}
+	
+	/**
+	 * Returns one of a UUID's longs from the fallback map
+	 * @param uuid   A UUID that isn't hex
+	 * @param column Which long
+	 * @return The long, or MISSING
+	 */
+	private long getOther(String uuid, int column) {
+		long[] values = this._other.get(uuid);
+		return values != null ? values[column] : MISSING;
+	}
+	
+	/**
+	 * Sets one of a UUID's longs in the fallback map, adding it if it's new
+	 * @param uuid   A UUID that isn't hex
+	 * @param column Which long
+	 * @param value  The long
+	 */
+	private void putOther(String uuid, int column, long value) {
+		long[] values = this._other.get(uuid);
+		if (values == null) {
+			values = new long[this._width];
+			Arrays.fill(values, MISSING);
+			this._other.put(uuid, values);
+		}
+		values[column] = value;
+	}
+	
+	/**
+	 * Returns the slot holding a UUID
+	 * @param hi The UUID's high bits
+	 * @param lo Its low bits
+	 * @return The slot, or -1
+	 */
+	private int find(long hi, long lo) {
+		int mask = this._used.length - 1;
+		for (int slot = hash(hi, lo) & mask; this._used[slot]; slot = (slot + 1) & mask) {
+			if (this._hi[slot] == hi && this._lo[slot] == lo) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Puts a UUID we don't have in the first free slot for it
+	 * @param hi The UUID's high bits
+	 * @param lo Its low bits
+	 * @return The slot
+	 */
+	private int insert(long hi, long lo) {
+		int mask = this._used.length - 1, slot = hash(hi, lo) & mask;
+		while (this._used[slot]) {
+			slot = (slot + 1) & mask;
+		}
+		this._used[slot] = true;
+		this._hi[slot] = hi;
+		this._lo[slot] = lo;
+		this._size++;
+		return slot;
+	}
+	
+	/**
+	 * Makes a new, empty table and moves every UUID into it
+	 * @param capacity The new table's size, a power of two
+	 */
+	private void allocate(int capacity) {
+		long[] hi = this._hi, lo = this._lo, values = this._values;
+		boolean[] used = this._used;
+		this._hi = new long[capacity];
+		this._lo = new long[capacity];
+		this._used = new boolean[capacity];
+		this._values = new long[capacity * this._width];
+		this._size = 0;
+		if (used != null) {
+			for (int i = 0; i < used.length; i++) {
+				if (used[i]) {
+					int slot = this.insert(hi[i], lo[i]);
+					System.arraycopy(values, i * this._width, this._values, slot * this._width, this._width);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Hashes a UUID. UUIDs are random already, but mix them anyway in case some aren't.
+	 * @param hi The UUID's high bits
+	 * @param lo Its low bits
+	 * @return The hash
+	 */
+	private static int hash(long hi, long lo) {
+		long h = (hi ^ Long.rotateLeft(lo, 32)) * 0x9e3779b97f4a7c15L;
+		return (int)(h ^ (h >>> 32));
+	}
+	
+	/**
+	 * Returns whether a UUID starts with 32 lowercase hex digits, so it fits in two longs
+	 * @param uuid The UUID
+	 * @return True if it does
+	 */
+	static boolean isHex(String uuid) {
+		if (uuid.length() < 32) {
+			return false;
+		}
+		for (int i = 0; i < 32; i++) {
+			char c = uuid.charAt(i);
+			if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param uuid A hex UUID
+	 * @return its first 16 hex digits
+	 */
+	static long parseHi(String uuid) {
+		return parseHex(uuid, 0);
+	}
+	
+	/**
+	 * @param uuid A hex UUID
+	 * @return its second 16 hex digits
+	 */
+	static long parseLo(String uuid) {
+		return parseHex(uuid, 16);
+	}
+	
+	/**
+	 * Parses 16 lowercase hex digits
+	 * @param uuid  A hex UUID
+	 * @param start Where the digits start
+	 * @return The digits
+	 */
+	private static long parseHex(String uuid, int start) {
+		long ret = 0;
+		for (int i = start; i < start + 16; i++) {
+			char c = uuid.charAt(i);
+			ret = (ret << 4) | (c <= '9' ? c - '0' : c - 'a' + 10);
+		}
+		return ret;
+	}
+}
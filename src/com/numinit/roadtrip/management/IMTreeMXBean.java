@@ -0,0 +1,98 @@
+package com.numinit.roadtrip.management;
+
+/**
+ * Management interface for a live MTree
+ * @author Morgan Jones
+ *
+ */
+public interface IMTreeMXBean {
+	/**
+	 * @return the depth of the tree
+	 */
+	int getDepth();
+	
+	/**
+	 * @return the number of key/value pairs
+	 */
+	long getSize();
+	
+	/**
+	 * @return the number of internal nodes
+	 */
+	long getInternalNodeCount();
+	
+	/**
+	 * @return the number of leaf nodes
+	 */
+	long getLeafNodeCount();
+	
+	/**
+	 * @return the fraction of node slots in use
+	 */
+	double getFillFactor();
+	
+	/**
+	 * @return the fraction of leaf slots in use
+	 */
+	double getLeafFillFactor();
+	
+	/**
+	 * @return the mean covering radius of subtrees
+	 */
+	double getAverageRadius();
+	
+	/**
+	 * @return the number of inserts
+	 */
+	long getInserts();
+	
+	/**
+	 * @return the number of removals
+	 */
+	long getRemoves();
+	
+	/**
+	 * @return the number of leaf splits
+	 */
+	long getLeafSplits();
+	
+	/**
+	 * @return the number of internal node splits
+	 */
+	long getInternalSplits();
+	
+	/**
+	 * @return the number of times the root split
+	 */
+	long getReroots();
+	
+	/**
+	 * @return the number of range queries
+	 */
+	long getFindCount();
+	
+	/**
+	 * @return the mean range query rate, per second
+	 */
+	double getFindMeanRate();
+	
+	/**
+	 * @return the one-minute range query rate, per second
+	 */
+	double getFindOneMinuteRate();
+	
+	/**
+	 * @return the number of nearest-neighbor queries
+	 */
+	long getKClosestCount();
+	
+	/**
+	 * @return the mean nearest-neighbor query rate, per second
+	 */
+	double getKClosestMeanRate();
+	
+	/**
+	 * @return the one-minute nearest-neighbor query rate, per second
+	 */
+	double getKClosestOneMinuteRate();
+}
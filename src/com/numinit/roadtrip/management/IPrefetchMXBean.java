@@ -0,0 +1,43 @@
+package com.numinit.roadtrip.management;
+
+/**
+ * Management interface for predictive prefetching
+ * @author Morgan Jones
+ *
+ */
+public interface IPrefetchMXBean {
+	/**
+	 * @return the number of ticks served from a prefetch
+	 */
+	long getHits();
+	
+	/**
+	 * @return the number of ticks that had to query the index
+	 */
+	long getMisses();
+	
+	/**
+	 * @return the fraction of ticks served from a prefetch
+	 */
+	double getHitRate();
+	
+	/**
+	 * @return the number of hits that had to query the index for the k closest portals
+	 */
+	long getClosestFallbacks();
+	
+	/**
+	 * @return the number of prefetches scheduled
+	 */
+	long getPrefetches();
+	
+	/**
+	 * @return the number of prefetches dropped because the prefetch threads were busy
+	 */
+	long getSkipped();
+	
+	/**
+	 * @return the number of prefetches evicted without serving a tick
+	 */
+	long getWasted();
+}
@@ -0,0 +1,38 @@
+package com.numinit.roadtrip.management;
+
+/**
+ * Management interface for the AVL-backed top-K machines
+ * @author Morgan Jones
+ *
+ */
+public interface ITopKMXBean {
+	/**
+	 * @return the number of query results read
+	 */
+	long getResults();
+	
+	/**
+	 * @return the number of single left rotations on insert
+	 */
+	long getRotationsRR();
+	
+	/**
+	 * @return the number of right-left double rotations on insert
+	 */
+	long getRotationsRL();
+	
+	/**
+	 * @return the number of single right rotations on insert
+	 */
+	long getRotationsLL();
+	
+	/**
+	 * @return the number of left-right double rotations on insert
+	 */
+	long getRotationsLR();
+	
+	/**
+	 * @return the number of rotations while evicting the maximum
+	 */
+	long getRotationsAR();
+}
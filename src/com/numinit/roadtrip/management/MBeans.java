@@ -0,0 +1,38 @@
+package com.numinit.roadtrip.management;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers this application's MBeans with the platform MBean server
+ * @author Morgan Jones
+ *
+ */
+public class MBeans {
+	/**
+	 * The JMX domain
+	 */
+	public static final String DOMAIN = "com.numinit.roadtrip";
+	
+	/**
+	 * Registers an MBean as DOMAIN:type=type,name=name, replacing any MBean already registered there
+	 * @param type The type
+	 * @param name The name
+	 * @param bean The MBean
+	 */
+	public static void register(String type, String name, Object bean) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(String.format("%s:type=%s,name=%s", DOMAIN, type, name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(bean, objectName);
+		} catch (JMException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
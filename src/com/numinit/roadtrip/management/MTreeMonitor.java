@@ -0,0 +1,169 @@
+package com.numinit.roadtrip.management;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import com.numinit.mtree.MTree;
+import com.numinit.mtree.MTreeShape;
+import com.numinit.mtree.MTreeStatistics;
+
+/**
+ * Publishes an MTree's shape and statistics over JMX.
+ * Shape snapshots walk the whole tree, so one is shared by every attribute read within a second.
+ * The walk holds the lock that guards the tree against writers, so it never sees a split half done.
+ * @author Morgan Jones
+ *
+ */
+public class MTreeMonitor implements IMTreeMXBean {
+	/**
+	 * How long a shape snapshot stays fresh
+	 */
+	private static final long SHAPE_TTL = TimeUnit.SECONDS.toNanos(1);
+	
+	/**
+	 * The tree
+	 */
+	private MTree<?, ?> _tree;
+	
+	/**
+	 * The lock held while walking the tree
+	 */
+	private Lock _lock;
+	
+	/**
+	 * The latest shape snapshot
+	 */
+	private MTreeShape _shape;
+	
+	/**
+	 * When the latest shape snapshot was taken
+	 */
+	private long _shapeTime;
+	
+	/**
+	 * Initializes this MTreeMonitor
+	 * @param tree The tree
+	 * @param lock The lock held while walking the tree
+	 */
+	public MTreeMonitor(MTree<?, ?> tree, Lock lock) {
+		this._tree = tree;
+		this._lock = lock;
+		this._shape = null;
+	}
+	
+	@Override
+	public int getDepth() {
+		return this.getShape().getDepth();
+	}
+	
+	@Override
+	public long getSize() {
+		return this.getShape().getSize();
+	}
+	
+	@Override
+	public long getInternalNodeCount() {
+		return this.getShape().getInternalNodes();
+	}
+	
+	@Override
+	public long getLeafNodeCount() {
+		return this.getShape().getLeafNodes();
+	}
+	
+	@Override
+	public double getFillFactor() {
+		return this.getShape().getFillFactor();
+	}
+	
+	@Override
+	public double getLeafFillFactor() {
+		return this.getShape().getLeafFillFactor();
+	}
+	
+	@Override
+	public double getAverageRadius() {
+		return this.getShape().getAverageRadius();
+	}
+	
+	@Override
+	public long getInserts() {
+		return this.getStatistics().getInserts();
+	}
+	
+	@Override
+	public long getRemoves() {
+		return this.getStatistics().getRemoves();
+	}
+	
+	@Override
+	public long getLeafSplits() {
+		return this.getStatistics().getLeafSplits();
+	}
+	
+	@Override
+	public long getInternalSplits() {
+		return this.getStatistics().getInternalSplits();
+	}
+	
+	@Override
+	public long getReroots() {
+		return this.getStatistics().getReroots();
+	}
+	
+	@Override
+	public long getFindCount() {
+		return this.getStatistics().getFinds().getCount();
+	}
+	
+	@Override
+	public double getFindMeanRate() {
+		return this.getStatistics().getFinds().getMeanRate();
+	}
+	
+	@Override
+	public double getFindOneMinuteRate() {
+		return this.getStatistics().getFinds().getOneMinuteRate();
+	}
+	
+	@Override
+	public long getKClosestCount() {
+		return this.getStatistics().getKClosest().getCount();
+	}
+	
+	@Override
+	public double getKClosestMeanRate() {
+		return this.getStatistics().getKClosest().getMeanRate();
+	}
+	
+	@Override
+	public double getKClosestOneMinuteRate() {
+		return this.getStatistics().getKClosest().getOneMinuteRate();
+	}
+	
+	/**
+	 * Returns the tree's statistics
+	 * @return The statistics
+	 */
+	private MTreeStatistics getStatistics() {
+		return this._tree.getStatistics();
+	}
+	
+	/**
+	 * Returns a recent shape snapshot, taking a new one if the last is stale
+	 * @return The shape
+	 */
+	private synchronized MTreeShape getShape() {
+		long now = System.nanoTime();
+		if (this._shape == null || now - this._shapeTime > SHAPE_TTL) {
+			this._lock.lock();
+			try {
+				this._shape = this._tree.getShape();
+			} finally {
+				this._lock.unlock();
+			}
+			this._shapeTime = now;
+		}
+		return this._shape;
+	}
+}
@@ -0,0 +1,58 @@
+package com.numinit.roadtrip.management;
+
+import com.numinit.roadtrip.predict.PrefetchStatistics;
+
+/**
+ * Publishes PrefetchStatistics over JMX
+ * @author Morgan Jones
+ *
+ */
+public class PrefetchMonitor implements IPrefetchMXBean {
+	/**
+	 * The statistics
+	 */
+	private PrefetchStatistics _statistics;
+	
+	/**
+	 * Initializes this PrefetchMonitor
+	 * @param statistics The statistics
+	 */
+	public PrefetchMonitor(PrefetchStatistics statistics) {
+		this._statistics = statistics;
+	}
+	
+	@Override
+	public long getHits() {
+		return this._statistics.getHits();
+	}
+	
+	@Override
+	public long getMisses() {
+		return this._statistics.getMisses();
+	}
+	
+	@Override
+	public double getHitRate() {
+		return this._statistics.getHitRate();
+	}
+	
+	@Override
+	public long getClosestFallbacks() {
+		return this._statistics.getClosestFallbacks();
+	}
+	
+	@Override
+	public long getPrefetches() {
+		return this._statistics.getPrefetches();
+	}
+	
+	@Override
+	public long getSkipped() {
+		return this._statistics.getSkipped();
+	}
+	
+	@Override
+	public long getWasted() {
+		return this._statistics.getWasted();
+	}
+}
@@ -0,0 +1,53 @@
+package com.numinit.roadtrip.management;
+
+import com.numinit.avl.TopKStatistics;
+import com.numinit.avl.tree.AVL;
+
+/**
+ * Publishes TopKStatistics over JMX
+ * @author Morgan Jones
+ *
+ */
+public class TopKMonitor implements ITopKMXBean {
+	/**
+	 * The statistics
+	 */
+	private TopKStatistics _statistics;
+	
+	/**
+	 * Initializes this TopKMonitor
+	 */
+	public TopKMonitor() {
+		this._statistics = TopKStatistics.getInstance();
+	}
+	
+	@Override
+	public long getResults() {
+		return this._statistics.getResults();
+	}
+	
+	@Override
+	public long getRotationsRR() {
+		return this._statistics.getRotations(AVL.AVL_ROTATE_RR);
+	}
+	
+	@Override
+	public long getRotationsRL() {
+		return this._statistics.getRotations(AVL.AVL_ROTATE_RL);
+	}
+	
+	@Override
+	public long getRotationsLL() {
+		return this._statistics.getRotations(AVL.AVL_ROTATE_LL);
+	}
+	
+	@Override
+	public long getRotationsLR() {
+		return this._statistics.getRotations(AVL.AVL_ROTATE_LR);
+	}
+	
+	@Override
+	public long getRotationsAR() {
+		return this._statistics.getRotations(AVL.AVL_ROTATE_AR);
+	}
+}
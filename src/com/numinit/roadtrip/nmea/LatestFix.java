@@ -0,0 +1,106 @@
+package com.numinit.roadtrip.nmea;
+
+import java.io.IOException;
+
+/**
+ * A single-slot holder for the newest fix. A reader offers every fix it parses and never blocks;
+ * a consumer takes the newest one when it's ready for it, and any fixes offered in between are dropped.
+ * @author Morgan Jones
+ *
+ */
+public class LatestFix {
+	/**
+	 * The newest fix nobody has taken, or null
+	 */
+	private NMEAFix _fix;
+	
+	/**
+	 * Why the reader stopped, once it has
+	 */
+	private IOException _error;
+	
+	/**
+	 * Fixes offered and taken
+	 */
+	private long _offered, _taken;
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("#<%s[offered=%d,taken=%d,dropped=%d]@%#08x>", this.getClass().getSimpleName(),
+				this._offered, this._taken, this.getDropped(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Starts a daemon thread that reads fixes from parser into this LatestFix until the parser fails
+	 * @param parser The parser
+	 * @return The thread
+	 */
+	public Thread startReading(final NMEAChannelParser parser) {
+		Thread ret = new Thread(() -> {
+			try {
+				while (true) {
+					this.offer(parser.getNextFix());
+				}
+			} catch (IOException e) {
+				this.close(e);
+			}
+		}, "nmea-reader");
+		ret.setDaemon(true);
+		ret.start();
+		return ret;
+	}
+	
+	/**
+	 * Replaces the newest fix
+	 * @param fix The fix
+	 */
+	public synchronized void offer(NMEAFix fix) {
+		this._fix = fix;
+		this._offered++;
+		this.notifyAll();
+	}
+	
+	/**
+	 * Records that no more fixes are coming. Fixes not yet taken can still be.
+	 * @param error Why
+	 */
+	public synchronized void close(IOException error) {
+		if (this._error == null) {
+			this._error = error;
+		}
+		this.notifyAll();
+	}
+	
+	/**
+	 * Waits for a fix newer than the last one taken, and takes it
+	 * @return The fix
+	 * @throws IOException          if the reader stopped, and there's nothing left to take
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized NMEAFix take() throws IOException, InterruptedException {
+		while (this._fix == null) {
+			if (this._error != null) {
+				throw this._error;
+			}
+			this.wait();
+		}
+		NMEAFix ret = this._fix;
+		this._fix = null;
+		this._taken++;
+		return ret;
+	}
+	
+	/**
+	 * @return the number of fixes offered
+	 */
+	public synchronized long getOffered() {
+		return this._offered;
+	}
+	
+	/**
+	 * @return the number of fixes offered and replaced before anyone took them
+	 */
+	public synchronized long getDropped() {
+		return this._offered - this._taken - (this._fix != null ? 1 : 0);
+	}
+}
@@ -0,0 +1,633 @@
+package com.numinit.roadtrip.nmea;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+import com.numinit.roadtrip.index.Geo2D;
+
+/**
+ * Reads GPS fixes from a channel of NMEA sentences without decoding them to Strings.
+ * Positions come from GGA and RMC sentences from any GNSS talker (GP, GN, GL, ...), and speed and course from RMC and VTG;
+ * a receiver sends several of these each epoch, so a fix is returned for the first position in each epoch,
+ * carrying the latest speed and course seen so far.
+ * Bytes are read into a reusable direct buffer and fed through a state machine that tokenizes fields as they arrive,
+ * accumulating numbers as a mantissa and a count of decimals, so a sentence is never copied or rescanned.
+ * Sentences without a valid checksum are dropped.
+ * @author Morgan Jones
+ *
+ */
+public class NMEAChannelParser {
+	/**
+	 * The default buffer size, in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+	
+	/**
+	 * The longest sentence we'll accept, in bytes between the '$' and the '*'. The standard limit is 82 including both.
+	 */
+	public static final int MAX_SENTENCE_LENGTH = 128;
+	
+	/**
+	 * The most fields we'll record per sentence; any after this are checksummed but ignored
+	 */
+	private static final int MAX_FIELDS = 24;
+	
+	/**
+	 * The most digits we'll accumulate into a field's mantissa. A field with more is marked as having OVERFLOWED digits,
+	 * and reads as empty; a sentence whose time or position overflows is dropped.
+	 */
+	private static final int MAX_DIGITS = 18, OVERFLOWED = MAX_DIGITS + 1;
+	
+	/**
+	 * The most decimals we'll take in a time or coordinate field, so splitting it on its scale can't overflow.
+	 * Receivers send a few; this is well past nanoseconds and millimeters.
+	 */
+	private static final int MAX_DECIMALS = 9;
+	
+	/**
+	 * Powers of 10 up to MAX_DIGITS
+	 */
+	private static final long[] POW10 = new long[MAX_DIGITS + 1];
+	
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+	}
+	
+	/**
+	 * Clears the second character of a packed address, so any G? talker matches
+	 */
+	private static final long TALKER_MASK = ~(0xffL << 24);
+	
+	/**
+	 * Sentence types, as the five characters of their address packed into a long, with the talker masked
+	 */
+	private static final long GGA = address("G?GGA") & TALKER_MASK, RMC = address("G?RMC") & TALKER_MASK, VTG = address("G?VTG") & TALKER_MASK;
+	
+	/**
+	 * Milliseconds in a day
+	 */
+	private static final long DAY = 86400000L;
+	
+	/**
+	 * Parser states
+	 */
+	private static final int STATE_SEEK = 0, STATE_FIELDS = 1, STATE_CHECKSUM_HIGH = 2, STATE_CHECKSUM_LOW = 3;
+	
+	/**
+	 * The channel
+	 */
+	private ReadableByteChannel _channel;
+	
+	/**
+	 * The buffer; between reads it's flipped, holding bytes we haven't looked at yet
+	 */
+	private ByteBuffer _buffer;
+	
+	/**
+	 * The state, the running checksum, the checksum the sentence claims, and the sentence's length so far
+	 */
+	private int _state, _checksum, _expected, _length;
+	
+	/**
+	 * The field being read
+	 */
+	private int _field;
+	
+	/**
+	 * The field being read's mantissa, and its first byte (or the whole address), kept out of the arrays until it ends
+	 */
+	private long _fieldMantissa, _fieldFirst;
+	
+	/**
+	 * The field being read's digits, decimals and length
+	 */
+	private int _fieldDigits, _fieldDecimals, _fieldLengthSoFar;
+	
+	/**
+	 * Each field's digits as an integer, ignoring the decimal point and any sign
+	 */
+	private long[] _mantissa;
+	
+	/**
+	 * Each field's number of digits, number of those after the decimal point (or -1 if there's no point), and length
+	 */
+	private int[] _digits, _decimals, _fieldLength;
+	
+	/**
+	 * Each field's first byte, or the whole field packed into a long for the address
+	 */
+	private long[] _first;
+	
+	/**
+	 * Complete sentences seen, and those dropped for bad checksums, overflows or bad values
+	 */
+	private long _sentences, _checksumErrors, _malformed;
+	
+	/**
+	 * Sentences seen since the last fix, for NMEAFixEvent
+	 */
+	private int _skipped;
+	
+	/**
+	 * The latest speed over ground in meters per second and course over ground in degrees, or NaN
+	 */
+	private double _speed, _course;
+	
+	/**
+	 * The latest date from an RMC sentence in milliseconds since the epoch (or -1), and the time of day it was sent at
+	 */
+	private long _date, _dateTimeOfDay;
+	
+	/**
+	 * The time of day of the last fix returned, so we return one fix per epoch
+	 */
+	private long _lastTimeOfDay;
+	
+	/**
+	 * The event for the sentence being parsed
+	 */
+	private NMEAFixEvent _event;
+	
+	/**
+	 * Initializes this NMEAChannelParser with a blocking channel
+	 * @param channel The channel
+	 */
+	public NMEAChannelParser(ReadableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Initializes this NMEAChannelParser with a blocking channel
+	 * @param channel    The channel
+	 * @param bufferSize The buffer size, in bytes
+	 */
+	public NMEAChannelParser(ReadableByteChannel channel, int bufferSize) {
+		if (channel instanceof SelectableChannel && !((SelectableChannel)channel).isBlocking()) {
+			throw new IllegalArgumentException("channel must be blocking");
+		} else if (bufferSize <= 0) {
+			throw new IllegalArgumentException("buffer size must be > 0");
+		}
+		this._channel = channel;
+		this._buffer = ByteBuffer.allocateDirect(bufferSize);
+		this._buffer.flip();
+		this._mantissa = new long[MAX_FIELDS];
+		this._digits = new int[MAX_FIELDS];
+		this._decimals = new int[MAX_FIELDS];
+		this._fieldLength = new int[MAX_FIELDS];
+		this._first = new long[MAX_FIELDS];
+		this._state = STATE_SEEK;
+		this._event = new NMEAFixEvent();
+		this._speed = this._course = Double.NaN;
+		this._date = this._dateTimeOfDay = this._lastTimeOfDay = -1;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[sentences=%d,checksumErrors=%d,malformed=%d]@%#08x>", this.getClass().getSimpleName(),
+				this.getSentences(), this.getChecksumErrors(), this.getMalformed(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Returns the next point from the NMEA stream
+	 * @return The next point
+	 * @throws IOException if the channel fails or reaches its end
+	 */
+	public Geo2D getNextPoint() throws IOException {
+		return this.getNextFix().getPoint();
+	}
+	
+	/**
+	 * Returns the next fix from the NMEA stream
+	 * @return The next fix
+	 * @throws IOException if the channel fails or reaches its end
+	 */
+	public NMEAFix getNextFix() throws IOException {
+		ByteBuffer buffer = this._buffer;
+		while (true) {
+			for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+				if (this._state == STATE_FIELDS && (i = this.fields(buffer, i, limit)) >= limit) {
+					break;
+				} else if (this.accept(buffer.get(i))) {
+					buffer.position(i + 1);
+					NMEAFix ret = this.sentence();
+					if (ret != null) {
+						return ret;
+					}
+				}
+			}
+			
+			// Out of bytes; refill
+			buffer.clear();
+			int read;
+			do {
+				read = this._channel.read(buffer);
+			} while (read == 0);
+			buffer.flip();
+			if (read < 0) {
+				throw new IOException("eof");
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of complete sentences seen, valid or not
+	 */
+	public long getSentences() {
+		return this._sentences;
+	}
+	
+	/**
+	 * @return the number of sentences dropped because their checksum didn't match
+	 */
+	public long getChecksumErrors() {
+		return this._checksumErrors;
+	}
+	
+	/**
+	 * @return the number of sentences dropped because they were too long, or held impossible values
+	 */
+	public long getMalformed() {
+		return this._malformed;
+	}
+	
+	/**
+	 * Feeds a byte to the state machine
+	 * @param b The byte
+	 * @return True if it completed a sentence with a valid checksum
+	 */
+	private boolean accept(byte b) {
+		if (b == '$') {
+			// Always start over; a sentence cut off by a new one is just lost
+			if (this._state != STATE_SEEK) {
+				this._malformed++;
+			}
+			this._event.begin();
+			this._state = STATE_FIELDS;
+			this._checksum = 0;
+			this._length = 0;
+			this._field = -1;
+			this.nextField();
+			return false;
+		}
+		
+		switch (this._state) {
+		case STATE_FIELDS:
+			if (b == '*') {
+				this.endField();
+				this._state = STATE_CHECKSUM_HIGH;
+			} else {
+				// fields() stops on anything else only at the end of a line, or when the sentence runs on too long
+				this._malformed++;
+				this._state = STATE_SEEK;
+			}
+			return false;
+		case STATE_CHECKSUM_HIGH:
+		case STATE_CHECKSUM_LOW:
+			int nybble = hex(b);
+			if (nybble < 0) {
+				this._malformed++;
+				this._state = STATE_SEEK;
+				return false;
+			} else if (this._state == STATE_CHECKSUM_HIGH) {
+				this._expected = nybble << 4;
+				this._state = STATE_CHECKSUM_LOW;
+				return false;
+			}
+			
+			this._state = STATE_SEEK;
+			this._sentences++;
+			if ((this._expected | nybble) != this._checksum) {
+				this._checksumErrors++;
+				return false;
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Moves on to the next field, clearing it
+	 */
+	private void nextField() {
+		this._field++;
+		this._fieldMantissa = 0;
+		this._fieldFirst = 0;
+		this._fieldDigits = 0;
+		this._fieldDecimals = -1;
+		this._fieldLengthSoFar = 0;
+	}
+	
+	/**
+	 * Stores the field being read, if there's room for it
+	 */
+	private void endField() {
+		int f = this._field;
+		if (f < MAX_FIELDS) {
+			this._mantissa[f] = this._fieldMantissa;
+			this._first[f] = this._fieldFirst;
+			this._digits[f] = this._fieldDigits;
+			this._decimals[f] = this._fieldDecimals;
+			this._fieldLength[f] = this._fieldLengthSoFar;
+		}
+	}
+	
+	/**
+	 * Reads field bytes until something fields can't handle: the end of the fields, the end of a line, or the start of a sentence.
+	 * This is where nearly every byte goes, so it works on locals and only writes them back when it stops.
+	 * @param buffer The buffer
+	 * @param i      The index of the first byte
+	 * @param limit  The buffer's limit
+	 * @return The index of the byte that stopped it, or limit
+	 */
+	private int fields(ByteBuffer buffer, int i, int limit) {
+		int checksum = this._checksum, length = this._length, field = this._field;
+		long mantissa = this._fieldMantissa, first = this._fieldFirst;
+		int digits = this._fieldDigits, decimals = this._fieldDecimals, fieldLength = this._fieldLengthSoFar;
+		
+		for (; i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+					if (decimals >= 0) {
+						decimals++;
+					}
+				} else {
+					digits = OVERFLOWED;
+				}
+			} else if (b == ',') {
+				// Store this field and start the next
+				if (field < MAX_FIELDS) {
+					this._mantissa[field] = mantissa;
+					this._first[field] = first;
+					this._digits[field] = digits;
+					this._decimals[field] = decimals;
+					this._fieldLength[field] = fieldLength;
+				}
+				field++;
+				mantissa = first = 0;
+				digits = fieldLength = 0;
+				decimals = -1;
+				checksum ^= b;
+				if (++length > MAX_SENTENCE_LENGTH) {
+					break;
+				}
+				continue;
+			} else if (b == '.') {
+				decimals = 0;
+			} else if (b == '*' || b == '$' || b == '\r' || b == '\n') {
+				break;
+			}
+			
+			if (field == 0) {
+				// The address; pack it all
+				first = (first << 8) | (b & 0xff);
+			} else if (fieldLength == 0) {
+				first = b & 0xff;
+			}
+			fieldLength++;
+			checksum ^= b & 0xff;
+			if (++length > MAX_SENTENCE_LENGTH) {
+				break;
+			}
+		}
+		
+		this._checksum = checksum;
+		this._length = length;
+		this._field = field;
+		this._fieldMantissa = mantissa;
+		this._fieldFirst = first;
+		this._fieldDigits = digits;
+		this._fieldDecimals = decimals;
+		this._fieldLengthSoFar = fieldLength;
+		return i;
+	}
+	
+	/**
+	 * Interprets a sentence with a valid checksum
+	 * @return A fix, or null if the sentence wasn't a new position
+	 */
+	private NMEAFix sentence() {
+		long address = this._fieldLength[0] == 5 ? this._first[0] & TALKER_MASK : 0;
+		Geo2D point = null;
+		long timeOfDay = -1;
+		if (address == GGA) {
+			// $G?GGA,time,lat,N|S,lng,E|W,quality,...; quality 0 is no fix
+			if (this.isOverflowed(1)) {
+				this._malformed++;
+			} else if (!this.hasNumber(6) || this._mantissa[6] != 0) {
+				timeOfDay = this.timeOfDay(1);
+				point = this.position(2, 3, 4, 5);
+			}
+		} else if (address == RMC) {
+			// $G?RMC,time,A|V,lat,N|S,lng,E|W,knots,course,ddmmyy,...; V is no fix
+			if (this.isOverflowed(1)) {
+				this._malformed++;
+			} else if (this._field >= 9 && this._first[2] == 'A') {
+				timeOfDay = this.timeOfDay(1);
+				this.velocity(7, 8);
+				long date = this.date(9);
+				if (date >= 0 && timeOfDay >= 0) {
+					this._date = date;
+					this._dateTimeOfDay = timeOfDay;
+				}
+				point = this.position(3, 4, 5, 6);
+			}
+		} else if (address == VTG) {
+			// $G?VTG,course,T,course,M,knots,N,kph,K[,mode]; mode N is no fix
+			if (this._field < 9 || this._first[9] != 'N') {
+				this.velocity(5, 1);
+			}
+		}
+		
+		// Only the first position each epoch is news
+		if (point != null && timeOfDay >= 0 && timeOfDay == this._lastTimeOfDay) {
+			point = null;
+		}
+		if (point == null) {
+			this._skipped++;
+			return null;
+		}
+		
+		NMEAFix ret = new NMEAFix(point, timeOfDay, this.time(timeOfDay), this._speed, this._course);
+		this._lastTimeOfDay = timeOfDay;
+		if (this._event.shouldCommit()) {
+			this._event.skipped = this._skipped;
+			this._event.length = this._length;
+			this._event.latitude = point.getLat();
+			this._event.longitude = point.getLng();
+			this._event.speed = ret.getSpeed();
+			this._event.course = ret.getCourse();
+			this._event.commit();
+		}
+		this._skipped = 0;
+		return ret;
+	}
+	
+	/**
+	 * Updates the speed and course from their fields; empty fields make them unknown
+	 * @param knots  The speed field, in knots
+	 * @param course The course field, in degrees from true north
+	 */
+	private void velocity(int knots, int course) {
+		this._speed = this.hasNumber(knots) ? this.number(knots) * NMEAFix.KNOT : Double.NaN;
+		this._course = this.hasNumber(course) ? this.number(course) % 360.0d : Double.NaN;
+	}
+	
+	/**
+	 * Returns a time of day from the latest date, allowing for midnight passing since the date was sent
+	 * @param timeOfDay The time of day
+	 * @return Milliseconds since the epoch, or -1 if there's no date or time
+	 */
+	private long time(long timeOfDay) {
+		if (this._date < 0 || timeOfDay < 0) {
+			return -1;
+		}
+		return this._date + timeOfDay + (timeOfDay < this._dateTimeOfDay - DAY / 2 ? DAY : 0);
+	}
+	
+	/**
+	 * Reads a position from ddmm.mmmm and dddmm.mmmm fields and their hemispheres
+	 * @param lat   The latitude field
+	 * @param latNS The N|S field
+	 * @param lng   The longitude field
+	 * @param lngEW The E|W field
+	 * @return The position, or null if any field is empty, has too many digits or is out of range
+	 */
+	private Geo2D position(int lat, int latNS, int lng, int lngEW) {
+		if (this.isOverflowed(lat) || this.isOverflowed(lng)) {
+			this._malformed++;
+			return null;
+		} else if (this._field < lngEW || !this.hasNumber(lat) || !this.hasNumber(lng)) {
+			// No fix yet
+			return null;
+		}
+		
+		double latDegrees = this.degrees(lat), lngDegrees = this.degrees(lng);
+		long ns = this._first[latNS], ew = this._first[lngEW];
+		if (Double.isNaN(latDegrees) || latDegrees < 0 || latDegrees >= 90.0d || Double.isNaN(lngDegrees) || lngDegrees < 0 || lngDegrees >= 180.0d ||
+				(ns != 'N' && ns != 'S') || (ew != 'E' && ew != 'W')) {
+			this._malformed++;
+			return null;
+		}
+		return new Geo2D(ns == 'N' ? latDegrees : -latDegrees, ew == 'E' ? lngDegrees : -lngDegrees);
+	}
+	
+	/**
+	 * Returns whether a field holds a number
+	 * @param f The field
+	 * @return True if it has digits, and not too many
+	 */
+	private boolean hasNumber(int f) {
+		return f <= this._field && f < MAX_FIELDS && this._digits[f] > 0 && this._digits[f] != OVERFLOWED;
+	}
+	
+	/**
+	 * Returns whether a field has more digits than we could hold
+	 * @param f The field
+	 * @return True if it does
+	 */
+	private boolean isOverflowed(int f) {
+		return f <= this._field && f < MAX_FIELDS && this._digits[f] == OVERFLOWED;
+	}
+	
+	/**
+	 * Returns a field as a number
+	 * @param f The field
+	 * @return The number
+	 */
+	private double number(int f) {
+		return this._decimals[f] > 0 ? (double)this._mantissa[f] / POW10[this._decimals[f]] : this._mantissa[f];
+	}
+	
+	/**
+	 * Converts a field in hhmmss.sss format to milliseconds since midnight
+	 * @param f The field
+	 * @return The time of day, or -1 if the field is empty, out of range or has too many decimals
+	 */
+	private long timeOfDay(int f) {
+		if (!this.hasNumber(f) || this._decimals[f] > MAX_DECIMALS) {
+			return -1;
+		}
+		long scale = POW10[Math.max(this._decimals[f], 0)];
+		long hhmmss = this._mantissa[f] / scale, fraction = this._mantissa[f] - hhmmss * scale;
+		long hours = hhmmss / 10000, minutes = hhmmss / 100 % 100, seconds = hhmmss % 100;
+		if (hours >= 24 || minutes >= 60 || seconds >= 61) {
+			return -1;
+		}
+		return ((hours * 60 + minutes) * 60 + seconds) * 1000 + fraction * 1000 / scale;
+	}
+	
+	/**
+	 * Converts a field in ddmmyy format to milliseconds since the epoch, taking years to be 20yy
+	 * @param f The field
+	 * @return The date, or -1 if the field is empty or not a date
+	 */
+	private long date(int f) {
+		if (!this.hasNumber(f) || this._digits[f] != 6 || this._decimals[f] >= 0) {
+			return -1;
+		}
+		long ddmmyy = this._mantissa[f];
+		try {
+			return LocalDate.of(2000 + (int)(ddmmyy % 100), (int)(ddmmyy / 100 % 100), (int)(ddmmyy / 10000)).toEpochDay() * DAY;
+		} catch (DateTimeException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Converts a field in [d]ddmm.mmmm format to degrees, splitting degrees from minutes on the integer mantissa
+	 * @param f The field
+	 * @return The degrees, or NaN if the minutes are 60 or more or the field has too many decimals
+	 */
+	private double degrees(int f) {
+		if (this._decimals[f] > MAX_DECIMALS) {
+			return Double.NaN;
+		}
+		long scale = POW10[Math.max(this._decimals[f], 0)];
+		long degrees = this._mantissa[f] / (100 * scale), minutes = this._mantissa[f] - degrees * 100 * scale;
+		if (minutes >= 60 * scale) {
+			return Double.NaN;
+		}
+		return degrees + (double)minutes / (scale * 60);
+	}
+	
+	/**
+	 * Returns the value of a hex digit
+	 * @param b The digit
+	 * @return The value, or -1 if b isn't a hex digit
+	 */
+	private static int hex(byte b) {
+		if (b >= '0' && b <= '9') {
+			return b - '0';
+		} else if (b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		} else if (b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		} else {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Packs a sentence address the way fields does
+	 * @param address The address, like GPGGA
+	 * @return The packed address
+	 */
+	private static long address(String address) {
+		long ret = 0;
+		for (int i = 0; i < address.length(); i++) {
+			ret = (ret << 8) | (address.charAt(i) & 0xff);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,97 @@
+package com.numinit.roadtrip.nmea;
+
+import com.numinit.roadtrip.index.Geo2D;
+
+/**
+ * A GPS fix: where the receiver was, when, and how it was moving
+ * @author Morgan Jones
+ *
+ */
+public class NMEAFix {
+	/**
+	 * Meters per second in a knot
+	 */
+	public static final double KNOT = 1852.0d / 3600.0d;
+	
+	/**
+	 * The position
+	 */
+	private final Geo2D _point;
+	
+	/**
+	 * Milliseconds since UTC midnight, and since the epoch (or -1 if no date has been seen)
+	 */
+	private final long _timeOfDay, _time;
+	
+	/**
+	 * Speed over ground in meters per second, and course over ground in degrees from true north; NaN if unknown
+	 */
+	private final double _speed, _course;
+	
+	/**
+	 * Initializes this NMEAFix
+	 * @param point     The position
+	 * @param timeOfDay Milliseconds since UTC midnight, or -1 if unknown
+	 * @param time      Milliseconds since the epoch, or -1 if unknown
+	 * @param speed     Speed over ground in meters per second, or NaN if unknown
+	 * @param course    Course over ground in degrees from true north, or NaN if unknown
+	 */
+	public NMEAFix(Geo2D point, long timeOfDay, long time, double speed, double course) {
+		if (point == null) {
+			throw new IllegalArgumentException("point must not be null");
+		}
+		this._point = point;
+		this._timeOfDay = timeOfDay;
+		this._time = time;
+		this._speed = speed;
+		this._course = course;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[time=%d,speed=%.2f,course=%.1f]@%#08x:%s>", this.getClass().getSimpleName(),
+				this.getTime(), this.getSpeed(), this.getCourse(), System.identityHashCode(this), this.getPoint());
+	}
+	
+	/**
+	 * @return the position
+	 */
+	public Geo2D getPoint() {
+		return this._point;
+	}
+	
+	/**
+	 * @return milliseconds since UTC midnight, or -1 if unknown
+	 */
+	public long getTimeOfDay() {
+		return this._timeOfDay;
+	}
+	
+	/**
+	 * @return milliseconds since the epoch, or -1 if the receiver hasn't sent a date
+	 */
+	public long getTime() {
+		return this._time;
+	}
+	
+	/**
+	 * @return speed over ground in meters per second, or NaN if unknown
+	 */
+	public double getSpeed() {
+		return this._speed;
+	}
+	
+	/**
+	 * @return course over ground in degrees from true north, or NaN if unknown
+	 */
+	public double getCourse() {
+		return this._course;
+	}
+	
+	/**
+	 * @return true if both speed and course are known
+	 */
+	public boolean hasVelocity() {
+		return !Double.isNaN(this._speed) && !Double.isNaN(this._course);
+	}
+}
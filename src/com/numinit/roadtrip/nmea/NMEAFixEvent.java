@@ -0,0 +1,54 @@
+package com.numinit.roadtrip.nmea;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for parsing a GPS fix out of an NMEA stream
+ * @author Morgan Jones
+ *
+ */
+@Name("com.numinit.roadtrip.NMEAFix")
+@Label("NMEA Fix")
+@Category({"RoadTrip", "NMEA"})
+@Description("Parsing a GPS fix from an NMEA sentence, not counting the wait for it to arrive")
+public class NMEAFixEvent extends Event {
+	/**
+	 * The number of lines skipped before the fix
+	 */
+	@Label("Skipped Lines")
+	public int skipped;
+	
+	/**
+	 * The sentence's length, in characters
+	 */
+	@Label("Length")
+	public int length;
+	
+	/**
+	 * The fix's latitude, in degrees
+	 */
+	@Label("Latitude")
+	public double latitude;
+	
+	/**
+	 * The fix's longitude, in degrees
+	 */
+	@Label("Longitude")
+	public double longitude;
+	
+	/**
+	 * The fix's speed over ground, in meters per second
+	 */
+	@Label("Speed")
+	public double speed;
+	
+	/**
+	 * The fix's course over ground, in degrees from true north
+	 */
+	@Label("Course")
+	public double course;
+}
@@ -36,6 +36,8 @@ public class NMEAParser {
 	 */
 	public Geo2D getNextPoint() throws IOException {
 		Matcher m = null;
+		NMEAFixEvent event = new NMEAFixEvent();
+		int skipped = -1, length = 0;
 		
 		// Advance to the right line
 		while (m == null) {
@@ -43,6 +45,11 @@ public class NMEAParser {
 			if (line == null) {
 				throw new IOException("eof");
 			}
+			
+			// Only time the parse, not the wait for the line
+			event.begin();
+			skipped++;
+			length = line.length();
 			Matcher potential = this._gpsFixPattern.matcher(line);
 			if (potential.find()) {
 				m = potential;
@@ -65,7 +72,15 @@ public class NMEAParser {
 			lngDegrees += lngDecimal;
 		}
 
-		return new Geo2D((m.group("latns").charAt(0) == 'N' ? 1 : -1) * latDegrees, (m.group("lngew").charAt(0) == 'E' ? 1 : -1) * lngDegrees);
+		Geo2D ret = new Geo2D((m.group("latns").charAt(0) == 'N' ? 1 : -1) * latDegrees, (m.group("lngew").charAt(0) == 'E' ? 1 : -1) * lngDegrees);
+		if (event.shouldCommit()) {
+			event.skipped = skipped;
+			event.length = length;
+			event.latitude = ret.getLat();
+			event.longitude = ret.getLng();
+			event.commit();
+		}
+		return ret;
 	}
 	
 	/**
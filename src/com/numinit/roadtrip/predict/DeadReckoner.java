@@ -0,0 +1,230 @@
+package com.numinit.roadtrip.predict;
+
+import com.numinit.roadtrip.index.Geo2D;
+import com.numinit.roadtrip.nmea.NMEAFix;
+
+/**
+ * Smooths fixes with a constant-velocity Kalman filter and predicts where the vehicle will be.
+ *
+ * The filter works in meters east and north of its latest estimate, and re-centers on every fix, so the flat-earth
+ * approximation only has to hold between two fixes. Both axes see the same updates with the same noise, so they
+ * share one covariance matrix.
+ * @author Morgan Jones
+ *
+ */
+public class DeadReckoner {
+	/**
+	 * The mean radius of the earth, in meters
+	 */
+	private static final double EARTH_RADIUS = 6371000.0d;
+	
+	/**
+	 * Standard deviations of a fix's position (meters) and velocity (m/s), and of the vehicle's acceleration (m/s^2)
+	 */
+	public static final double POSITION_NOISE = 5.0d, VELOCITY_NOISE = 0.5d, ACCELERATION_NOISE = 2.0d;
+	
+	/**
+	 * Velocity variance before we've seen a velocity (m^2/s^2)
+	 */
+	private static final double UNKNOWN_VELOCITY_VARIANCE = 100.0d;
+	
+	/**
+	 * The longest gap between fixes we'll filter across, in seconds; after a longer one we start over
+	 */
+	public static final double MAX_GAP = 10.0d;
+	
+	/**
+	 * The latest estimate, which the local frame is centered on, or null before the first fix
+	 */
+	private Geo2D _origin;
+	
+	/**
+	 * Velocity east and north, in meters per second
+	 */
+	private double _vEast, _vNorth;
+	
+	/**
+	 * The covariance of [position, velocity] along either axis
+	 */
+	private double _pp, _pv, _vv;
+	
+	/**
+	 * The latest fix's time (milliseconds since the epoch or UTC midnight), and arrival time (System.nanoTime())
+	 */
+	private long _time = -1, _timeOfDay = -1, _nanos;
+	
+	/**
+	 * Seconds between the last two fixes, or -1 if we've started over since
+	 */
+	private double _interval = -1;
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[vEast=%.2f,vNorth=%.2f,sigma=%.1fm]@%#08x:%s>", this.getClass().getSimpleName(),
+				this._vEast, this._vNorth, Math.sqrt(this._pp), System.identityHashCode(this), this._origin);
+	}
+	
+	/**
+	 * Filters in a fix
+	 * @param fix   The fix
+	 * @param nanos When it arrived, from System.nanoTime(); used for fixes without a time
+	 * @return The smoothed position
+	 */
+	public Geo2D update(NMEAFix fix, long nanos) {
+		double dt = this.elapsed(fix, nanos);
+		this._time = fix.getTime();
+		this._timeOfDay = fix.getTimeOfDay();
+		this._nanos = nanos;
+		
+		if (this._origin == null || !(dt >= 0 && dt <= MAX_GAP)) {
+			this.reset(fix);
+			this._interval = -1;
+			return this._origin;
+		}
+		this._interval = dt;
+		
+		// Predict: x += v dt, P = F P F' + Q for white-noise acceleration
+		double q = ACCELERATION_NOISE * ACCELERATION_NOISE, dt2 = dt * dt;
+		double pp = this._pp + 2.0d * dt * this._pv + dt2 * this._vv + q * dt2 * dt2 / 4.0d;
+		double pv = this._pv + dt * this._vv + q * dt2 * dt / 2.0d;
+		double vv = this._vv + q * dt2;
+		double east = this._vEast * dt, north = this._vNorth * dt;
+		
+		// Correct with the measured position, relative to where we were
+		Geo2D point = fix.getPoint();
+		double lat0 = Geo2D.toRadians(this._origin.getLat());
+		double dLng = point.getLng() - this._origin.getLng();
+		dLng -= 360.0d * Math.rint(dLng / 360.0d);
+		double zNorth = Geo2D.toRadians(point.getLat() - this._origin.getLat()) * EARTH_RADIUS;
+		double zEast = Geo2D.toRadians(dLng) * EARTH_RADIUS * Math.cos(lat0);
+		double s = pp + POSITION_NOISE * POSITION_NOISE, kp = pp / s, kv = pv / s;
+		double yEast = zEast - east, yNorth = zNorth - north;
+		east += kp * yEast;
+		north += kp * yNorth;
+		this._vEast += kv * yEast;
+		this._vNorth += kv * yNorth;
+		vv -= kv * pv;
+		pv *= 1.0d - kp;
+		pp *= 1.0d - kp;
+		
+		// Correct with the measured velocity, if the receiver sent one
+		if (fix.hasVelocity()) {
+			double course = Geo2D.toRadians(fix.getCourse());
+			s = vv + VELOCITY_NOISE * VELOCITY_NOISE;
+			kp = pv / s;
+			kv = vv / s;
+			yEast = fix.getSpeed() * Math.sin(course) - this._vEast;
+			yNorth = fix.getSpeed() * Math.cos(course) - this._vNorth;
+			east += kp * yEast;
+			north += kp * yNorth;
+			this._vEast += kv * yEast;
+			this._vNorth += kv * yNorth;
+			pp -= kp * pv;
+			pv -= kp * vv;
+			vv -= kv * vv;
+		}
+		
+		this._pp = pp;
+		this._pv = pv;
+		this._vv = vv;
+		this._origin = this.offset(east, north);
+		return this._origin;
+	}
+	
+	/**
+	 * Predicts where the vehicle will be
+	 * @param seconds How long after the latest fix
+	 * @return The position, or null before the first fix
+	 */
+	public Geo2D predict(double seconds) {
+		if (this._origin == null) {
+			return null;
+		}
+		return this.offset(this._vEast * seconds, this._vNorth * seconds);
+	}
+	
+	/**
+	 * @return the smoothed position, or null before the first fix
+	 */
+	public Geo2D getPosition() {
+		return this._origin;
+	}
+	
+	/**
+	 * @return seconds between the last two fixes, by the receiver's clock if it sends one, or -1 after starting over
+	 */
+	public double getInterval() {
+		return this._interval;
+	}
+	
+	/**
+	 * @return the smoothed speed, in meters per second
+	 */
+	public double getSpeed() {
+		return Math.hypot(this._vEast, this._vNorth);
+	}
+	
+	/**
+	 * @return the smoothed course, in degrees from true north
+	 */
+	public double getCourse() {
+		return (Geo2D.toDegrees(Math.atan2(this._vEast, this._vNorth)) + 360.0d) % 360.0d;
+	}
+	
+	/**
+	 * @return the standard deviation of the smoothed position, in meters
+	 */
+	public double getUncertainty() {
+		return Math.sqrt(this._pp);
+	}
+	
+	/**
+	 * Returns seconds since the previous fix, by the receiver's clock if both fixes have a time and ours if not
+	 * @param fix   The fix
+	 * @param nanos When it arrived
+	 * @return The time, or -1 before the first fix
+	 */
+	private double elapsed(NMEAFix fix, long nanos) {
+		if (this._origin == null) {
+			return -1;
+		} else if (fix.getTime() >= 0 && this._time >= 0) {
+			return (fix.getTime() - this._time) / 1.0e3d;
+		} else if (fix.getTimeOfDay() >= 0 && this._timeOfDay >= 0) {
+			return Math.floorMod(fix.getTimeOfDay() - this._timeOfDay, 86400000L) / 1.0e3d;
+		} else {
+			return (nanos - this._nanos) / 1.0e9d;
+		}
+	}
+	
+	/**
+	 * Starts over from a fix
+	 * @param fix The fix
+	 */
+	private void reset(NMEAFix fix) {
+		this._origin = fix.getPoint();
+		this._pp = POSITION_NOISE * POSITION_NOISE;
+		this._pv = 0;
+		if (fix.hasVelocity()) {
+			double course = Geo2D.toRadians(fix.getCourse());
+			this._vEast = fix.getSpeed() * Math.sin(course);
+			this._vNorth = fix.getSpeed() * Math.cos(course);
+			this._vv = VELOCITY_NOISE * VELOCITY_NOISE;
+		} else {
+			this._vEast = this._vNorth = 0;
+			this._vv = UNKNOWN_VELOCITY_VARIANCE;
+		}
+	}
+	
+	/**
+	 * Returns the point some distance from the latest estimate
+	 * @param east  Meters east
+	 * @param north Meters north
+	 * @return The point
+	 */
+	private Geo2D offset(double east, double north) {
+		double lat = this._origin.getLat() + Geo2D.toDegrees(north / EARTH_RADIUS);
+		double lng = this._origin.getLng() + Geo2D.toDegrees(east / (EARTH_RADIUS * Math.cos(Geo2D.toRadians(this._origin.getLat()))));
+		lng -= 360.0d * Math.rint(lng / 360.0d);
+		return new Geo2D(Math.max(-90.0d, Math.min(90.0d, lat)), lng);
+	}
+}
@@ -0,0 +1,327 @@
+package com.numinit.roadtrip.predict;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.numinit.mtree.utils.DataWrapper;
+import com.numinit.roadtrip.index.Geo2D;
+import com.numinit.roadtrip.index.GeoE6;
+import com.numinit.roadtrip.index.Portal;
+import com.numinit.roadtrip.index.PortalIndex;
+import com.numinit.roadtrip.index.PortalQuery;
+import com.numinit.roadtrip.nmea.NMEAFix;
+import com.numinit.utils.DoubleUtils;
+
+/**
+ * One vehicle's prefetched query results, keyed by where a DeadReckoner predicts the vehicle will be over its next few ticks.
+ *
+ * A prefetch holds every portal within some radius of its predicted point, wide enough to answer the tick's queries
+ * exactly from anywhere within a tolerance of that point: by the triangle inequality, everything within the query
+ * distance of the vehicle is within the query distance plus the miss of the prefetch's point. So a hit serves the same
+ * portals the index would have. A prefetch only answers for the index it was fetched from, at the version it was
+ * fetched at, so it never serves portals a delta or a rebuild has since changed.
+ *
+ * A cache belongs to one vehicle's thread; only the prefetches themselves are filled in elsewhere.
+ * @author Morgan Jones
+ *
+ */
+public class PrefetchCache {
+	/**
+	 * A prefetch for one predicted point
+	 * @author Morgan Jones
+	 *
+	 */
+	public static class Entry {
+		/**
+		 * The predicted point
+		 */
+		private final Geo2D _point;
+		
+		/**
+		 * The predicted point, rounded onto the grid the index is keyed on
+		 */
+		private final GeoE6 _key;
+		
+		/**
+		 * The chord radius the portals were fetched within, once they have been
+		 */
+		private volatile double _radius;
+		
+		/**
+		 * The index the portals were fetched from, and its version then. Published by _portals.
+		 */
+		private PortalIndex _index;
+		private long _version;
+		
+		/**
+		 * The portals, or null until they've been fetched
+		 */
+		private volatile List<DataWrapper<GeoE6, Portal>> _portals;
+		
+		/**
+		 * Whether this prefetch has served a tick
+		 */
+		private boolean _used;
+		
+		/**
+		 * Initializes this Entry
+		 * @param point The predicted point
+		 */
+		private Entry(Geo2D point) {
+			this._point = point;
+			this._key = GeoE6.fromGeo2D(point);
+		}
+		
+		@Override
+		public String toString() {
+			List<DataWrapper<GeoE6, Portal>> portals = this._portals;
+			return String.format("#<%s[radius=%.1f,portals=%d,used=%b]@%#08x:%s>", this.getClass().getSimpleName(),
+					this._radius, portals != null ? portals.size() : -1, this._used, System.identityHashCode(this), this._point);
+		}
+		
+		/**
+		 * Fetches the portals, wide enough to answer queries within tolerance of the point
+		 * @param index     The index
+		 * @param radius    The chord distance of the nearby query
+		 * @param k         The number of closest portals a tick wants
+		 * @param tolerance How far from the point, in chord distance, a tick may be and still hit
+		 */
+		private void fetch(PortalIndex index, double radius, int k, double tolerance) {
+			index.getReadLock().lock();
+			try {
+				// The k closest to the vehicle are no farther from it than the k closest to us are, plus the miss;
+				// and then no farther from us than that, plus the miss again
+				List<DataWrapper<GeoE6, Portal>> closest = index.findKClosest(this._point, k);
+				double kth = closest.isEmpty() ? 0 : closest.get(closest.size() - 1).getKey().getDistance(this._key) + GeoE6.QUANTIZATION_ERROR;
+				double fetchRadius = Math.max(radius, kth + tolerance) + tolerance;
+				List<DataWrapper<GeoE6, Portal>> portals = index.find(this._point, fetchRadius);
+				this._radius = fetchRadius;
+				this._index = index;
+				this._version = index.getVersion();
+				this._portals = portals;
+			} finally {
+				index.getReadLock().unlock();
+			}
+		}
+		
+		/**
+		 * @return true if the portals have been fetched
+		 */
+		public boolean isReady() {
+			return this._portals != null;
+		}
+		
+		/**
+		 * Returns whether the portals have been fetched, but from another index or since changed by a delta
+		 * @param index The index
+		 * @return True if they're stale
+		 */
+		private boolean isStale(PortalIndex index) {
+			return this.isReady() && (this._index != index || this._version != index.getVersion());
+		}
+		
+		/**
+		 * Returns the portals matching a query, which must be centered within reach of this prefetch
+		 * @param query The query
+		 * @return The portals, in no particular order
+		 */
+		public ArrayList<DataWrapper<GeoE6, Portal>> nearby(PortalQuery query) {
+			ArrayList<DataWrapper<GeoE6, Portal>> ret = new ArrayList<DataWrapper<GeoE6, Portal>>();
+			for (DataWrapper<GeoE6, Portal> wrapper : this._portals) {
+				if (query.matches(wrapper.getData())) {
+					ret.add(wrapper);
+				}
+			}
+			return ret;
+		}
+		
+		/**
+		 * Returns the k portals closest to a point, if this prefetch provably holds them all
+		 * @param query The point
+		 * @param k     The number of portals
+		 * @return The portals, closest first, or null if the index has to be asked
+		 */
+		public ArrayList<DataWrapper<GeoE6, Portal>> closest(Geo2D query, int k) {
+			// Rank from the grid point nearest the query, as the index does, keeping the k closest in a max-heap
+			final GeoE6 key = GeoE6.fromGeo2D(query);
+			Comparator<DataWrapper<GeoE6, Portal>> byDistance = new Comparator<DataWrapper<GeoE6, Portal>>() {
+				@Override
+				public int compare(DataWrapper<GeoE6, Portal> o1, DataWrapper<GeoE6, Portal> o2) {
+					return DoubleUtils.compare(o1.getKey().getDistance(key), o2.getKey().getDistance(key));
+				}
+			};
+			PriorityQueue<DataWrapper<GeoE6, Portal>> heap = new PriorityQueue<DataWrapper<GeoE6, Portal>>(k + 1, byDistance.reversed());
+			for (DataWrapper<GeoE6, Portal> wrapper : this._portals) {
+				heap.add(wrapper);
+				if (heap.size() > k) {
+					heap.poll();
+				}
+			}
+			
+			// Anything we don't hold is farther than our radius from the point, so farther from the query's grid point than the kth we found
+			if (heap.size() == k && heap.peek().getKey().getDistance(key) + query.getDistance(this._point) + GeoE6.QUANTIZATION_ERROR > this._radius) {
+				return null;
+			}
+			ArrayList<DataWrapper<GeoE6, Portal>> ret = new ArrayList<DataWrapper<GeoE6, Portal>>(heap);
+			ret.sort(byDistance);
+			return ret;
+		}
+	}
+	
+	/**
+	 * Where prefetches run
+	 */
+	private final Executor _executor;
+	
+	/**
+	 * Shared counters
+	 */
+	private final PrefetchStatistics _statistics;
+	
+	/**
+	 * The predictor
+	 */
+	private final DeadReckoner _reckoner;
+	
+	/**
+	 * How many ticks ahead to prefetch
+	 */
+	private final int _ticks;
+	
+	/**
+	 * How far from a prefetch's point, in chord distance, a tick may be and still hit
+	 */
+	private final double _tolerance;
+	
+	/**
+	 * Prefetches, oldest first
+	 */
+	private final ArrayDeque<Entry> _entries;
+	
+	/**
+	 * The smoothed time between ticks, in seconds, or -1 until we know it
+	 */
+	private double _interval = -1;
+	
+	/**
+	 * Initializes this PrefetchCache
+	 * @param executor   Where prefetches run; it may reject them when busy
+	 * @param statistics Shared counters
+	 * @param ticks      How many ticks ahead to prefetch
+	 * @param tolerance  How far from a prefetch's point, in meters, a tick may be and still hit
+	 */
+	public PrefetchCache(Executor executor, PrefetchStatistics statistics, int ticks, double tolerance) {
+		if (ticks < 1) {
+			throw new IllegalArgumentException("ticks must be positive");
+		}
+		this._executor = executor;
+		this._statistics = statistics;
+		this._reckoner = new DeadReckoner();
+		this._ticks = ticks;
+		this._tolerance = Geo2D.toChordDistance(tolerance);
+		this._entries = new ArrayDeque<Entry>(2 * ticks);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[ticks=%d,entries=%d,interval=%.3fs]@%#08x:%s>", this.getClass().getSimpleName(),
+				this._ticks, this._entries.size(), this._interval, System.identityHashCode(this), this._reckoner);
+	}
+	
+	/**
+	 * Finds a prefetch that can answer this tick's queries. Hold the index's read lock until done with it.
+	 * @param index  The index the tick is querying
+	 * @param point  Where the vehicle is
+	 * @param radius The chord distance of the nearby query
+	 * @return The prefetch, or null on a miss
+	 */
+	public Entry lookup(PortalIndex index, Geo2D point, double radius) {
+		for (Entry entry : this._entries) {
+			if (entry.isReady() && !entry.isStale(index) && point.getDistance(entry._point) + radius <= entry._radius) {
+				entry._used = true;
+				this._statistics.recordHit();
+				return entry;
+			}
+		}
+		this._statistics.recordMiss();
+		return null;
+	}
+	
+	/**
+	 * Records that a hit had to ask the index for the k closest portals
+	 */
+	public void closestFallback() {
+		this._statistics.recordClosestFallback();
+	}
+	
+	/**
+	 * Filters in a fix, and starts prefetching for where the vehicle will be over the next few ticks
+	 * @param index  The index to prefetch from
+	 * @param fix    The fix
+	 * @param radius The chord distance of the nearby query
+	 * @param k      The number of closest portals a tick wants
+	 */
+	public void observe(final PortalIndex index, NMEAFix fix, final double radius, final int k) {
+		// Ticks are measured on the receiver's clock where it has one, so replays faster than real time predict the same places
+		this._reckoner.update(fix, System.nanoTime());
+		double interval = this._reckoner.getInterval();
+		if (interval < 0) {
+			return;
+		}
+		this._interval = this._interval < 0 ? interval : 0.75d * this._interval + 0.25d * interval;
+		
+		for (int i = 1; i <= this._ticks; i++) {
+			Geo2D point = this._reckoner.predict(i * this._interval);
+			if (this.covers(index, point)) {
+				// The last pass already predicted about here
+				continue;
+			}
+			final Entry entry = new Entry(point);
+			try {
+				this._executor.execute(() -> {
+					entry.fetch(index, radius, k, this._tolerance);
+				});
+			} catch (RejectedExecutionException e) {
+				this._statistics.recordSkipped();
+				continue;
+			}
+			this._statistics.recordPrefetch();
+			
+			// Keep this pass and the last, in case the vehicle is running behind our guess
+			if (this._entries.size() >= 2 * this._ticks) {
+				Entry evicted = this._entries.removeFirst();
+				if (!evicted._used) {
+					this._statistics.recordWasted();
+				}
+			}
+			this._entries.addLast(entry);
+		}
+	}
+	
+	/**
+	 * Returns whether a prefetch, fetched or not and not stale, is close enough to a point to be worth keeping instead of fetching again
+	 * @param index The index
+	 * @param point The point
+	 * @return True if one is
+	 */
+	private boolean covers(PortalIndex index, Geo2D point) {
+		for (Entry entry : this._entries) {
+			if (!entry._used && !entry.isStale(index) && point.getDistance(entry._point) <= this._tolerance / 2.0d) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the predictor
+	 */
+	public DeadReckoner getReckoner() {
+		return this._reckoner;
+	}
+}
@@ -0,0 +1,136 @@
+package com.numinit.roadtrip.predict;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by every vehicle's PrefetchCache
+ * @author Morgan Jones
+ *
+ */
+public class PrefetchStatistics {
+	/**
+	 * Ticks served from a prefetch, and ticks that weren't
+	 */
+	private final LongAdder _hits, _misses;
+	
+	/**
+	 * Hits whose prefetch couldn't prove it held the k closest portals, so they went to the index for those
+	 */
+	private final LongAdder _closestFallbacks;
+	
+	/**
+	 * Prefetches scheduled, dropped because the prefetch threads were busy, and evicted without serving a tick
+	 */
+	private final LongAdder _prefetches, _skipped, _wasted;
+	
+	/**
+	 * Initializes this PrefetchStatistics
+	 */
+	public PrefetchStatistics() {
+		this._hits = new LongAdder();
+		this._misses = new LongAdder();
+		this._closestFallbacks = new LongAdder();
+		this._prefetches = new LongAdder();
+		this._skipped = new LongAdder();
+		this._wasted = new LongAdder();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[hits=%d,misses=%d,hitRate=%.3f,closestFallbacks=%d,prefetches=%d,skipped=%d,wasted=%d]@%#08x>", this.getClass().getSimpleName(),
+				this.getHits(), this.getMisses(), this.getHitRate(), this.getClosestFallbacks(), this.getPrefetches(), this.getSkipped(), this.getWasted(),
+				System.identityHashCode(this));
+	}
+	
+	/**
+	 * Records a tick served from a prefetch
+	 */
+	public void recordHit() {
+		this._hits.increment();
+	}
+	
+	/**
+	 * Records a tick that had to query the index
+	 */
+	public void recordMiss() {
+		this._misses.increment();
+	}
+	
+	/**
+	 * Records a hit that had to query the index for the k closest portals
+	 */
+	public void recordClosestFallback() {
+		this._closestFallbacks.increment();
+	}
+	
+	/**
+	 * Records a prefetch being scheduled
+	 */
+	public void recordPrefetch() {
+		this._prefetches.increment();
+	}
+	
+	/**
+	 * Records a prefetch being dropped
+	 */
+	public void recordSkipped() {
+		this._skipped.increment();
+	}
+	
+	/**
+	 * Records a prefetch being evicted without serving a tick
+	 */
+	public void recordWasted() {
+		this._wasted.increment();
+	}
+	
+	/**
+	 * @return the number of ticks served from a prefetch
+	 */
+	public long getHits() {
+		return this._hits.sum();
+	}
+	
+	/**
+	 * @return the number of ticks that had to query the index
+	 */
+	public long getMisses() {
+		return this._misses.sum();
+	}
+	
+	/**
+	 * @return the fraction of ticks served from a prefetch, or 0 before any ticks
+	 */
+	public double getHitRate() {
+		long hits = this.getHits(), total = hits + this.getMisses();
+		return total > 0 ? (double)hits / total : 0;
+	}
+	
+	/**
+	 * @return the number of hits that had to query the index for the k closest portals
+	 */
+	public long getClosestFallbacks() {
+		return this._closestFallbacks.sum();
+	}
+	
+	/**
+	 * @return the number of prefetches scheduled
+	 */
+	public long getPrefetches() {
+		return this._prefetches.sum();
+	}
+	
+	/**
+	 * @return the number of prefetches dropped because the prefetch threads were busy
+	 */
+	public long getSkipped() {
+		return this._skipped.sum();
+	}
+	
+	/**
+	 * @return the number of prefetches evicted without serving a tick
+	 */
+	public long getWasted() {
+		return this._wasted.sum();
+	}
+}
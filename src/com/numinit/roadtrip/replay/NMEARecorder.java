@@ -0,0 +1,152 @@
+package com.numinit.roadtrip.replay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+
+import com.numinit.interactive.CommandLine;
+
+/**
+ * Records the raw NMEA stream from a GPS server, with the time each line arrived, so NMEAReplayServer can play it back
+ * @author Morgan Jones
+ *
+ */
+public class NMEARecorder {
+	/**
+	 * How much we read at once, which is also the longest line we keep in one piece
+	 */
+	public static final int BUFFER_SIZE = 4096;
+	
+	/**
+	 * The channel
+	 */
+	private final ReadableByteChannel _channel;
+	
+	/**
+	 * The recording
+	 */
+	private final NMEARecording.Writer _writer;
+	
+	/**
+	 * Whether we should keep recording
+	 */
+	private volatile boolean _run = true;
+	
+	/**
+	 * Initializes this NMEARecorder
+	 * @param channel The channel, which must be blocking
+	 * @param writer  The recording
+	 */
+	public NMEARecorder(ReadableByteChannel channel, NMEARecording.Writer writer) {
+		this._channel = channel;
+		this._writer = writer;
+	}
+	
+	public static void main(String[] args) {
+		CommandLine cmdline = new CommandLine("NMEARecorder", args)
+		.add(new CommandLine.Option<String>(String.class, "nmea-host", "h", "localhost", "The NMEA host", "host"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "nmea-port", "p", 50000, "The NMEA port", "port"))
+		.add(new CommandLine.Option<String>(String.class, "out", "o", null, "The recording to write", "file"))
+		.add(new CommandLine.Option<Double>(Double.class, "duration", "t", 0.0d, "How many seconds to record for, or 0 to record until the stream ends", "seconds")).parse();
+		
+		String file = cmdline.get(String.class, "out");
+		if (file == null) {
+			System.err.println("Need an output file");
+			System.exit(1);
+		}
+		
+		try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(cmdline.get(String.class, "nmea_host"), cmdline.get(Integer.class, "nmea_port")));
+				NMEARecording.Writer writer = new NMEARecording.Writer(file)) {
+			final NMEARecorder recorder = new NMEARecorder(channel, writer);
+			final Thread main = Thread.currentThread();
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					// Shutting down input ends the stream under the read, and the main thread closes everything on its way out
+					recorder.stop();
+					try {
+						channel.shutdownInput();
+						main.join(1000);
+					} catch (IOException | InterruptedException e) {
+					}
+				}
+			});
+			
+			double duration = cmdline.get(Double.class, "duration");
+			if (duration > 0) {
+				Thread timer = new Thread(() -> {
+					try {
+						Thread.sleep((long)(duration * 1000));
+						recorder.stop();
+						channel.shutdownInput();
+					} catch (IOException | InterruptedException e) {
+					}
+				}, "nmea-recorder-timer");
+				timer.setDaemon(true);
+				timer.start();
+			}
+			
+			System.out.format("=== Recording %s:%d to %s\n", cmdline.get(String.class, "nmea_host"), cmdline.get(Integer.class, "nmea_port"), file);
+			recorder.record();
+			System.out.format("=== %d lines, %d bytes\n", writer.getLines(), writer.getBytes());
+		} catch (IOException e) {
+			System.err.println(e);
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Records lines until the stream ends or stop() is called. A line without a terminator at the end of the stream is recorded too.
+	 * @throws IOException if the recording couldn't be written
+	 */
+	public void record() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		byte[] bytes = buffer.array();
+		while (this._run) {
+			int read;
+			try {
+				read = this._channel.read(buffer);
+			} catch (IOException e) {
+				// Whoever stops us may close the channel under us
+				if (this._run) {
+					throw e;
+				}
+				break;
+			}
+			if (read < 0) {
+				break;
+			}
+			
+			// Everything that ended in this read arrived now
+			long now = System.nanoTime();
+			int start = 0, limit = buffer.position();
+			for (int i = limit - read; i < limit; i++) {
+				if (bytes[i] == '\n') {
+					this._writer.write(now, bytes, start, i + 1 - start);
+					start = i + 1;
+				}
+			}
+			if (start == 0 && limit == bytes.length) {
+				// A line as long as the buffer is garbage, but it's what was sent
+				this._writer.write(now, bytes, 0, limit);
+				start = limit;
+			}
+			buffer.position(start);
+			buffer.limit(limit);
+			buffer.compact();
+		}
+		if (buffer.position() > 0) {
+			this._writer.write(System.nanoTime(), bytes, 0, buffer.position());
+		}
+		this._writer.flush();
+	}
+	
+	/**
+	 * Stops recording after the current read
+	 */
+	public void stop() {
+		this._run = false;
+	}
+}
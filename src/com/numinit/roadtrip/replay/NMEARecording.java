@@ -0,0 +1,322 @@
+package com.numinit.roadtrip.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A recorded NMEA stream: each line as it arrived, and when, loaded into memory for replay.
+ *
+ * The file is a magic number and version, then one record per line: the microseconds since the previous line arrived
+ * and the line's length as unsigned LEB128 varints, then the line itself. A GPS sending a line every 100ms costs
+ * four bytes per line on top of the NMEA.
+ * @author Morgan Jones
+ *
+ */
+public class NMEARecording {
+	/**
+	 * "NMEA", then the format version
+	 */
+	public static final int MAGIC = 0x4e4d4541, VERSION = 1;
+	
+	/**
+	 * The longest line we'll read back, which is well past the longest NMEA sentence
+	 */
+	public static final int MAX_LINE_LENGTH = 1 << 16;
+	
+	/**
+	 * The most line bytes we'll load, which is about the largest array the VM will allocate
+	 */
+	private static final int MAX_DATA_LENGTH = Integer.MAX_VALUE - 8;
+	
+	/**
+	 * Every line, back to back
+	 */
+	private final byte[] _data;
+	
+	/**
+	 * Where each line starts in _data, with one more entry for the end of the last
+	 */
+	private final int[] _offsets;
+	
+	/**
+	 * When each line arrived, in microseconds since the first
+	 */
+	private final long[] _times;
+	
+	/**
+	 * Initializes this NMEARecording
+	 * @param data    Every line, back to back
+	 * @param offsets Where each line starts, and where the last one ends
+	 * @param times   When each line arrived, in microseconds since the first
+	 */
+	private NMEARecording(byte[] data, int[] offsets, long[] times) {
+		this._data = data;
+		this._offsets = offsets;
+		this._times = times;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[lines=%d,bytes=%d,duration=%.1fs]@%#08x>", this.getClass().getSimpleName(),
+				this.size(), this._data.length, this.getDuration() / 1.0e6d, System.identityHashCode(this));
+	}
+	
+	/**
+	 * Loads a recording
+	 * @param file The file
+	 * @return The recording
+	 * @throws IOException if the file couldn't be read, or isn't a recording
+	 */
+	public static NMEARecording load(String file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return load(in);
+		}
+	}
+	
+	/**
+	 * Loads a recording
+	 * @param stream The stream, which is read to the end but not closed
+	 * @return The recording
+	 * @throws IOException if the stream couldn't be read, isn't a recording, or holds too much to load
+	 */
+	public static NMEARecording load(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not an NMEA recording");
+		}
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException(String.format("unsupported NMEA recording version %d", version));
+		}
+		
+		byte[] data = new byte[4096];
+		int[] offsets = new int[256];
+		long[] times = new long[256];
+		int size = 0, length = 0;
+		long time = 0;
+		while (true) {
+			long delta = readVarint(in, true);
+			if (delta < 0) {
+				break;
+			}
+			long lineLength = readVarint(in, false);
+			if (lineLength > MAX_LINE_LENGTH) {
+				throw new IOException(String.format("line %d is %d bytes long", size, lineLength));
+			}
+			int n = (int)lineLength;
+			if (n > MAX_DATA_LENGTH - length) {
+				throw new IOException(String.format("line %d takes the recording past %d bytes", size, MAX_DATA_LENGTH));
+			}
+			
+			if (size + 1 >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				times = Arrays.copyOf(times, times.length * 2);
+			}
+			if (length + n > data.length) {
+				data = Arrays.copyOf(data, (int)Math.min(Math.max(data.length * 2L, length + n), MAX_DATA_LENGTH));
+			}
+			in.readFully(data, length, n);
+			
+			time += delta;
+			offsets[size] = length;
+			times[size] = time;
+			length += n;
+			size++;
+		}
+		offsets[size] = length;
+		return new NMEARecording(Arrays.copyOf(data, length), Arrays.copyOf(offsets, size + 1), Arrays.copyOf(times, size));
+	}
+	
+	/**
+	 * Reads an unsigned LEB128 varint
+	 * @param in        The stream
+	 * @param eofIsFine If true, returns -1 on EOF before the first byte
+	 * @return The value
+	 * @throws IOException if the stream ended partway, or the value doesn't fit
+	 */
+	private static long readVarint(InputStream in, boolean eofIsFine) throws IOException {
+		long ret = 0;
+		for (int shift = 0; shift < 63; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				if (shift == 0 && eofIsFine) {
+					return -1;
+				}
+				throw new EOFException("truncated NMEA recording");
+			}
+			ret |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return ret;
+			}
+		}
+		throw new IOException("varint too long");
+	}
+	
+	/**
+	 * @return the number of lines
+	 */
+	public int size() {
+		return this._times.length;
+	}
+	
+	/**
+	 * @return every line, back to back. Don't modify it.
+	 */
+	public byte[] getData() {
+		return this._data;
+	}
+	
+	/**
+	 * @param i The line
+	 * @return where the line starts in getData()
+	 */
+	public int getOffset(int i) {
+		return this._offsets[i];
+	}
+	
+	/**
+	 * @param i The line
+	 * @return the line's length in bytes
+	 */
+	public int getLength(int i) {
+		return this._offsets[i + 1] - this._offsets[i];
+	}
+	
+	/**
+	 * @param i The line
+	 * @return when the line arrived, in microseconds since the first
+	 */
+	public long getTime(int i) {
+		return this._times[i];
+	}
+	
+	/**
+	 * @return microseconds from the first line to the last
+	 */
+	public long getDuration() {
+		return this._times.length > 0 ? this._times[this._times.length - 1] : 0;
+	}
+	
+	/**
+	 * Writes a recording as lines arrive
+	 * @author Morgan Jones
+	 *
+	 */
+	public static class Writer implements Closeable {
+		/**
+		 * The stream
+		 */
+		private final OutputStream _out;
+		
+		/**
+		 * When the previous line arrived, in System.nanoTime() nanoseconds, and its time rounded to microseconds
+		 */
+		private long _first = -1, _last;
+		
+		/**
+		 * Lines and bytes written
+		 */
+		private long _lines, _bytes;
+		
+		/**
+		 * Initializes this Writer, and creates or truncates the file
+		 * @param file The file
+		 * @throws IOException if the file couldn't be opened
+		 */
+		public Writer(String file) throws IOException {
+			this(new FileOutputStream(file));
+		}
+		
+		/**
+		 * Initializes this Writer, and writes the header
+		 * @param out The stream, which this Writer closes
+		 * @throws IOException if the header couldn't be written
+		 */
+		public Writer(OutputStream out) throws IOException {
+			this._out = new BufferedOutputStream(out);
+			this._out.write(MAGIC >>> 24);
+			this._out.write(MAGIC >>> 16);
+			this._out.write(MAGIC >>> 8);
+			this._out.write(MAGIC);
+			this._out.write(VERSION);
+		}
+		
+		@Override
+		public synchronized String toString() {
+			return String.format("#<%s[lines=%d,bytes=%d]@%#08x>", this.getClass().getSimpleName(),
+					this._lines, this._bytes, System.identityHashCode(this));
+		}
+		
+		/**
+		 * Writes a line
+		 * @param nanos  When it arrived, from System.nanoTime()
+		 * @param buf    The buffer
+		 * @param offset Where the line starts
+		 * @param length The line's length, including its line terminator
+		 * @throws IOException if the line couldn't be written
+		 */
+		public synchronized void write(long nanos, byte[] buf, int offset, int length) throws IOException {
+			if (this._first < 0) {
+				this._first = nanos;
+			}
+			
+			// Deltas of rounded times, so rounding errors don't add up over a long recording
+			long time = Math.max((nanos - this._first) / 1000, this._last);
+			this.writeVarint(time - this._last);
+			this.writeVarint(length);
+			this._out.write(buf, offset, length);
+			this._last = time;
+			this._lines++;
+			this._bytes += length;
+		}
+		
+		/**
+		 * Writes an unsigned LEB128 varint
+		 * @param value The value
+		 * @throws IOException if it couldn't be written
+		 */
+		private void writeVarint(long value) throws IOException {
+			while ((value & ~0x7fL) != 0) {
+				this._out.write((int)(value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			this._out.write((int)value);
+		}
+		
+		/**
+		 * Writes out buffered lines
+		 * @throws IOException if they couldn't be written
+		 */
+		public synchronized void flush() throws IOException {
+			this._out.flush();
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			this._out.close();
+		}
+		
+		/**
+		 * @return the number of lines written
+		 */
+		public synchronized long getLines() {
+			return this._lines;
+		}
+		
+		/**
+		 * @return the number of NMEA bytes written, not counting timestamps
+		 */
+		public synchronized long getBytes() {
+			return this._bytes;
+		}
+	}
+}
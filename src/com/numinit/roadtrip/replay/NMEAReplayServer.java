@@ -0,0 +1,195 @@
+package com.numinit.roadtrip.replay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.numinit.interactive.CommandLine;
+import com.numinit.utils.PerTaskExecutors;
+
+/**
+ * Serves an NMEA recording over TCP, as the GPS server it was recorded from would have.
+ * Every client gets the recording from the start, on its own clock, at 1x, Nx or as fast as it will read.
+ * @author Morgan Jones
+ *
+ */
+public class NMEAReplayServer {
+	/**
+	 * The stack size of each client thread, when there are no virtual threads. Clients only sleep and write.
+	 */
+	public static final long CLIENT_STACK_SIZE = 128 * 1024;
+	
+	/**
+	 * How much to write at once at maximum speed
+	 */
+	public static final int MAX_SPEED_WRITE_SIZE = 64 * 1024;
+	
+	/**
+	 * The recording
+	 */
+	private final NMEARecording _recording;
+	
+	/**
+	 * How many times faster than real time to replay, or 0 for as fast as clients read
+	 */
+	private final double _speed;
+	
+	/**
+	 * Whether to start over at the end
+	 */
+	private final boolean _loop;
+	
+	/**
+	 * Client numbers
+	 */
+	private final AtomicInteger _clients = new AtomicInteger();
+	
+	/**
+	 * Initializes this NMEAReplayServer
+	 * @param recording The recording
+	 * @param speed     How many times faster than real time to replay, or 0 for as fast as clients read
+	 * @param loop      Whether to start over at the end
+	 */
+	public NMEAReplayServer(NMEARecording recording, double speed, boolean loop) {
+		if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+			throw new IllegalArgumentException("speed must be a non-negative number");
+		}
+		this._recording = recording;
+		this._speed = speed;
+		this._loop = loop;
+	}
+	
+	public static void main(String[] args) {
+		CommandLine cmdline = new CommandLine("NMEAReplayServer", args)
+		.add(new CommandLine.Option<String>(String.class, "file", "f", null, "The recording to replay", "file"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "port", "p", 50000, "The port to serve it on", "port"))
+		.add(new CommandLine.Option<Double>(Double.class, "speed", "x", 1.0d, "How many times faster than real time to replay, or 0 for as fast as clients read", "factor"))
+		.add(new CommandLine.Option<Boolean>(Boolean.class, true, "loop", "o", false, "Start over at the end instead of hanging up"))
+		.add(new CommandLine.Option<Integer>(Integer.class, "max-clients", "mc", 4096, "The most clients to serve at once", "number")).parse();
+		
+		String file = cmdline.get(String.class, "file");
+		if (file == null) {
+			System.err.println("Need a recording");
+			System.exit(1);
+		}
+		
+		try {
+			NMEARecording recording = NMEARecording.load(file);
+			System.out.println(recording);
+			new NMEAReplayServer(recording, cmdline.get(Double.class, "speed"), cmdline.get(Boolean.class, "loop"))
+			.serve(cmdline.get(Integer.class, "port"), cmdline.get(Integer.class, "max_clients"));
+		} catch (IOException e) {
+			System.err.println(e);
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Accepts clients and replays to each on a thread of its own, forever
+	 * @param port       The port
+	 * @param maxClients The most clients to serve at once; more are hung up on
+	 * @throws IOException if the port couldn't be listened on
+	 */
+	public void serve(int port, int maxClients) throws IOException {
+		final Semaphore slots = new Semaphore(maxClients);
+		final ExecutorService executor = PerTaskExecutors.newExecutor("replay", maxClients, CLIENT_STACK_SIZE);
+		try (final ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.socket().setReuseAddress(true);
+			server.bind(new InetSocketAddress(port));
+			System.out.format("Replaying to up to %d clients on port %d at %s\n", maxClients, port,
+					this._speed > 0 ? String.format("%.2fx", this._speed) : "maximum speed");
+			
+			while (true) {
+				final SocketChannel client = server.accept();
+				if (!slots.tryAcquire()) {
+					client.close();
+					continue;
+				}
+				try {
+					executor.execute(() -> {
+						try {
+							this.replay(client);
+						} finally {
+							slots.release();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					slots.release();
+					client.close();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Replays the recording to a client until it ends (once, or forever if looping) or the client hangs up
+	 * @param client The client's connection
+	 */
+	public void replay(SocketChannel client) {
+		int id = this._clients.incrementAndGet();
+		long start = System.nanoTime(), lines = 0, bytes = 0;
+		String address = "?";
+		try (SocketChannel channel = client) {
+			address = String.valueOf(channel.getRemoteAddress());
+			channel.socket().setTcpNoDelay(this._speed > 0);
+			System.out.format("=== client %d (%s) connected\n", id, address);
+			
+			NMEARecording recording = this._recording;
+			byte[] data = recording.getData();
+			int size = recording.size();
+			do {
+				if (this._speed == 0) {
+					// The lines are back to back, so write them in big pieces
+					ByteBuffer buffer = ByteBuffer.wrap(data);
+					while (buffer.hasRemaining()) {
+						buffer.limit(Math.min(buffer.position() + MAX_SPEED_WRITE_SIZE, data.length));
+						channel.write(buffer);
+						buffer.limit(data.length);
+					}
+					lines += size;
+					bytes += data.length;
+					continue;
+				}
+				
+				long pass = System.nanoTime();
+				for (int i = 0; i < size; ) {
+					// Sleep until line i is due, then send it and everything else that's due by now in one write
+					long due = pass + (long)(recording.getTime(i) * 1000.0d / this._speed);
+					long wait = due - System.nanoTime();
+					if (wait > 0) {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					}
+					long now = System.nanoTime();
+					int j = i + 1;
+					while (j < size && pass + (long)(recording.getTime(j) * 1000.0d / this._speed) <= now) {
+						j++;
+					}
+					int offset = recording.getOffset(i), length = recording.getOffset(j) - offset;
+					ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					lines += j - i;
+					bytes += length;
+					i = j;
+				}
+			} while (this._loop && size > 0);
+		} catch (IOException e) {
+			// They hung up
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		double seconds = (System.nanoTime() - start) / 1.0e9d;
+		System.out.format("=== client %d (%s) done: %d lines, %d bytes in %.1fs (%.0f lines/s)\n", id, address, lines, bytes, seconds, lines / seconds);
+	}
+}
@@ -0,0 +1,150 @@
+package com.numinit.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with bounded relative error, in the style of HdrHistogram.
+ * Values below 128 get a bucket each; above that, every power of two is split into 64 linear buckets,
+ * so any recorded value is reported to within 1/64 (about 1.6%) of itself, across the whole range of a long.
+ * Recording is lock-free and safe to read from any thread while it happens.
+ * @author Morgan Jones
+ *
+ */
+public class LatencyHistogram {
+	/**
+	 * Values below this get exact buckets
+	 */
+	private static final int LINEAR_BUCKETS = 128;
+	
+	/**
+	 * log2 of the number of buckets per power of two above LINEAR_BUCKETS
+	 */
+	private static final int SUB_BUCKET_BITS = 6;
+	
+	/**
+	 * The number of buckets per power of two above LINEAR_BUCKETS
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * The exponent of LINEAR_BUCKETS
+	 */
+	private static final int LINEAR_EXPONENT = 7;
+	
+	/**
+	 * Bucket counts
+	 */
+	private final AtomicLongArray _counts;
+	
+	/**
+	 * The number of values, their sum, and the largest value
+	 */
+	private final AtomicLong _count, _sum, _max;
+	
+	/**
+	 * Initializes this LatencyHistogram
+	 */
+	public LatencyHistogram() {
+		this._counts = new AtomicLongArray(LINEAR_BUCKETS + (63 - LINEAR_EXPONENT) * SUB_BUCKETS);
+		this._count = new AtomicLong();
+		this._sum = new AtomicLong();
+		this._max = new AtomicLong();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[count=%d,p50=%d,p99=%d,p999=%d,max=%d]@%#08x>", this.getClass().getSimpleName(),
+				this.getCount(), this.getPercentile(50), this.getPercentile(99), this.getPercentile(99.9), this.getMax(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Records a latency
+	 * @param nanos The latency, in nanoseconds; negative values count as zero
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		this._counts.incrementAndGet(bucketOf(nanos));
+		this._count.incrementAndGet();
+		this._sum.addAndGet(nanos);
+		long max;
+		while (nanos > (max = this._max.get()) && !this._max.compareAndSet(max, nanos));
+	}
+	
+	/**
+	 * Returns the number of recorded values
+	 * @return The count
+	 */
+	public long getCount() {
+		return this._count.get();
+	}
+	
+	/**
+	 * Returns the largest recorded value
+	 * @return The maximum, in nanoseconds
+	 */
+	public long getMax() {
+		return this._max.get();
+	}
+	
+	/**
+	 * Returns the mean of the recorded values
+	 * @return The mean, in nanoseconds
+	 */
+	public double getMean() {
+		long count = this.getCount();
+		return count == 0 ? 0.0d : (double)this._sum.get() / count;
+	}
+	
+	/**
+	 * Returns the value at a percentile: the smallest value that at least that percentage of recorded values don't exceed
+	 * @param percentile The percentile, from 0 to 100
+	 * @return The value, in nanoseconds, rounded up to its bucket's upper bound
+	 */
+	public long getPercentile(double percentile) {
+		long count = this.getCount();
+		if (count == 0) {
+			return 0;
+		}
+		
+		long target = Math.max(1, (long)Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100.0d * count)), seen = 0;
+		for (int i = 0; i < this._counts.length(); i++) {
+			seen += this._counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValueOf(i), this.getMax());
+			}
+		}
+		return this.getMax();
+	}
+	
+	/**
+	 * Returns the bucket for a value
+	 * @param value The value
+	 * @return The bucket
+	 */
+	private static int bucketOf(long value) {
+		if (value < LINEAR_BUCKETS) {
+			return (int)value;
+		}
+		
+		// The top SUB_BUCKET_BITS bits after the leading one pick the bucket within this power of two
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return LINEAR_BUCKETS + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + sub;
+	}
+	
+	/**
+	 * Returns the largest value that falls in a bucket
+	 * @param bucket The bucket
+	 * @return The value
+	 */
+	private static long highestValueOf(int bucket) {
+		if (bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_EXPONENT;
+		long sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((sub + 1) << shift) - 1;
+	}
+}
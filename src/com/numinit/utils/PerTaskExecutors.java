@@ -0,0 +1,36 @@
+package com.numinit.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors that run every task on a thread of its own, for tasks that spend their lives blocked on a connection
+ * @author Morgan Jones
+ *
+ */
+public class PerTaskExecutors {
+	/**
+	 * Returns an executor that runs each task on a virtual thread where the JVM has them (Java 21 and later),
+	 * or else on a pool of daemon threads, up to maxThreads at once. The pool rejects tasks past that, rather than queueing them.
+	 * @param name       A prefix for thread names
+	 * @param maxThreads The most tasks to run at once, without virtual threads
+	 * @param stackSize  The stack size of each thread, without virtual threads, in bytes
+	 * @return The executor
+	 */
+	public static ExecutorService newExecutor(final String name, int maxThreads, final long stackSize) {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			final AtomicInteger id = new AtomicInteger();
+			return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), (runnable) -> {
+				Thread ret = new Thread(null, runnable, String.format("%s-%d", name, id.incrementAndGet()), stackSize);
+				ret.setDaemon(true);
+				return ret;
+			});
+		}
+	}
+}
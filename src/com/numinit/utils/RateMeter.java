@@ -0,0 +1,128 @@
+package com.numinit.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and tracks how often they happen: a mean rate since creation and a one-minute
+ * exponentially weighted moving average, like the load averages top shows.
+ * Marking is cheap and safe from any thread; the average is brought up to date lazily.
+ * @author Morgan Jones
+ *
+ */
+public class RateMeter {
+	/**
+	 * How often the moving average is updated
+	 */
+	private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+	
+	/**
+	 * The weight of each new tick in a one-minute average
+	 */
+	private static final double ALPHA = 1.0d - Math.exp(-5.0d / 60.0d);
+	
+	/**
+	 * The total count, and the count since the last tick
+	 */
+	private final LongAdder _count, _uncounted;
+	
+	/**
+	 * When this meter was created
+	 */
+	private final long _start;
+	
+	/**
+	 * When this meter last ticked
+	 */
+	private final AtomicLong _lastTick;
+	
+	/**
+	 * The one-minute average, in events per second
+	 */
+	private volatile double _rate;
+	
+	/**
+	 * Whether the average has seen a tick yet
+	 */
+	private volatile boolean _initialized;
+	
+	/**
+	 * Initializes this RateMeter
+	 */
+	public RateMeter() {
+		this._count = new LongAdder();
+		this._uncounted = new LongAdder();
+		this._start = System.nanoTime();
+		this._lastTick = new AtomicLong(this._start);
+		this._rate = 0.0d;
+		this._initialized = false;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#<%s[count=%d,mean=%.2f/s,1m=%.2f/s]@%#08x>", this.getClass().getSimpleName(), this.getCount(), this.getMeanRate(), this.getOneMinuteRate(), System.identityHashCode(this));
+	}
+	
+	/**
+	 * Records an event
+	 */
+	public void mark() {
+		this.tickIfNecessary();
+		this._count.increment();
+		this._uncounted.increment();
+	}
+	
+	/**
+	 * Returns the number of events recorded
+	 * @return The count
+	 */
+	public long getCount() {
+		return this._count.sum();
+	}
+	
+	/**
+	 * Returns the mean rate since this meter was created
+	 * @return The rate, in events per second
+	 */
+	public double getMeanRate() {
+		double elapsed = (System.nanoTime() - this._start) / 1.0e9d;
+		return elapsed > 0 ? this.getCount() / elapsed : 0.0d;
+	}
+	
+	/**
+	 * Returns the one-minute moving average rate
+	 * @return The rate, in events per second
+	 */
+	public double getOneMinuteRate() {
+		this.tickIfNecessary();
+		return this._rate;
+	}
+	
+	/**
+	 * Folds the events since the last tick into the moving average, once per elapsed interval
+	 */
+	private void tickIfNecessary() {
+		long lastTick = this._lastTick.get(), now = System.nanoTime(), age = now - lastTick;
+		if (age < TICK_INTERVAL) {
+			return;
+		}
+		
+		// Whoever wins the race does the update
+		long ticks = age / TICK_INTERVAL;
+		if (this._lastTick.compareAndSet(lastTick, lastTick + ticks * TICK_INTERVAL)) {
+			double instant = this._uncounted.sumThenReset() / (TICK_INTERVAL / 1.0e9d);
+			synchronized (this) {
+				if (this._initialized) {
+					this._rate += ALPHA * (instant - this._rate);
+				} else {
+					this._rate = instant;
+					this._initialized = true;
+				}
+				
+				// Idle intervals decay the average toward zero
+				this._rate *= Math.pow(1.0d - ALPHA, ticks - 1);
+			}
+		}
+	}
+}